@@ -0,0 +1,157 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.atommodel;
+
+import com.radixdlt.atommodel.tokens.FixedSupplyTokenDefinitionParticle;
+import com.radixdlt.atommodel.tokens.MutableSupplyTokenDefinitionParticle;
+import com.radixdlt.atommodel.unique.UniqueParticle;
+import com.radixdlt.atomos.RRIParticle;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.engine.EngineIndex;
+import com.radixdlt.identifiers.RRI;
+import com.radixdlt.identifiers.RadixAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Registry of claimed RRIs and the up particle each of them names.
+ * <p>
+ * An RRI is claimed once its {@link RRIParticle} has been spun down and is named by
+ * the {@link MutableSupplyTokenDefinitionParticle}, {@link FixedSupplyTokenDefinitionParticle}
+ * or {@link UniqueParticle} created in its place.
+ * <p>
+ * Register with {@link com.radixdlt.engine.RadixEngine#addIndex(Class, Class, EngineIndex)}
+ * for {@link Particle}.
+ */
+public final class RRIIndex implements EngineIndex<Particle> {
+	private final RRIIndex parent;
+	private final Set<RRI> claimed = new HashSet<>();
+	private final Map<RRI, Particle> definitions = new HashMap<>();
+	// Definitions of the parent which have been spun down in this branch
+	private final Set<RRI> removedDefinitions = new HashSet<>();
+
+	public RRIIndex() {
+		this(null);
+	}
+
+	private RRIIndex(RRIIndex parent) {
+		this.parent = parent;
+	}
+
+	private static RRI definedRri(Particle particle) {
+		if (particle instanceof MutableSupplyTokenDefinitionParticle) {
+			return ((MutableSupplyTokenDefinitionParticle) particle).getRRI();
+		} else if (particle instanceof FixedSupplyTokenDefinitionParticle) {
+			return ((FixedSupplyTokenDefinitionParticle) particle).getRRI();
+		} else if (particle instanceof UniqueParticle) {
+			return ((UniqueParticle) particle).getRRI();
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized void up(Particle particle) {
+		final RRI rri = definedRri(particle);
+		if (rri != null) {
+			definitions.put(rri, particle);
+			removedDefinitions.remove(rri);
+		}
+	}
+
+	@Override
+	public synchronized void down(Particle particle) {
+		if (particle instanceof RRIParticle) {
+			claimed.add(((RRIParticle) particle).getRri());
+			return;
+		}
+
+		final RRI rri = definedRri(particle);
+		if (rri != null && particle.equals(readDefinition(rri))) {
+			definitions.remove(rri);
+			if (parent != null) {
+				removedDefinitions.add(rri);
+			}
+		}
+	}
+
+	@Override
+	public RRIIndex branch() {
+		return new RRIIndex(this);
+	}
+
+	/**
+	 * Checks whether an RRI has been claimed.
+	 *
+	 * @param rri the RRI to check
+	 * @return true if the RRI has been claimed
+	 */
+	public synchronized boolean isClaimed(RRI rri) {
+		return isClaimedInternal(rri);
+	}
+
+	/**
+	 * Retrieves the owner of a claimed RRI.
+	 *
+	 * @param rri the RRI to look up
+	 * @return the address owning the RRI, or empty if it has not been claimed
+	 */
+	public synchronized Optional<RadixAddress> getOwner(RRI rri) {
+		return isClaimedInternal(rri) ? Optional.of(rri.getAddress()) : Optional.empty();
+	}
+
+	/**
+	 * Retrieves the up particle named by an RRI.
+	 *
+	 * @param rri the RRI to look up
+	 * @return the token definition or unique particle, or empty if there is none
+	 */
+	public synchronized Optional<Particle> getDefinition(RRI rri) {
+		return Optional.ofNullable(readDefinition(rri));
+	}
+
+	/**
+	 * Retrieves the up token definition named by an RRI.
+	 *
+	 * @param rri the RRI to look up
+	 * @return the mutable or fixed supply token definition particle, or empty if there is none
+	 */
+	public synchronized Optional<Particle> getTokenDefinition(RRI rri) {
+		return getDefinition(rri)
+			.filter(p -> p instanceof MutableSupplyTokenDefinitionParticle || p instanceof FixedSupplyTokenDefinitionParticle);
+	}
+
+	private boolean isClaimedInternal(RRI rri) {
+		if (claimed.contains(rri) || definitions.containsKey(rri)) {
+			return true;
+		}
+
+		return parent != null && parent.isClaimed(rri);
+	}
+
+	private Particle readDefinition(RRI rri) {
+		final Particle definition = definitions.get(rri);
+		if (definition != null || parent == null || removedDefinitions.contains(rri)) {
+			return definition;
+		}
+
+		return parent.getDefinition(rri).orElse(null);
+	}
+}
@@ -41,6 +41,11 @@ import java.util.function.Function;
  * Transition Procedure for one to one fungible types
  */
 public class CreateFungibleTransitionRoutine<I extends Particle, O extends Particle> implements ConstraintRoutine {
+	/**
+	 * The amount of a particle used by previous steps of a transition. Must stay immutable, as the
+	 * constraint machine keeps the used data of a step and compares it by equality, so it cannot be
+	 * replaced by a mutable accumulator shared across steps.
+	 */
 	public static final class UsedAmount implements UsedData {
 		private final UInt256 amount;
 
@@ -123,10 +128,19 @@ public class CreateFungibleTransitionRoutine<I extends Particle, O extends Parti
 		);
 	}
 
+	/**
+	 * Fungible transition between an input and an output, each possibly partially used by
+	 * previous steps. Used amounts are immutable {@link UsedAmount}s as the constraint machine
+	 * carries them across steps, so one is allocated per step which uses an amount; only the
+	 * arithmetic on amounts which are not yet used is skipped.
+	 */
 	protected class FungibleTransitionProcedure<N extends UsedData, U extends UsedData> implements TransitionProcedure<I, N, O, U> {
 		private final Function<N, UInt256> inputUsedMapper;
 		private final Function<U, UInt256> outputUsedMapper;
 		private final UsedCompute<I, N, O, U> additionalOutputUsedCompute;
+		private final UsedCompute<I, N, O, U> inputUsedCompute;
+		private final UsedCompute<I, N, O, U> outputUsedCompute;
+		private final WitnessValidator<O> outputWitnessValidator;
 
 		public FungibleTransitionProcedure(
 			Function<N, UInt256> inputUsedMapper,
@@ -146,6 +160,10 @@ public class CreateFungibleTransitionRoutine<I extends Particle, O extends Parti
 			this.inputUsedMapper = inputUsedMapper;
 			this.outputUsedMapper = outputUsedMapper;
 			this.additionalOutputUsedCompute = additionalOutputUsedCompute;
+			// Built once so that the same instances are handed out on every call
+			this.inputUsedCompute = this::computeInputUsed;
+			this.outputUsedCompute = this::computeOutputUsed;
+			this.outputWitnessValidator = (p, witnessData) -> WitnessValidatorResult.success();
 		}
 
 		@Override
@@ -155,68 +173,71 @@ public class CreateFungibleTransitionRoutine<I extends Particle, O extends Parti
 
 		@Override
 		public UsedCompute<I, N, O, U> inputUsedCompute() {
-			return (inputParticle, inputUsed, outputParticle, outputUsed) -> {
-				final UInt256 inputUsedAmount = inputUsedMapper.apply(inputUsed);
-				final UInt256 inputAmount =
-					UIntUtils.subtractWithUnderflow(inputAmountMapper.apply(inputParticle), inputUsedAmount);
-				final UInt256 outputAmount =
-					UIntUtils.subtractWithUnderflow(outputAmountMapper.apply(outputParticle), outputUsedMapper.apply(outputUsed));
-				// Note that overflow is not possible in the addition below.
-				// Given
-				//   inputAmount > outputAmount                                  (comparison in java code below)
-				//   => inputParticle - inputUsed > outputParticle - outputUsed  (substitute equalities)
-				//   => outputParticle - outputUsed < inputParticle - inputUsed  (rearrange [1])
-				// and
-				//   inputUsed + outputAmount <= MAX_VALUE                       (otherwise overflow occurs)
-				//   => inputUsed + outputParticle - outputUsed <= MAX_VALUE     (substitute equalities [2])
-				//
-				// Assume that
-				//   inputUsed + outputParticle - outputUsed > MAX_VALUE         (contradiction of [2])
-				// but
-				//   outputParticle - outputUsed < inputParticle - inputUsed     (from [1])
-				// so this also must be true
-				//   inputUsed + inputParticle - inputUsed > MAX_VALUE           (substitute larger term)
-				//   => inputParticle > MAX_VALUE                                (combine terms)
-				// but this cannot be true, due to properties of variables, therefore
-				//   inputUsed + outputParticle - outputUsed <= MAX_VALUE
-				int compare = inputAmount.compareTo(outputAmount);
-				return compare > 0
-					? Optional.of(new UsedAmount(inputUsedAmount.add(outputAmount)))
-					: Optional.empty();
-			};
+			return inputUsedCompute;
 		}
 
 		@Override
 		public UsedCompute<I, N, O, U> outputUsedCompute() {
-			return (inputParticle, inputUsed, outputParticle, outputUsed) -> {
-				final UInt256 outputUsedAmount = outputUsedMapper.apply(outputUsed);
-				final UInt256 inputAmount =
-					UIntUtils.subtractWithUnderflow(inputAmountMapper.apply(inputParticle), inputUsedMapper.apply(inputUsed));
-				final UInt256 outputAmount =
-					UIntUtils.subtractWithUnderflow(outputAmountMapper.apply(outputParticle), outputUsedAmount);
-				// Note that overflow is not possible in the addition below.
-				// Given
-				//   inputAmount < outputAmount                                  (comparison in java code below)
-				//   => inputParticle - inputUsed < outputParticle - outputUsed  (substitute equalities [1])
-				//   => outputParticle - outputUsed > inputParticle - inputUsed  (rearrange [1])
-				// and
-				//   outputUsed + inputAmount <= MAX_VALUE                       (otherwise overflow occurs)
-				//   => outputUsed + inputParticle - inputUsed <= MAX_VALUE      (substitute equalities [2])
-				//
-				// Assume that
-				//   outputUsed + inputParticle - inputUsed > MAX_VALUE          (contradiction of [2])
-				// but
-				//   outputParticle - outputUsed > inputParticle - inputUsed     (from [1])
-				// so this also must be true
-				//   outputUsed + outputParticle - outputUsed > MAX_VALUE        (substitute larger term)
-				//   => outputParticle > MAX_VALUE                               (combine terms)
-				// but this cannot be true, due to properties of variables, therefore
-				//   outputUsed + inputParticle - inputUsed <= MAX_VALUE
-				int compare = inputAmount.compareTo(outputAmount);
-				return compare < 0
-					? Optional.of(new UsedAmount(UIntUtils.addWithOverflow(outputUsedAmount, inputAmount)))
-					: this.additionalOutputUsedCompute.compute(inputParticle, inputUsed, outputParticle, outputUsed);
-			};
+			return outputUsedCompute;
+		}
+
+		private Optional<UsedData> computeInputUsed(I inputParticle, N inputUsed, O outputParticle, U outputUsed) {
+			final UInt256 inputUsedAmount = inputUsedMapper.apply(inputUsed);
+			final UInt256 inputAmount = remaining(inputAmountMapper.apply(inputParticle), inputUsedAmount);
+			final UInt256 outputAmount = remaining(outputAmountMapper.apply(outputParticle), outputUsedMapper.apply(outputUsed));
+			// Note that overflow is not possible in the addition below.
+			// Given
+			//   inputAmount > outputAmount                                  (comparison in java code below)
+			//   => inputParticle - inputUsed > outputParticle - outputUsed  (substitute equalities)
+			//   => outputParticle - outputUsed < inputParticle - inputUsed  (rearrange [1])
+			// and
+			//   inputUsed + outputAmount <= MAX_VALUE                       (otherwise overflow occurs)
+			//   => inputUsed + outputParticle - outputUsed <= MAX_VALUE     (substitute equalities [2])
+			//
+			// Assume that
+			//   inputUsed + outputParticle - outputUsed > MAX_VALUE         (contradiction of [2])
+			// but
+			//   outputParticle - outputUsed < inputParticle - inputUsed     (from [1])
+			// so this also must be true
+			//   inputUsed + inputParticle - inputUsed > MAX_VALUE           (substitute larger term)
+			//   => inputParticle > MAX_VALUE                                (combine terms)
+			// but this cannot be true, due to properties of variables, therefore
+			//   inputUsed + outputParticle - outputUsed <= MAX_VALUE
+			int compare = inputAmount.compareTo(outputAmount);
+			if (compare <= 0) {
+				return Optional.empty();
+			}
+			// Nothing used so far, so the used amount is exactly the output amount
+			return Optional.of(new UsedAmount(inputUsedAmount.isZero() ? outputAmount : inputUsedAmount.add(outputAmount)));
+		}
+
+		private Optional<UsedData> computeOutputUsed(I inputParticle, N inputUsed, O outputParticle, U outputUsed) {
+			final UInt256 outputUsedAmount = outputUsedMapper.apply(outputUsed);
+			final UInt256 inputAmount = remaining(inputAmountMapper.apply(inputParticle), inputUsedMapper.apply(inputUsed));
+			final UInt256 outputAmount = remaining(outputAmountMapper.apply(outputParticle), outputUsedAmount);
+			// Note that overflow is not possible in the addition below.
+			// Given
+			//   inputAmount < outputAmount                                  (comparison in java code below)
+			//   => inputParticle - inputUsed < outputParticle - outputUsed  (substitute equalities [1])
+			//   => outputParticle - outputUsed > inputParticle - inputUsed  (rearrange [1])
+			// and
+			//   outputUsed + inputAmount <= MAX_VALUE                       (otherwise overflow occurs)
+			//   => outputUsed + inputParticle - inputUsed <= MAX_VALUE      (substitute equalities [2])
+			//
+			// Assume that
+			//   outputUsed + inputParticle - inputUsed > MAX_VALUE          (contradiction of [2])
+			// but
+			//   outputParticle - outputUsed > inputParticle - inputUsed     (from [1])
+			// so this also must be true
+			//   outputUsed + outputParticle - outputUsed > MAX_VALUE        (substitute larger term)
+			//   => outputParticle > MAX_VALUE                               (combine terms)
+			// but this cannot be true, due to properties of variables, therefore
+			//   outputUsed + inputParticle - inputUsed <= MAX_VALUE
+			int compare = inputAmount.compareTo(outputAmount);
+			if (compare >= 0) {
+				return this.additionalOutputUsedCompute.compute(inputParticle, inputUsed, outputParticle, outputUsed);
+			}
+			return Optional.of(new UsedAmount(outputUsedAmount.isZero() ? inputAmount : UIntUtils.addWithOverflow(outputUsedAmount, inputAmount)));
 		}
 
 		@Override
@@ -226,10 +247,19 @@ public class CreateFungibleTransitionRoutine<I extends Particle, O extends Parti
 
 		@Override
 		public WitnessValidator<O> outputWitnessValidator() {
-			return (p, witnessData) -> WitnessValidatorResult.success();
+			return outputWitnessValidator;
 		}
 	}
 
+	/**
+	 * Computes {@code amount - used} with the same underflow semantics as
+	 * {@link UIntUtils#subtractWithUnderflow(UInt256, UInt256)}, but without allocating
+	 * a new {@link UInt256} in the common case where nothing has been used yet.
+	 */
+	private static UInt256 remaining(UInt256 amount, UInt256 used) {
+		return used.isZero() ? amount : UIntUtils.subtractWithUnderflow(amount, used);
+	}
+
 	public TransitionProcedure<I, VoidUsedData, O, VoidUsedData> getProcedure0() {
 		return new FungibleTransitionProcedure<>(u -> UInt256.ZERO, u -> UInt256.ZERO);
 	}
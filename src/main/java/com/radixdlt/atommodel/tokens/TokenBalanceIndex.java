@@ -0,0 +1,187 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.atommodel.tokens;
+
+import com.google.common.collect.ImmutableList;
+import com.radixdlt.engine.EngineIndex;
+import com.radixdlt.identifiers.RRI;
+import com.radixdlt.identifiers.RadixAddress;
+import com.radixdlt.utils.UInt256;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Index of the up {@link TransferrableTokensParticle}s and resulting balance
+ * of each (address, token) pair.
+ * <p>
+ * Register with {@link com.radixdlt.engine.RadixEngine#addIndex(Class, Class, EngineIndex)}
+ * for {@link TransferrableTokensParticle}.
+ */
+public final class TokenBalanceIndex implements EngineIndex<TransferrableTokensParticle> {
+	private static final class Key {
+		private final RadixAddress address;
+		private final RRI rri;
+
+		private Key(RadixAddress address, RRI rri) {
+			this.address = address;
+			this.rri = rri;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(address, rri);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+
+			Key k = (Key) o;
+			return Objects.equals(this.address, k.address) && Objects.equals(this.rri, k.rri);
+		}
+	}
+
+	private static final class Balance {
+		private UInt256 amount;
+		private final LinkedHashSet<TransferrableTokensParticle> utxos;
+
+		private Balance(UInt256 amount, LinkedHashSet<TransferrableTokensParticle> utxos) {
+			this.amount = amount;
+			this.utxos = utxos;
+		}
+
+		private Balance copy() {
+			return new Balance(amount, new LinkedHashSet<>(utxos));
+		}
+	}
+
+	private final TokenBalanceIndex parent;
+	private final Map<Key, Balance> balances = new HashMap<>();
+
+	public TokenBalanceIndex() {
+		this(null);
+	}
+
+	private TokenBalanceIndex(TokenBalanceIndex parent) {
+		this.parent = parent;
+	}
+
+	@Override
+	public synchronized void up(TransferrableTokensParticle particle) {
+		final Balance balance = writableBalance(new Key(particle.getAddress(), particle.getTokDefRef()));
+		if (balance.utxos.add(particle)) {
+			balance.amount = balance.amount.add(particle.getAmount());
+		}
+	}
+
+	@Override
+	public synchronized void down(TransferrableTokensParticle particle) {
+		final Key key = new Key(particle.getAddress(), particle.getTokDefRef());
+		final Balance balance = writableBalance(key);
+		if (balance.utxos.remove(particle)) {
+			balance.amount = balance.amount.subtract(particle.getAmount());
+		}
+
+		// Empty balances must be kept in a branch to shadow the parent's balance
+		if (parent == null && balance.utxos.isEmpty()) {
+			balances.remove(key);
+		}
+	}
+
+	@Override
+	public TokenBalanceIndex branch() {
+		return new TokenBalanceIndex(this);
+	}
+
+	/**
+	 * Retrieves the balance of a token held by an address.
+	 *
+	 * @param address the address holding the tokens
+	 * @param rri the token definition reference
+	 * @return the sum of all up transferrable tokens for the pair, zero if there are none
+	 */
+	public synchronized UInt256 getBalance(RadixAddress address, RRI rri) {
+		final Balance balance = readBalance(new Key(address, rri));
+		return balance == null ? UInt256.ZERO : balance.amount;
+	}
+
+	/**
+	 * Retrieves the number of up transferrable tokens particles for an (address, token) pair.
+	 *
+	 * @param address the address holding the tokens
+	 * @param rri the token definition reference
+	 * @return the number of up particles
+	 */
+	public synchronized int getUtxoCount(RadixAddress address, RRI rri) {
+		final Balance balance = readBalance(new Key(address, rri));
+		return balance == null ? 0 : balance.utxos.size();
+	}
+
+	/**
+	 * Retrieves a page of the up transferrable tokens particles for an (address, token) pair
+	 * in the order they were created.
+	 *
+	 * @param address the address holding the tokens
+	 * @param rri the token definition reference
+	 * @param offset the number of particles to skip
+	 * @param limit the maximum number of particles to return
+	 * @return the page of particles
+	 */
+	public synchronized ImmutableList<TransferrableTokensParticle> getUtxos(RadixAddress address, RRI rri, int offset, int limit) {
+		if (offset < 0 || limit < 0) {
+			throw new IllegalArgumentException(String.format("Invalid page offset %s limit %s", offset, limit));
+		}
+
+		final Balance balance = readBalance(new Key(address, rri));
+		if (balance == null) {
+			return ImmutableList.of();
+		}
+
+		return balance.utxos.stream()
+			.skip(offset)
+			.limit(limit)
+			.collect(ImmutableList.toImmutableList());
+	}
+
+	private Balance readBalance(Key key) {
+		final Balance balance = balances.get(key);
+		if (balance != null || parent == null) {
+			return balance;
+		}
+
+		return parent.readBalanceSynchronized(key);
+	}
+
+	private synchronized Balance readBalanceSynchronized(Key key) {
+		return readBalance(key);
+	}
+
+	private Balance writableBalance(Key key) {
+		Balance balance = balances.get(key);
+		if (balance == null) {
+			final Balance parentBalance = parent == null ? null : parent.readBalanceSynchronized(key);
+			balance = parentBalance == null ? new Balance(UInt256.ZERO, new LinkedHashSet<>()) : parentBalance.copy();
+			balances.put(key, balance);
+		}
+		return balance;
+	}
+}
@@ -561,8 +561,16 @@ public class TokensConstraintScrypt implements ConstraintScrypt {
 		Function<L, R0> leftMapper0, Function<R, R0> rightMapper0, String errorMessage0,
 		Function<L, R1> leftMapper1, Function<R, R1> rightMapper1, String errorMessage1
 	) {
-		return (l, r) -> Result.of(Objects.equals(leftMapper0.apply(l), rightMapper0.apply(r)), errorMessage0)
-			.mapSuccess(() -> Result.of(Objects.equals(leftMapper1.apply(l), rightMapper1.apply(r)), errorMessage1));
+		// Straight-line checks rather than chained results so no closures are allocated per invocation
+		return (l, r) -> {
+			if (!Objects.equals(leftMapper0.apply(l), rightMapper0.apply(r))) {
+				return Result.error(errorMessage0);
+			}
+			if (!Objects.equals(leftMapper1.apply(l), rightMapper1.apply(r))) {
+				return Result.error(errorMessage1);
+			}
+			return Result.success();
+		};
 	}
 
 	private static <L, R, R0, R1, R2> BiFunction<L, R, Result> checkEquals(
@@ -570,8 +578,19 @@ public class TokensConstraintScrypt implements ConstraintScrypt {
 		Function<L, R1> leftMapper1, Function<R, R1> rightMapper1, String errorMessage1,
 		Function<L, R2> leftMapper2, Function<R, R2> rightMapper2, String errorMessage2
 	) {
-		return (l, r) -> Result.of(Objects.equals(leftMapper0.apply(l), rightMapper0.apply(r)), errorMessage0)
-			.mapSuccess(() -> Result.of(Objects.equals(leftMapper1.apply(l), rightMapper1.apply(r)), errorMessage1))
-			.mapSuccess(() -> Result.of(Objects.equals(leftMapper2.apply(l), rightMapper2.apply(r)), errorMessage2));
+		final BiFunction<L, R, Result> check01 = checkEquals(
+			leftMapper0, rightMapper0, errorMessage0,
+			leftMapper1, rightMapper1, errorMessage1
+		);
+		return (l, r) -> {
+			final Result result = check01.apply(l, r);
+			if (result.isError()) {
+				return result;
+			}
+			if (!Objects.equals(leftMapper2.apply(l), rightMapper2.apply(r))) {
+				return Result.error(errorMessage2);
+			}
+			return Result.success();
+		};
 	}
 }
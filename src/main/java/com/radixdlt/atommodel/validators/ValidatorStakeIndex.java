@@ -0,0 +1,238 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.atommodel.validators;
+
+import com.google.common.collect.ImmutableMap;
+import com.radixdlt.atommodel.system.SystemParticle;
+import com.radixdlt.atommodel.tokens.StakedTokensParticle;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.engine.EngineIndex;
+import com.radixdlt.identifiers.RadixAddress;
+import com.radixdlt.utils.UInt256;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Index of the currently registered validators and the stake delegated to each of them,
+ * with a snapshot of the validator set taken at each epoch boundary.
+ * <p>
+ * The snapshot of an epoch is taken once the atom which begins the epoch has been committed, so
+ * that it includes stake changes made by that atom after the {@link SystemParticle}. When fed
+ * without atom boundaries, as on initialization from a store, the snapshot of an epoch is taken
+ * when the next epoch begins or initialization completes.
+ * <p>
+ * Register with {@link com.radixdlt.engine.RadixEngine#addIndex(Class, Class, EngineIndex)}
+ * for {@link Particle} as it follows {@link RegisteredValidatorParticle}s,
+ * {@link StakedTokensParticle}s and {@link SystemParticle}s.
+ */
+public final class ValidatorStakeIndex implements EngineIndex<Particle> {
+
+	/**
+	 * The registered validators and their delegated stake at the start of an epoch.
+	 */
+	public static final class ValidatorSetSnapshot {
+		private final long epoch;
+		private final ImmutableMap<RadixAddress, UInt256> stakes;
+
+		private ValidatorSetSnapshot(long epoch, ImmutableMap<RadixAddress, UInt256> stakes) {
+			this.epoch = epoch;
+			this.stakes = stakes;
+		}
+
+		public long getEpoch() {
+			return epoch;
+		}
+
+		/**
+		 * Retrieves the registered validators mapped to the stake delegated to them.
+		 * Validators without any stake are mapped to zero.
+		 *
+		 * @return the validator stakes
+		 */
+		public ImmutableMap<RadixAddress, UInt256> getStakes() {
+			return stakes;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(epoch, stakes);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof ValidatorSetSnapshot)) {
+				return false;
+			}
+
+			ValidatorSetSnapshot other = (ValidatorSetSnapshot) o;
+			return this.epoch == other.epoch && Objects.equals(this.stakes, other.stakes);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s{epoch=%s stakes=%s}", getClass().getSimpleName(), epoch, stakes);
+		}
+	}
+
+	private final int maxSnapshots;
+	private final Map<RadixAddress, RegisteredValidatorParticle> validators;
+	private final Map<RadixAddress, UInt256> stakes;
+	private final TreeMap<Long, ValidatorSetSnapshot> snapshots;
+	private long currentEpoch;
+	// Epoch begun by the atom being committed, if any
+	private boolean snapshotPending;
+
+	/**
+	 * Creates an index which retains the snapshots of the given number of most recent epochs.
+	 *
+	 * @param maxSnapshots the number of epoch snapshots to retain
+	 */
+	public ValidatorStakeIndex(int maxSnapshots) {
+		this(maxSnapshots, new HashMap<>(), new HashMap<>(), new TreeMap<>(), -1, false);
+		if (maxSnapshots <= 0) {
+			throw new IllegalArgumentException("maxSnapshots must be positive but was " + maxSnapshots);
+		}
+	}
+
+	private ValidatorStakeIndex(
+		int maxSnapshots,
+		Map<RadixAddress, RegisteredValidatorParticle> validators,
+		Map<RadixAddress, UInt256> stakes,
+		TreeMap<Long, ValidatorSetSnapshot> snapshots,
+		long currentEpoch,
+		boolean snapshotPending
+	) {
+		this.maxSnapshots = maxSnapshots;
+		this.validators = validators;
+		this.stakes = stakes;
+		this.snapshots = snapshots;
+		this.currentEpoch = currentEpoch;
+		this.snapshotPending = snapshotPending;
+	}
+
+	@Override
+	public synchronized void up(Particle particle) {
+		if (particle instanceof RegisteredValidatorParticle) {
+			RegisteredValidatorParticle validator = (RegisteredValidatorParticle) particle;
+			validators.put(validator.getAddress(), validator);
+		} else if (particle instanceof StakedTokensParticle) {
+			StakedTokensParticle staked = (StakedTokensParticle) particle;
+			stakes.merge(staked.getDelegateAddress(), staked.getAmount(), UInt256::add);
+		} else if (particle instanceof SystemParticle) {
+			long epoch = ((SystemParticle) particle).getEpoch();
+			if (epoch != currentEpoch) {
+				// Epochs only pass without an atom boundary when fed without atoms
+				takePendingSnapshot();
+				currentEpoch = epoch;
+				snapshotPending = true;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void atomCommitted() {
+		takePendingSnapshot();
+	}
+
+	private void takePendingSnapshot() {
+		if (!snapshotPending) {
+			return;
+		}
+
+		snapshotPending = false;
+		snapshots.put(currentEpoch, new ValidatorSetSnapshot(currentEpoch, currentStakes()));
+		while (snapshots.size() > maxSnapshots) {
+			snapshots.pollFirstEntry();
+		}
+	}
+
+	@Override
+	public synchronized void down(Particle particle) {
+		if (particle instanceof RegisteredValidatorParticle) {
+			RegisteredValidatorParticle validator = (RegisteredValidatorParticle) particle;
+			// The next registration of the validator may already have been spun up
+			validators.remove(validator.getAddress(), validator);
+		} else if (particle instanceof StakedTokensParticle) {
+			StakedTokensParticle staked = (StakedTokensParticle) particle;
+			UInt256 current = stakes.get(staked.getDelegateAddress());
+			// Stake spun up before this index was built, e.g. from a compacted or imported store, is unknown
+			if (current == null) {
+				return;
+			}
+
+			if (current.compareTo(staked.getAmount()) <= 0) {
+				stakes.remove(staked.getDelegateAddress());
+			} else {
+				stakes.put(staked.getDelegateAddress(), current.subtract(staked.getAmount()));
+			}
+		}
+	}
+
+	@Override
+	public synchronized ValidatorStakeIndex branch() {
+		// The validator set is small so a branch is simply a copy
+		return new ValidatorStakeIndex(
+			maxSnapshots,
+			new HashMap<>(validators),
+			new HashMap<>(stakes),
+			new TreeMap<>(snapshots),
+			currentEpoch,
+			snapshotPending
+		);
+	}
+
+	/**
+	 * Retrieves the currently registered validators and the stake currently delegated to them.
+	 *
+	 * @return the current validator set
+	 */
+	public synchronized ValidatorSetSnapshot current() {
+		return new ValidatorSetSnapshot(currentEpoch, currentStakes());
+	}
+
+	/**
+	 * Retrieves the validator set as it was at the start of the given epoch.
+	 *
+	 * @param epoch the epoch to retrieve
+	 * @return the validator set snapshot, or empty if the epoch is unknown or no longer retained
+	 */
+	public synchronized Optional<ValidatorSetSnapshot> atEpoch(long epoch) {
+		return Optional.ofNullable(snapshots.get(epoch));
+	}
+
+	/**
+	 * Retrieves the stake currently delegated to a validator.
+	 *
+	 * @param delegate the address of the validator
+	 * @return the delegated stake, zero if there is none
+	 */
+	public synchronized UInt256 getStake(RadixAddress delegate) {
+		return stakes.getOrDefault(delegate, UInt256.ZERO);
+	}
+
+	private ImmutableMap<RadixAddress, UInt256> currentStakes() {
+		ImmutableMap.Builder<RadixAddress, UInt256> builder = ImmutableMap.builder();
+		for (RadixAddress validator : validators.keySet()) {
+			builder.put(validator, stakes.getOrDefault(validator, UInt256.ZERO));
+		}
+		return builder.build();
+	}
+}
@@ -22,10 +22,12 @@ import com.radixdlt.constraintmachine.TransitionToken;
 import com.radixdlt.constraintmachine.UsedData;
 import com.radixdlt.constraintmachine.VoidParticle;
 import com.radixdlt.constraintmachine.TransitionProcedure;
+import com.radixdlt.identifiers.RRI;
 import com.radixdlt.identifiers.RadixAddress;
 import com.radixdlt.store.CMStore;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
@@ -118,6 +120,21 @@ public final class CMAtomOS {
 		};
 	}
 
+	/**
+	 * Builds a function which maps a particle to the RRI its particle definition maps it to, if any.
+	 *
+	 * @return the RRI mapper
+	 */
+	public Function<Particle, Optional<RRI>> buildRriMapper() {
+		final ImmutableMap<Class<? extends Particle>, Function<Particle, RRI>> rriMappers = particleDefinitions.entrySet().stream()
+			.filter(def -> def.getValue().getRriMapper() != null)
+			.collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, def -> def.getValue().getRriMapper()));
+		return p -> {
+			final Function<Particle, RRI> rriMapper = rriMappers.get(p.getClass());
+			return rriMapper == null ? Optional.empty() : Optional.of(rriMapper.apply(p));
+		};
+	}
+
 	public UnaryOperator<CMStore> buildVirtualLayer() {
 		Map<? extends Class<? extends Particle>, Function<Particle, Spin>> virtualizedParticles = particleDefinitions.entrySet().stream()
 			.filter(def -> def.getValue().getVirtualizeSpin() != null)
@@ -50,6 +50,102 @@ final class ConstraintScryptEnv implements SysCalls {
 	private final Map<Class<? extends Particle>, ParticleDefinition<Particle>> scryptParticleDefinitions;
 	private final Map<TransitionToken, TransitionProcedure<Particle, UsedData, Particle, UsedData>> scryptTransitionProcedures;
 
+	/**
+	 * Type-erased view of a scrypt defined transition procedure. Used computes are resolved once
+	 * on creation and witness validators once on first use, and the delegate's own instances are
+	 * handed out rather than wrapped, so the constraint machine dispatches straight to the class
+	 * specific to each procedure and never allocates wrappers on its hot path.
+	 */
+	private static final class ScryptTransitionProcedure<I extends Particle, N extends UsedData, O extends Particle, U extends UsedData>
+		implements TransitionProcedure<Particle, UsedData, Particle, UsedData> {
+		private final TransitionProcedure<I, N, O, U> procedure;
+		private final PermissionLevel requiredPermissionLevel;
+		private final Function<Particle, RRI> inputRriMapper;
+		private final Function<Particle, RRI> outputRriMapper;
+		private final UsedCompute<Particle, UsedData, Particle, UsedData> inputUsedCompute;
+		private final UsedCompute<Particle, UsedData, Particle, UsedData> outputUsedCompute;
+		// Resolved lazily as some procedures throw for validators which are never used.
+		// Racy but benign, resolution is idempotent.
+		private WitnessValidator<Particle> inputWitnessValidator;
+		private WitnessValidator<Particle> outputWitnessValidator;
+
+		private ScryptTransitionProcedure(
+			TransitionProcedure<I, N, O, U> procedure,
+			Function<Particle, RRI> inputRriMapper,
+			Function<Particle, RRI> outputRriMapper
+		) {
+			this.procedure = procedure;
+			this.requiredPermissionLevel = procedure.requiredPermissionLevel();
+			// RRIs must be the same across RRI particle transitions
+			final boolean checkRris = inputRriMapper != null && outputRriMapper != null;
+			this.inputRriMapper = checkRris ? inputRriMapper : null;
+			this.outputRriMapper = checkRris ? outputRriMapper : null;
+			this.inputUsedCompute = erase(procedure.inputUsedCompute());
+			this.outputUsedCompute = erase(procedure.outputUsedCompute());
+		}
+
+		// Generic types are erased at runtime, so the delegate instance itself can be handed to the
+		// constraint machine which only passes it particles and used data of the token's types
+		@SuppressWarnings("unchecked")
+		private static UsedCompute<Particle, UsedData, Particle, UsedData> erase(UsedCompute<?, ?, ?, ?> usedCompute) {
+			return (UsedCompute<Particle, UsedData, Particle, UsedData>) usedCompute;
+		}
+
+		@SuppressWarnings("unchecked")
+		private static WitnessValidator<Particle> erase(WitnessValidator<?> witnessValidator) {
+			return (WitnessValidator<Particle>) witnessValidator;
+		}
+
+		@Override
+		public PermissionLevel requiredPermissionLevel() {
+			return requiredPermissionLevel;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Result precondition(Particle inputParticle, UsedData inputUsed, Particle outputParticle, UsedData outputUsed) {
+			if (inputRriMapper != null) {
+				final RRI inputRRI = inputRriMapper.apply(inputParticle);
+				final RRI outputRRI = outputRriMapper.apply(outputParticle);
+				if (!inputRRI.equals(outputRRI)) {
+					return Result.error("Input/Output RRIs not equal");
+				}
+			}
+
+			return procedure.precondition((I) inputParticle, (N) inputUsed, (O) outputParticle, (U) outputUsed);
+		}
+
+		@Override
+		public UsedCompute<Particle, UsedData, Particle, UsedData> inputUsedCompute() {
+			return inputUsedCompute;
+		}
+
+		@Override
+		public UsedCompute<Particle, UsedData, Particle, UsedData> outputUsedCompute() {
+			return outputUsedCompute;
+		}
+
+		@Override
+		public WitnessValidator<Particle> inputWitnessValidator() {
+			WitnessValidator<Particle> validator = inputWitnessValidator;
+			if (validator == null) {
+				validator = erase(procedure.inputWitnessValidator());
+				inputWitnessValidator = validator;
+			}
+			return validator;
+		}
+
+		@Override
+		public WitnessValidator<Particle> outputWitnessValidator() {
+			WitnessValidator<Particle> validator = outputWitnessValidator;
+			if (validator == null) {
+				validator = erase(procedure.outputWitnessValidator());
+				outputWitnessValidator = validator;
+			}
+			return validator;
+		}
+	}
+
 	ConstraintScryptEnv(
 		ImmutableMap<Class<? extends Particle>, ParticleDefinition<Particle>> particleDefinitions,
 		Function<RadixAddress, Result> addressChecker
@@ -220,49 +316,7 @@ final class ConstraintScryptEnv implements SysCalls {
 		final ParticleDefinition<Particle> outputDefinition = getParticleDefinition(transitionToken.getOutputClass());
 
 		final TransitionProcedure<Particle, UsedData, Particle, UsedData> transformedProcedure
-			= new TransitionProcedure<Particle, UsedData, Particle, UsedData>() {
-				@Override
-				public PermissionLevel requiredPermissionLevel() {
-					return procedure.requiredPermissionLevel();
-				}
-
-				@Override
-				public Result precondition(Particle inputParticle, UsedData inputUsed, Particle outputParticle, UsedData outputUsed) {
-					// RRIs must be the same across RRI particle transitions
-					if (inputDefinition.getRriMapper() != null && outputDefinition.getRriMapper() != null) {
-						final RRI inputRRI = inputDefinition.getRriMapper().apply(inputParticle);
-						final RRI outputRRI = outputDefinition.getRriMapper().apply(outputParticle);
-						if (!inputRRI.equals(outputRRI)) {
-							return Result.error("Input/Output RRIs not equal");
-						}
-					}
-
-					return procedure.precondition((I) inputParticle, (N) inputUsed, (O) outputParticle, (U) outputUsed);
-				}
-
-				@Override
-				public UsedCompute<Particle, UsedData, Particle, UsedData> inputUsedCompute() {
-					return (input, inputUsed, output, outputUsed) -> procedure.inputUsedCompute()
-						.compute((I) input, (N) inputUsed, (O) output, (U) outputUsed);
-				}
-
-				@Override
-				public UsedCompute<Particle, UsedData, Particle, UsedData> outputUsedCompute() {
-					return (input, inputUsed, output, outputUsed) -> procedure.outputUsedCompute()
-						.compute((I) input, (N) inputUsed, (O) output, (U) outputUsed);
-				}
-
-
-				@Override
-				public WitnessValidator<Particle> inputWitnessValidator() {
-					return (i, w) -> procedure.inputWitnessValidator().validate((I) i, w);
-				}
-
-				@Override
-				public WitnessValidator<Particle> outputWitnessValidator() {
-					return (o, w) -> procedure.outputWitnessValidator().validate((O) o, w);
-				}
-			};
+			= new ScryptTransitionProcedure<>(procedure, inputDefinition.getRriMapper(), outputDefinition.getRriMapper());
 
 		scryptTransitionProcedures.put(transitionToken, transformedProcedure);
 	}
@@ -36,7 +36,8 @@ public enum CMErrorCode {
 	TRANSITION_ERROR("Transition error"),
 	ARITHMETIC_ERROR("Arithmetic error"),
 	INVALID_EXECUTION_PERMISSION("Invalid execution permission"),
-	INVALID_INSTRUCTION_SEQUENCE("Invalid instruction sequence");
+	INVALID_INSTRUCTION_SEQUENCE("Invalid instruction sequence"),
+	EXECUTION_BUDGET_EXCEEDED("Execution budget exceeded");
 
 	private final String description;
 
@@ -24,10 +24,14 @@ import com.radixdlt.identifiers.EUID;
 import com.radixdlt.constraintmachine.WitnessValidator.WitnessValidatorResult;
 import com.radixdlt.crypto.ECPublicKey;
 import com.radixdlt.crypto.ECDSASignature;
+import com.radixdlt.jfr.CMValidateEvent;
+import com.radixdlt.metrics.EngineMetrics;
 import com.radixdlt.store.SpinStateMachine;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Function;
 
@@ -42,6 +46,10 @@ public final class ConstraintMachine {
 	public static class Builder {
 		private Function<Particle, Result> particleStaticCheck;
 		private Function<TransitionToken, TransitionProcedure<Particle, UsedData, Particle, UsedData>> particleProcedures;
+		private EngineMetrics metrics = EngineMetrics.NOOP;
+		private TransitionProfiler transitionProfiler;
+		private ExecutionCostModel executionCostModel = ExecutionCostModel.DEFAULT;
+		private final Map<PermissionLevel, Long> executionBudgets = new EnumMap<>(PermissionLevel.class);
 
 		public Builder setParticleStaticCheck(Function<Particle, Result> particleStaticCheck) {
 			this.particleStaticCheck = particleStaticCheck;
@@ -55,23 +63,72 @@ public final class ConstraintMachine {
 			return this;
 		}
 
+		public Builder setMetrics(EngineMetrics metrics) {
+			this.metrics = Objects.requireNonNull(metrics);
+			return this;
+		}
+
+		public Builder setTransitionProfiler(TransitionProfiler transitionProfiler) {
+			this.transitionProfiler = Objects.requireNonNull(transitionProfiler);
+			return this;
+		}
+
+		public Builder setExecutionCostModel(ExecutionCostModel executionCostModel) {
+			this.executionCostModel = Objects.requireNonNull(executionCostModel);
+			return this;
+		}
+
+		/**
+		 * Limits the cost an instruction validated on the given permission level may consume
+		 * according to the execution cost model. Unlimited by default.
+		 *
+		 * @param permissionLevel the permission level to limit
+		 * @param executionBudget the maximum cost of a validation
+		 * @return this builder
+		 */
+		public Builder setExecutionBudget(PermissionLevel permissionLevel, long executionBudget) {
+			if (executionBudget < 0) {
+				throw new IllegalArgumentException("executionBudget must not be negative but was " + executionBudget);
+			}
+			this.executionBudgets.put(Objects.requireNonNull(permissionLevel), executionBudget);
+			return this;
+		}
+
 		public ConstraintMachine build() {
 			return new ConstraintMachine(
 				particleStaticCheck,
-				particleProcedures
+				particleProcedures,
+				metrics,
+				transitionProfiler,
+				executionCostModel,
+				executionBudgets
 			);
 		}
 	}
 
 	private final Function<Particle, Result> particleStaticCheck;
 	private final Function<TransitionToken, TransitionProcedure<Particle, UsedData, Particle, UsedData>> particleProcedures;
+	private final EngineMetrics metrics;
+	// Null if not profiling
+	private final TransitionProfiler transitionProfiler;
+	private final ExecutionCostModel executionCostModel;
+	private final Map<PermissionLevel, Long> executionBudgets;
 
 	ConstraintMachine(
 		Function<Particle, Result> particleStaticCheck,
-		Function<TransitionToken, TransitionProcedure<Particle, UsedData, Particle, UsedData>> particleProcedures
+		Function<TransitionToken, TransitionProcedure<Particle, UsedData, Particle, UsedData>> particleProcedures,
+		EngineMetrics metrics,
+		TransitionProfiler transitionProfiler,
+		ExecutionCostModel executionCostModel,
+		Map<PermissionLevel, Long> executionBudgets
 	) {
 		this.particleStaticCheck = particleStaticCheck;
 		this.particleProcedures = particleProcedures;
+		this.metrics = metrics;
+		this.transitionProfiler = transitionProfiler;
+		this.executionCostModel = executionCostModel;
+		this.executionBudgets = new EnumMap<>(PermissionLevel.class);
+		this.executionBudgets.putAll(executionBudgets);
 	}
 
 	public static final class CMValidationState implements WitnessData {
@@ -84,12 +141,23 @@ public final class ConstraintMachine {
 		private final HashCode witness;
 		private final Map<EUID, ECDSASignature> signatures;
 		private final Map<ECPublicKey, Boolean> isSignedByCache = new HashMap<>();
+		private final ExecutionMeter executionMeter;
 
-		CMValidationState(PermissionLevel permissionLevel, HashCode witness, Map<EUID, ECDSASignature> signatures) {
+		CMValidationState(
+			PermissionLevel permissionLevel,
+			HashCode witness,
+			Map<EUID, ECDSASignature> signatures,
+			ExecutionMeter executionMeter
+		) {
 			this.permissionLevel = permissionLevel;
 			this.currentSpins = new HashMap<>();
 			this.witness = witness;
 			this.signatures = signatures;
+			this.executionMeter = executionMeter;
+		}
+
+		public ExecutionMeter getExecutionMeter() {
+			return executionMeter;
 		}
 
 		public void setCurrentTransitionToken(TransitionToken currentTransitionToken) {
@@ -107,16 +175,25 @@ public final class ConstraintMachine {
 
 		@Override
 		public boolean isSignedBy(ECPublicKey publicKey) {
-			return this.isSignedByCache.computeIfAbsent(publicKey, this::verifySignedWith);
-		}
-
-		private boolean verifySignedWith(ECPublicKey publicKey) {
+			final Boolean cached = this.isSignedByCache.get(publicKey);
+			if (cached != null) {
+				return cached;
+			}
 			if (signatures == null || signatures.isEmpty() || witness == null) {
+				this.isSignedByCache.put(publicKey, false);
+				return false;
+			}
+
+			// Over budget the validation fails regardless, so skip the verification, but do not
+			// remember the key as unsigned as that is not what it is
+			if (!executionMeter.chargeSignatureVerification()) {
 				return false;
 			}
 
 			final ECDSASignature signature = signatures.get(publicKey.euid());
-			return publicKey.verify(witness, signature);
+			final boolean signed = publicKey.verify(witness, signature);
+			this.isSignedByCache.put(publicKey, signed);
+			return signed;
 		}
 
 		boolean has(Particle p) {
@@ -259,13 +336,23 @@ public final class ConstraintMachine {
 		final UsedData inputUsed = validationState.getInputUsed();
 		final UsedData outputUsed = validationState.getOutputUsed();
 
+		final TransitionProfiler.Stats profile = transitionProfiler == null ? null : transitionProfiler.stats(transitionToken);
+		final boolean timed = profile != null && transitionProfiler.invoked(profile);
+		long phaseStart = timed ? System.nanoTime() : 0;
+
 		// Precondition check
+		if (!validationState.executionMeter.chargeTransitionStep()) {
+			return Optional.of(new CMError(dp, CMErrorCode.EXECUTION_BUDGET_EXCEEDED, validationState));
+		}
 		final Result preconditionCheckResult = transitionProcedure.precondition(
 			inputParticle,
 			inputUsed,
 			outputParticle,
 			outputUsed
 		);
+		if (timed) {
+			transitionProfiler.record(profile, TransitionProfiler.Phase.PRECONDITION, System.nanoTime() - phaseStart);
+		}
 		if (preconditionCheckResult.isError()) {
 			return Optional.of(
 				new CMError(
@@ -282,9 +369,16 @@ public final class ConstraintMachine {
 
 			UsedCompute<Particle, UsedData, Particle, UsedData> usedCompute
 				= testInput ? transitionProcedure.inputUsedCompute() : transitionProcedure.outputUsedCompute();
+			if (!validationState.executionMeter.chargeTransitionStep()) {
+				return Optional.of(new CMError(dp, CMErrorCode.EXECUTION_BUDGET_EXCEEDED, validationState));
+			}
 
 			try {
+				phaseStart = timed ? System.nanoTime() : 0;
 				final Optional<UsedData> usedData = usedCompute.compute(inputParticle, inputUsed, outputParticle, outputUsed);
+				if (timed) {
+					transitionProfiler.record(profile, TransitionProfiler.Phase.USED_COMPUTE, System.nanoTime() - phaseStart);
+				}
 				if (usedData.isPresent()) {
 					if (prevUsedData != null && prevUsedData.isPresent()) {
 						return Optional.of(
@@ -304,9 +398,13 @@ public final class ConstraintMachine {
 				} else {
 					final WitnessValidator<Particle> witnessValidator = testInput ? transitionProcedure.inputWitnessValidator()
 						: transitionProcedure.outputWitnessValidator();
+					phaseStart = timed ? System.nanoTime() : 0;
 					final WitnessValidatorResult inputWitness = witnessValidator.validate(
 						testInput ? inputParticle : outputParticle, validationState
 					);
+					if (timed) {
+						transitionProfiler.record(profile, TransitionProfiler.Phase.WITNESS_VALIDATION, System.nanoTime() - phaseStart);
+					}
 
 					if (inputWitness.isError()) {
 						return Optional.of(
@@ -346,6 +444,10 @@ public final class ConstraintMachine {
 
 		for (CMMicroInstruction cmMicroInstruction : microInstructions) {
 			final DataPointer dp = DataPointer.ofParticle(particleGroupIndex, particleIndex);
+			if (!validationState.executionMeter.chargeMicroInstruction()) {
+				return Optional.of(new CMError(dp, CMErrorCode.EXECUTION_BUDGET_EXCEEDED, validationState));
+			}
+
 			switch (cmMicroInstruction.getMicroOp()) {
 				case CHECK_NEUTRAL_THEN_UP:
 				case CHECK_UP_THEN_DOWN:
@@ -363,6 +465,11 @@ public final class ConstraintMachine {
 
 					final boolean isInput = validationState.push(nextParticle);
 					Optional<CMError> error = validateParticle(validationState, nextParticle, isInput, dp);
+					// Signatures left unverified over budget read as unsigned, which may fail the particle or,
+					// if a witness validator accepts unsigned particles, let it through
+					if (validationState.executionMeter.isExceeded()) {
+						return Optional.of(new CMError(dp, CMErrorCode.EXECUTION_BUDGET_EXCEEDED, validationState));
+					}
 					if (error.isPresent()) {
 						return error;
 					}
@@ -404,9 +511,28 @@ public final class ConstraintMachine {
 			));
 		}
 
+		// Never succeed over budget, whichever check spent it
+		if (validationState.executionMeter.isExceeded()) {
+			return Optional.of(new CMError(
+				DataPointer.ofParticle(particleGroupIndex, particleIndex),
+				CMErrorCode.EXECUTION_BUDGET_EXCEEDED,
+				validationState
+			));
+		}
+
 		return Optional.empty();
 	}
 
+	/**
+	 * Creates a meter with the execution budget of the given permission level.
+	 *
+	 * @param permissionLevel the permission level the validation executes on
+	 * @return a new execution meter
+	 */
+	public ExecutionMeter newExecutionMeter(PermissionLevel permissionLevel) {
+		return new ExecutionMeter(executionCostModel, executionBudgets.getOrDefault(permissionLevel, Long.MAX_VALUE));
+	}
+
 	/**
 	 * Validates a CM instruction and calculates the necessary state checks and post-validation
 	 * write logic.
@@ -415,12 +541,42 @@ public final class ConstraintMachine {
 	 * @return the first error found, otherwise an empty optional
 	 */
 	public Optional<CMError> validate(CMInstruction cmInstruction, HashCode witness, PermissionLevel permissionLevel) {
+		return validate(cmInstruction, witness, permissionLevel, newExecutionMeter(permissionLevel));
+	}
+
+	/**
+	 * Validates a CM instruction, metering the cost of the validation. Validation is aborted with
+	 * {@link CMErrorCode#EXECUTION_BUDGET_EXCEEDED} as soon as the budget of the meter is exceeded.
+	 *
+	 * @param cmInstruction instruction to validate
+	 * @param executionMeter the meter to charge, which holds the cost consumed once validated
+	 * @return the first error found, otherwise an empty optional
+	 */
+	public Optional<CMError> validate(
+		CMInstruction cmInstruction,
+		HashCode witness,
+		PermissionLevel permissionLevel,
+		ExecutionMeter executionMeter
+	) {
 		final CMValidationState validationState = new CMValidationState(
 			permissionLevel,
 			witness,
-			cmInstruction.getSignatures()
+			cmInstruction.getSignatures(),
+			Objects.requireNonNull(executionMeter)
 		);
 
-		return this.validateMicroInstructions(validationState, cmInstruction.getMicroInstructions());
+		final CMValidateEvent event = new CMValidateEvent();
+		event.begin();
+		final long start = System.nanoTime();
+		final Optional<CMError> error = this.validateMicroInstructions(validationState, cmInstruction.getMicroInstructions());
+		metrics.cmValidated(System.nanoTime() - start);
+		error.ifPresent(e -> metrics.cmRejected(e.getErrorCode()));
+		event.end();
+		if (event.shouldCommit()) {
+			event.addAtom(cmInstruction);
+			error.ifPresent(e -> event.setOutcome(e.getErrorCode()));
+			event.commit();
+		}
+		return error;
 	}
 }
@@ -0,0 +1,71 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.constraintmachine;
+
+/**
+ * Deterministic weights, in abstract cost units, of the work done by the {@link ConstraintMachine}
+ * when validating an instruction.
+ */
+public final class ExecutionCostModel {
+	/**
+	 * The default cost model, weighing a signature verification as much as a hundred
+	 * micro instructions.
+	 */
+	public static final ExecutionCostModel DEFAULT = new ExecutionCostModel(1, 2, 100);
+
+	private final long microInstructionCost;
+	private final long transitionStepCost;
+	private final long signatureVerificationCost;
+
+	/**
+	 * Creates a cost model with the given weights.
+	 *
+	 * @param microInstructionCost the cost of executing a micro instruction
+	 * @param transitionStepCost the cost of a precondition or used compute step of a transition procedure,
+	 * 	where the amount arithmetic of fungible transitions happens
+	 * @param signatureVerificationCost the cost of verifying a signature
+	 */
+	public ExecutionCostModel(long microInstructionCost, long transitionStepCost, long signatureVerificationCost) {
+		if (microInstructionCost < 0 || transitionStepCost < 0 || signatureVerificationCost < 0) {
+			throw new IllegalArgumentException(String.format("Costs must not be negative but were %s, %s, %s",
+				microInstructionCost, transitionStepCost, signatureVerificationCost));
+		}
+
+		this.microInstructionCost = microInstructionCost;
+		this.transitionStepCost = transitionStepCost;
+		this.signatureVerificationCost = signatureVerificationCost;
+	}
+
+	public long getMicroInstructionCost() {
+		return microInstructionCost;
+	}
+
+	public long getTransitionStepCost() {
+		return transitionStepCost;
+	}
+
+	public long getSignatureVerificationCost() {
+		return signatureVerificationCost;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s{microInstruction=%s transitionStep=%s signatureVerification=%s}",
+			getClass().getSimpleName(), microInstructionCost, transitionStepCost, signatureVerificationCost);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.constraintmachine;
+
+import java.util.Objects;
+
+/**
+ * Meters the cost of validating a single instruction against a budget. Not thread safe.
+ */
+public final class ExecutionMeter {
+	private final ExecutionCostModel costModel;
+	private final long budget;
+	private long cost;
+
+	/**
+	 * Creates a meter for a single validation.
+	 *
+	 * @param costModel the weights of the work done
+	 * @param budget the maximum cost the validation may consume
+	 */
+	public ExecutionMeter(ExecutionCostModel costModel, long budget) {
+		if (budget < 0) {
+			throw new IllegalArgumentException("budget must not be negative but was " + budget);
+		}
+
+		this.costModel = Objects.requireNonNull(costModel);
+		this.budget = budget;
+	}
+
+	boolean chargeMicroInstruction() {
+		return charge(costModel.getMicroInstructionCost());
+	}
+
+	boolean chargeTransitionStep() {
+		return charge(costModel.getTransitionStepCost());
+	}
+
+	boolean chargeSignatureVerification() {
+		return charge(costModel.getSignatureVerificationCost());
+	}
+
+	private boolean charge(long units) {
+		// Saturate rather than overflow on absurd weights
+		cost = units > Long.MAX_VALUE - cost ? Long.MAX_VALUE : cost + units;
+		return !isExceeded();
+	}
+
+	/**
+	 * @return whether the cost consumed has exceeded the budget
+	 */
+	public boolean isExceeded() {
+		return cost > budget;
+	}
+
+	/**
+	 * @return the cost consumed so far, including the charge which exceeded the budget, if any
+	 */
+	public long getCost() {
+		return cost;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s{cost=%s budget=%s}", getClass().getSimpleName(), cost, budget);
+	}
+}
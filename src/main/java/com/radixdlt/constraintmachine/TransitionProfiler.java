@@ -0,0 +1,171 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.constraintmachine;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Profiler of the execution of transition procedures by the {@link ConstraintMachine},
+ * counting every invocation per {@link TransitionToken} and timing every n-th invocation
+ * split by phase so it is cheap enough to leave enabled.
+ * <p>
+ * Register with {@link ConstraintMachine.Builder#setTransitionProfiler(TransitionProfiler)}.
+ */
+public final class TransitionProfiler {
+	/**
+	 * The phases of the execution of a transition procedure.
+	 */
+	public enum Phase {
+		PRECONDITION,
+		USED_COMPUTE,
+		WITNESS_VALIDATION
+	}
+
+	private static final Phase[] PHASES = Phase.values();
+
+	static final class Stats {
+		private final AtomicLong invocations = new AtomicLong();
+		private final LongAdder[] sampledCounts = new LongAdder[PHASES.length];
+		private final LongAdder[] sampledNanos = new LongAdder[PHASES.length];
+
+		private Stats() {
+			for (int i = 0; i < PHASES.length; i++) {
+				sampledCounts[i] = new LongAdder();
+				sampledNanos[i] = new LongAdder();
+			}
+		}
+	}
+
+	/**
+	 * The profile of the transition procedure of a {@link TransitionToken}.
+	 */
+	public static final class TransitionProfile {
+		private final long invocations;
+		private final ImmutableMap<Phase, Long> sampledCounts;
+		private final ImmutableMap<Phase, Long> sampledNanos;
+
+		private TransitionProfile(long invocations, ImmutableMap<Phase, Long> sampledCounts, ImmutableMap<Phase, Long> sampledNanos) {
+			this.invocations = invocations;
+			this.sampledCounts = sampledCounts;
+			this.sampledNanos = sampledNanos;
+		}
+
+		public long getInvocations() {
+			return invocations;
+		}
+
+		/**
+		 * Retrieves the number of timed executions of a phase.
+		 *
+		 * @param phase the phase
+		 * @return the number of timed executions
+		 */
+		public long getSampledCount(Phase phase) {
+			return sampledCounts.get(phase);
+		}
+
+		/**
+		 * Retrieves the total time of the timed executions of a phase.
+		 *
+		 * @param phase the phase
+		 * @return the total time in nanoseconds
+		 */
+		public long getSampledNanos(Phase phase) {
+			return sampledNanos.get(phase);
+		}
+
+		/**
+		 * Estimates the cumulative time spent in a phase over all invocations from the timed executions.
+		 *
+		 * @param phase the phase
+		 * @return the estimated cumulative time in nanoseconds
+		 */
+		public long getEstimatedNanos(Phase phase) {
+			final long count = getSampledCount(phase);
+			return count == 0 ? 0 : (long) ((double) getSampledNanos(phase) / count * invocations);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s{invocations=%s sampledNanos=%s}", getClass().getSimpleName(), invocations, sampledNanos);
+		}
+	}
+
+	private final int sampleInterval;
+	private final Map<TransitionToken, Stats> stats = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a profiler which times one in every {@code sampleInterval} invocations per transition.
+	 *
+	 * @param sampleInterval the interval between timed invocations, 1 to time every invocation
+	 */
+	public TransitionProfiler(int sampleInterval) {
+		if (sampleInterval <= 0) {
+			throw new IllegalArgumentException("sampleInterval must be positive but was " + sampleInterval);
+		}
+
+		this.sampleInterval = sampleInterval;
+	}
+
+	Stats stats(TransitionToken transitionToken) {
+		return stats.computeIfAbsent(transitionToken, t -> new Stats());
+	}
+
+	// Counts an invocation, returning whether it should be timed
+	boolean invoked(Stats transitionStats) {
+		return transitionStats.invocations.getAndIncrement() % sampleInterval == 0;
+	}
+
+	void record(Stats transitionStats, Phase phase, long nanos) {
+		transitionStats.sampledCounts[phase.ordinal()].increment();
+		transitionStats.sampledNanos[phase.ordinal()].add(nanos);
+	}
+
+	/**
+	 * Retrieves the profiles of all transitions invoked so far.
+	 *
+	 * @return the profiles by transition token
+	 */
+	public ImmutableMap<TransitionToken, TransitionProfile> snapshot() {
+		final ImmutableMap.Builder<TransitionToken, TransitionProfile> profiles = ImmutableMap.builder();
+		stats.forEach((transitionToken, transitionStats) -> {
+			final ImmutableMap.Builder<Phase, Long> sampledCounts = ImmutableMap.builder();
+			final ImmutableMap.Builder<Phase, Long> sampledNanos = ImmutableMap.builder();
+			for (Phase phase : PHASES) {
+				sampledCounts.put(phase, transitionStats.sampledCounts[phase.ordinal()].sum());
+				sampledNanos.put(phase, transitionStats.sampledNanos[phase.ordinal()].sum());
+			}
+			profiles.put(
+				transitionToken,
+				new TransitionProfile(transitionStats.invocations.get(), sampledCounts.build(), sampledNanos.build())
+			);
+		});
+		return profiles.build();
+	}
+
+	/**
+	 * Discards all profiles.
+	 */
+	public void reset() {
+		stats.clear();
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import java.util.List;
+
+/**
+ * Listener to atoms committed by a {@link RadixEngine}, called asynchronously and in commit
+ * order with batches of committed atoms.
+ * <p>
+ * Register with {@link RadixEngine#addCommitListener(CommitListener, java.util.concurrent.Executor, int, OverflowPolicy)}.
+ *
+ * @param <T> the type of engine atom
+ */
+public interface CommitListener<T extends RadixEngineAtom> {
+	/**
+	 * What to do with a committed atom if the buffer of a listener is full.
+	 */
+	enum OverflowPolicy {
+		/**
+		 * Drop the atom, notifying the listener with {@link #onDropped(long)}.
+		 * Never delays commits.
+		 */
+		DROP,
+		/**
+		 * Block the committing thread until the listener has caught up, applying back pressure to the engine.
+		 * The atom is already committed and the engine lock released by then, so the listener may read
+		 * the state of the engine while commits are blocked on it.
+		 */
+		BLOCK
+	}
+
+	/**
+	 * Called with the atoms committed since the last call.
+	 *
+	 * @param committedAtoms the committed atoms in commit order
+	 */
+	void onCommitted(List<CommittedAtom<T>> committedAtoms);
+
+	/**
+	 * Called before the next batch when atoms have been dropped as the listener did not keep up.
+	 *
+	 * @param count the number of atoms dropped
+	 */
+	default void onDropped(long count) {
+		// Nothing to do by default
+	}
+
+	/**
+	 * Called when {@link #onCommitted(List)} throws, with the batch it failed on. Delivery carries on
+	 * with the next batch. By default the failure is passed to the uncaught exception handler of the
+	 * delivering thread.
+	 *
+	 * @param committedAtoms the committed atoms which failed to be handled
+	 * @param failure what the listener threw
+	 */
+	default void onFailed(List<CommittedAtom<T>> committedAtoms, RuntimeException failure) {
+		final Thread thread = Thread.currentThread();
+		thread.getUncaughtExceptionHandler().uncaughtException(thread, failure);
+	}
+}
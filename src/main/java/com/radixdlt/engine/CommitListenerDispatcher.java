@@ -0,0 +1,117 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import com.radixdlt.engine.CommitListener.OverflowPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers committed atoms to a {@link CommitListener} on an executor through a bounded buffer,
+ * with at most one delivery task scheduled at a time so batches are delivered in order.
+ * A batch the listener fails on is reported to it and delivery carries on with the next batch.
+ * If the executor rejects delivery the buffered atoms are dropped, so commits never block on a
+ * listener which can no longer be delivered to.
+ */
+final class CommitListenerDispatcher<T extends RadixEngineAtom> {
+	private final CommitListener<T> listener;
+	private final Executor executor;
+	private final OverflowPolicy overflowPolicy;
+	private final int maxBatchSize;
+	private final BlockingQueue<CommittedAtom<T>> buffer;
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final AtomicLong dropped = new AtomicLong();
+
+	CommitListenerDispatcher(CommitListener<T> listener, Executor executor, int bufferSize, OverflowPolicy overflowPolicy) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("bufferSize must be positive but was " + bufferSize);
+		}
+
+		this.listener = Objects.requireNonNull(listener);
+		this.executor = Objects.requireNonNull(executor);
+		this.overflowPolicy = Objects.requireNonNull(overflowPolicy);
+		this.maxBatchSize = bufferSize;
+		this.buffer = new ArrayBlockingQueue<>(bufferSize);
+	}
+
+	CommitListener<T> getListener() {
+		return listener;
+	}
+
+	void dispatch(CommittedAtom<T> committedAtom) {
+		if (overflowPolicy == OverflowPolicy.BLOCK) {
+			try {
+				buffer.put(committedAtom);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				dropped.incrementAndGet();
+			}
+		} else if (!buffer.offer(committedAtom)) {
+			dropped.incrementAndGet();
+		}
+		schedule();
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(this::deliver);
+			} catch (RejectedExecutionException e) {
+				dropped.addAndGet(buffer.drainTo(new ArrayList<>()));
+				scheduled.set(false);
+			}
+		}
+	}
+
+	private void deliver() {
+		try {
+			final List<CommittedAtom<T>> batch = new ArrayList<>();
+			while (true) {
+				final long droppedCount = dropped.getAndSet(0);
+				if (droppedCount > 0) {
+					listener.onDropped(droppedCount);
+				}
+				buffer.drainTo(batch, maxBatchSize);
+				if (batch.isEmpty()) {
+					break;
+				}
+				final List<CommittedAtom<T>> committedAtoms = List.copyOf(batch);
+				batch.clear();
+				try {
+					listener.onCommitted(committedAtoms);
+				} catch (RuntimeException e) {
+					listener.onFailed(committedAtoms, e);
+				}
+			}
+		} finally {
+			scheduled.set(false);
+		}
+
+		// Atoms may have been buffered after the last drain but before unscheduling
+		if (!buffer.isEmpty() || dropped.get() > 0) {
+			schedule();
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import com.google.common.collect.ImmutableList;
+import com.radixdlt.constraintmachine.Particle;
+import java.util.Objects;
+
+/**
+ * An atom which has been committed by a {@link RadixEngine}, along with the particles
+ * it spun up and down and the state version it was committed at.
+ *
+ * @param <T> the type of engine atom
+ */
+public final class CommittedAtom<T extends RadixEngineAtom> {
+	private final T atom;
+	private final ImmutableList<Particle> upParticles;
+	private final ImmutableList<Particle> downParticles;
+	private final long version;
+
+	CommittedAtom(T atom, ImmutableList<Particle> upParticles, ImmutableList<Particle> downParticles, long version) {
+		this.atom = Objects.requireNonNull(atom);
+		this.upParticles = Objects.requireNonNull(upParticles);
+		this.downParticles = Objects.requireNonNull(downParticles);
+		this.version = version;
+	}
+
+	public T getAtom() {
+		return atom;
+	}
+
+	public ImmutableList<Particle> getUpParticles() {
+		return upParticles;
+	}
+
+	public ImmutableList<Particle> getDownParticles() {
+		return downParticles;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s{version=%s ups=%s downs=%s}", getClass().getSimpleName(), version, upParticles.size(), downParticles.size());
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import com.radixdlt.constraintmachine.Particle;
+
+/**
+ * A mutable index over particles of a given class which is maintained
+ * incrementally by the {@link RadixEngine} as particles are spun up and down.
+ * Unlike a state computer, an index is updated in place rather than copied on
+ * every particle.
+ *
+ * @param <P> the class of the particles indexed
+ */
+public interface EngineIndex<P extends Particle> {
+
+	/**
+	 * Called when a particle has been spun up.
+	 *
+	 * @param particle the particle which is now up
+	 */
+	void up(P particle);
+
+	/**
+	 * Called when a particle has been spun down.
+	 *
+	 * @param particle the particle which is now down
+	 */
+	void down(P particle);
+
+	/**
+	 * Called once all the particles of an atom have been spun, and once initialization
+	 * from the store has completed. Does nothing by default.
+	 */
+	default void atomCommitted() {
+		// Nothing to complete by default
+	}
+
+	/**
+	 * Creates a transient branch of this index which reads through to this index
+	 * but keeps its own updates to itself. This index must not be updated while
+	 * the branch is in use.
+	 *
+	 * @return the branched index
+	 */
+	EngineIndex<P> branch();
+
+	/**
+	 * Creates an immutable snapshot of the current state of this index which may be read
+	 * while this index continues to be updated. Indexes which do not support snapshots
+	 * return null, and are read while no atoms are being stored instead.
+	 *
+	 * @return the snapshot, or null if not supported
+	 */
+	default EngineIndex<P> snapshot() {
+		return null;
+	}
+}
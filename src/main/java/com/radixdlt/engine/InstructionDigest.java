@@ -0,0 +1,52 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.radixdlt.constraintmachine.CMInstruction;
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.crypto.Hasher;
+
+/**
+ * Digest of the micro instructions of an atom, binding the operations and the
+ * particles spun which the atom witness does not cover.
+ */
+final class InstructionDigest {
+	private InstructionDigest() {
+		throw new IllegalStateException("Cannot instantiate.");
+	}
+
+	/**
+	 * Computes the digest of an instruction.
+	 *
+	 * @param cmInstruction the instruction to digest
+	 * @param hasher the hasher to hash particles with
+	 * @return the digest of the micro instructions
+	 */
+	static HashCode of(CMInstruction cmInstruction, Hasher hasher) {
+		final com.google.common.hash.Hasher digest = Hashing.sha256().newHasher();
+		for (CMMicroInstruction microInstruction : cmInstruction.getMicroInstructions()) {
+			digest.putByte((byte) microInstruction.getMicroOp().ordinal());
+			if (microInstruction.isCheckSpin()) {
+				digest.putBytes(hasher.hash(microInstruction.getParticle()).asBytes());
+			}
+		}
+		return digest.hash();
+	}
+}
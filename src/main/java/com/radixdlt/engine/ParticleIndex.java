@@ -0,0 +1,267 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.identifiers.EUID;
+import com.radixdlt.identifiers.RRI;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * An ordered secondary index of the up particles of a given class by one or more
+ * keys per particle, supporting point and range queries.
+ * <p>
+ * Register with {@link RadixEngine#addIndex(Class, Class, EngineIndex)} and use
+ * {@link RadixEngine#readIndex(Class, Function)} for reads which must observe a
+ * single committed state across several queries. Such reads run against an immutable
+ * {@link #snapshot()} which is copied at most once per committed state.
+ *
+ * @param <K> the class of the keys
+ * @param <P> the class of the particles indexed
+ */
+public final class ParticleIndex<K, P extends Particle> implements EngineIndex<P> {
+	private final Function<P, Set<K>> keyMapper;
+	private final Comparator<? super K> comparator;
+	private final ParticleIndex<K, P> parent;
+	private final TreeMap<K, LinkedHashSet<P>> entries;
+	private final boolean immutable;
+	// Latest snapshot, reset on every update
+	private ParticleIndex<K, P> snapshot;
+
+	private ParticleIndex(Function<P, Set<K>> keyMapper, Comparator<? super K> comparator, ParticleIndex<K, P> parent) {
+		this(keyMapper, comparator, parent, new TreeMap<>(comparator), false);
+	}
+
+	private ParticleIndex(
+		Function<P, Set<K>> keyMapper,
+		Comparator<? super K> comparator,
+		ParticleIndex<K, P> parent,
+		TreeMap<K, LinkedHashSet<P>> entries,
+		boolean immutable
+	) {
+		this.keyMapper = Objects.requireNonNull(keyMapper);
+		this.comparator = Objects.requireNonNull(comparator);
+		this.parent = parent;
+		this.entries = entries;
+		this.immutable = immutable;
+	}
+
+	/**
+	 * Creates an empty index.
+	 *
+	 * @param keyMapper deterministic function which maps a particle to the keys it is indexed by
+	 * @param comparator the order of the keys
+	 * @param <K> the class of the keys
+	 * @param <P> the class of the particles indexed
+	 * @return the empty index
+	 */
+	public static <K, P extends Particle> ParticleIndex<K, P> create(Function<P, Set<K>> keyMapper, Comparator<? super K> comparator) {
+		return new ParticleIndex<>(keyMapper, comparator, null);
+	}
+
+	/**
+	 * Creates an empty index of particles by their destinations, and hence by the addresses they concern.
+	 *
+	 * @return the empty index
+	 */
+	public static ParticleIndex<EUID, Particle> byDestination() {
+		return create(Particle::getDestinations, Comparator.naturalOrder());
+	}
+
+	/**
+	 * Creates an empty index of particles by their class, ordered by class name.
+	 *
+	 * @return the empty index
+	 */
+	public static ParticleIndex<Class<?>, Particle> byClass() {
+		return create(p -> ImmutableSet.<Class<?>>of(p.getClass()), Comparator.comparing(Class::getName));
+	}
+
+	/**
+	 * Creates an empty index of particles by the RRI they are mapped to.
+	 *
+	 * @param rriMapper function which maps a particle to its RRI, if it has one
+	 * @return the empty index
+	 * @see com.radixdlt.atomos.CMAtomOS#buildRriMapper()
+	 */
+	public static ParticleIndex<RRI, Particle> byRri(Function<Particle, Optional<RRI>> rriMapper) {
+		return create(
+			p -> rriMapper.apply(p).map(ImmutableSet::of).orElseGet(ImmutableSet::of),
+			Comparator.comparing((RRI rri) -> rri.getAddress().euid()).thenComparing(RRI::getName)
+		);
+	}
+
+	@Override
+	public synchronized void up(P particle) {
+		checkMutable();
+		for (K key : keyMapper.apply(particle)) {
+			writableEntry(key).add(particle);
+		}
+	}
+
+	@Override
+	public synchronized void down(P particle) {
+		checkMutable();
+		for (K key : keyMapper.apply(particle)) {
+			final LinkedHashSet<P> entry = writableEntry(key);
+			entry.remove(particle);
+			// Empty entries must be kept in a branch to shadow the parent's entry
+			if (parent == null && entry.isEmpty()) {
+				entries.remove(key);
+			}
+		}
+	}
+
+	private void checkMutable() {
+		if (immutable) {
+			throw new UnsupportedOperationException("Index snapshots are immutable");
+		}
+		snapshot = null;
+	}
+
+	@Override
+	public ParticleIndex<K, P> branch() {
+		return new ParticleIndex<>(keyMapper, comparator, this);
+	}
+
+	/**
+	 * Retrieves an immutable copy of the current state of this index which may be read while
+	 * this index is updated. The copy is taken on the first call after an update and shared
+	 * by subsequent calls until the next update.
+	 *
+	 * @return the snapshot
+	 */
+	@Override
+	public synchronized ParticleIndex<K, P> snapshot() {
+		if (immutable) {
+			return this;
+		}
+
+		if (snapshot == null) {
+			snapshot = new ParticleIndex<>(keyMapper, comparator, null, copyEntries(), true);
+		}
+		return snapshot;
+	}
+
+	private TreeMap<K, LinkedHashSet<P>> copyEntries() {
+		final TreeMap<K, LinkedHashSet<P>> copy = parent == null ? new TreeMap<>(comparator) : parent.copyEntriesSynchronized();
+		entries.forEach((key, entry) -> {
+			// Empty entries of a branch shadow the parent's entry
+			if (entry.isEmpty()) {
+				copy.remove(key);
+			} else {
+				copy.put(key, new LinkedHashSet<>(entry));
+			}
+		});
+		return copy;
+	}
+
+	private synchronized TreeMap<K, LinkedHashSet<P>> copyEntriesSynchronized() {
+		return copyEntries();
+	}
+
+	/**
+	 * Retrieves the up particles indexed by a key in the order they were created.
+	 *
+	 * @param key the key to look up
+	 * @return the particles, empty if there are none
+	 */
+	public synchronized ImmutableList<P> get(K key) {
+		final Set<P> entry = readEntry(key);
+		return entry == null ? ImmutableList.of() : ImmutableList.copyOf(entry);
+	}
+
+	/**
+	 * Checks whether any up particle is indexed by a key.
+	 *
+	 * @param key the key to look up
+	 * @return true if there is an up particle for the key
+	 */
+	public synchronized boolean contains(K key) {
+		final Set<P> entry = readEntry(key);
+		return entry != null && !entry.isEmpty();
+	}
+
+	/**
+	 * Retrieves the up particles indexed by any key within a range, ordered by key.
+	 * A particle indexed by several keys in the range is returned once.
+	 *
+	 * @param fromKey the lowest key, inclusive
+	 * @param toKey the highest key, exclusive
+	 * @return the particles, empty if there are none
+	 */
+	public synchronized ImmutableList<P> range(K fromKey, K toKey) {
+		final ImmutableSet.Builder<P> particles = ImmutableSet.builder();
+		for (Set<P> entry : readRange(fromKey, toKey).values()) {
+			particles.addAll(entry);
+		}
+		return particles.build().asList();
+	}
+
+	private Set<P> readEntry(K key) {
+		final Set<P> entry = entries.get(key);
+		if (entry != null || parent == null) {
+			return entry;
+		}
+
+		return parent.readEntrySynchronized(key);
+	}
+
+	private synchronized Set<P> readEntrySynchronized(K key) {
+		return readEntry(key);
+	}
+
+	// Only valid while the monitor of this index is held
+	private NavigableMap<K, ? extends Set<P>> readRange(K fromKey, K toKey) {
+		if (parent == null) {
+			return entries.subMap(fromKey, true, toKey, false);
+		}
+
+		final TreeMap<K, Set<P>> merged = new TreeMap<>(comparator);
+		merged.putAll(parent.readRangeSynchronized(fromKey, toKey));
+		merged.putAll(entries.subMap(fromKey, true, toKey, false));
+		return merged;
+	}
+
+	// Copied so that nothing of the parent is read once its monitor is released
+	private synchronized NavigableMap<K, Set<P>> readRangeSynchronized(K fromKey, K toKey) {
+		final TreeMap<K, Set<P>> copy = new TreeMap<>(comparator);
+		readRange(fromKey, toKey).forEach((key, entry) -> copy.put(key, ImmutableSet.copyOf(entry)));
+		return copy;
+	}
+
+	private LinkedHashSet<P> writableEntry(K key) {
+		// Entries are only written by up and down, which have already checked mutability
+		LinkedHashSet<P> entry = entries.get(key);
+		if (entry == null) {
+			final Set<P> parentEntry = parent == null ? null : parent.readEntrySynchronized(key);
+			entry = parentEntry == null ? new LinkedHashSet<>() : new LinkedHashSet<>(parentEntry);
+			entries.put(key, entry);
+		}
+		return entry;
+	}
+}
@@ -17,6 +17,8 @@
 
 package com.radixdlt.engine;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
 import com.radixdlt.atomos.Result;
 import com.radixdlt.constraintmachine.DataPointer;
 import com.radixdlt.constraintmachine.PermissionLevel;
@@ -27,43 +29,82 @@ import com.radixdlt.constraintmachine.CMError;
 import com.radixdlt.constraintmachine.CMMicroInstruction;
 import com.radixdlt.constraintmachine.CMMicroInstruction.CMMicroOp;
 import com.radixdlt.constraintmachine.ConstraintMachine;
+import com.radixdlt.constraintmachine.ExecutionMeter;
+import com.radixdlt.crypto.Hasher;
+import com.radixdlt.engine.journal.CommitJournal;
+import com.radixdlt.engine.journal.JournalEntry;
+import com.radixdlt.jfr.AtomEvent;
+import com.radixdlt.jfr.BranchEvent;
+import com.radixdlt.jfr.CheckAndStoreEvent;
+import com.radixdlt.jfr.StaticCheckEvent;
+import com.radixdlt.metrics.EngineMetrics;
 import com.radixdlt.store.CMStore;
 import com.radixdlt.store.CMStores;
 import com.radixdlt.store.EngineStore;
+import com.radixdlt.store.MultiVersionEngineStore;
 import com.radixdlt.store.SpinStateMachine;
 
 import com.radixdlt.store.TransientEngineStore;
+import com.radixdlt.utils.Pair;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
 import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Top Level Class for the Radix Engine, a real-time, shardable, distributed state machine.
  */
 public final class RadixEngine<T extends RadixEngineAtom> {
-	private static class ApplicationStateComputer<U, V extends Particle, T extends RadixEngineAtom> {
+	private interface ParticleSpinConsumer {
+		Class<? extends Particle> particleClass();
+
+		void up(Particle particle);
+
+		void down(Particle particle);
+	}
+
+	private static class ApplicationStateComputer<U, V extends Particle, T extends RadixEngineAtom> implements ParticleSpinConsumer {
 		private final Class<V> particleClass;
 		private final BiFunction<U, V, U> outputReducer;
 		private final BiFunction<U, V, U> inputReducer;
+		private final BinaryOperator<U> combiner;
 		private U curValue;
 
 		ApplicationStateComputer(
 			Class<V> particleClass,
 			U initialValue,
 			BiFunction<U, V, U> outputReducer,
-			BiFunction<U, V, U> inputReducer
+			BiFunction<U, V, U> inputReducer,
+			BinaryOperator<U> combiner
 		) {
 			this.particleClass = particleClass;
 			this.curValue = initialValue;
 			this.outputReducer = outputReducer;
 			this.inputReducer = inputReducer;
+			this.combiner = combiner;
 		}
 
 		ApplicationStateComputer<U, V, T> copy() {
@@ -71,34 +112,351 @@ public final class RadixEngine<T extends RadixEngineAtom> {
 				particleClass,
 				curValue,
 				outputReducer,
-				inputReducer
+				inputReducer,
+				combiner
 			);
 		}
 
+		boolean isAssociative() {
+			return combiner != null;
+		}
+
+		void initialize(EngineStore<T> engineStore) {
+			if (combiner != null) {
+				curValue = engineStore.compute(particleClass, curValue, outputReducer, inputReducer, combiner);
+			} else {
+				curValue = engineStore.compute(particleClass, curValue, outputReducer, inputReducer);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private U value(Object value) {
+			return (U) value;
+		}
+
+		Object reduce(Object value, Particle particle, boolean up) {
+			return up
+				? outputReducer.apply(value(value), particleClass.cast(particle))
+				: inputReducer.apply(value(value), particleClass.cast(particle));
+		}
+
+		Object combine(Object value0, Object value1) {
+			return combiner.apply(value(value0), value(value1));
+		}
+
+		void setValue(Object value) {
+			curValue = value(value);
+		}
+
+		@Override
+		public Class<V> particleClass() {
+			return particleClass;
+		}
+
+		@Override
+		public void up(Particle particle) {
+			curValue = outputReducer.apply(curValue, particleClass.cast(particle));
+		}
+
+		@Override
+		public void down(Particle particle) {
+			curValue = inputReducer.apply(curValue, particleClass.cast(particle));
+		}
+
+		void processCheckSpin(CMMicroInstruction cmMicroInstruction) {
+			if (particleClass.isInstance(cmMicroInstruction.getParticle())) {
+				if (cmMicroInstruction.getCheckSpin() == Spin.NEUTRAL) {
+					up(cmMicroInstruction.getParticle());
+				} else {
+					down(cmMicroInstruction.getParticle());
+				}
+			}
+		}
+	}
+
+	private static class ApplicationIndex<V extends Particle, T extends RadixEngineAtom> implements ParticleSpinConsumer {
+		private final Class<V> particleClass;
+		private final EngineIndex<V> index;
+
+		ApplicationIndex(Class<V> particleClass, EngineIndex<V> index) {
+			this.particleClass = particleClass;
+			this.index = index;
+		}
+
+		ApplicationIndex<V, T> branch() {
+			return new ApplicationIndex<>(particleClass, index.branch());
+		}
+
+		// Branches off an immutable snapshot so the branch is unaffected by later commits
+		ApplicationIndex<V, T> snapshotBranch() {
+			final EngineIndex<V> snapshot = index.snapshot();
+			if (snapshot == null) {
+				throw new IllegalStateException(
+					String.format("Index %s does not support snapshots", index.getClass().getSimpleName())
+				);
+			}
+			return new ApplicationIndex<>(particleClass, snapshot.branch());
+		}
+
 		void initialize(EngineStore<T> engineStore) {
-			curValue = engineStore.compute(particleClass, curValue, outputReducer, inputReducer);
+			engineStore.compute(
+				particleClass,
+				index,
+				(i, p) -> {
+					i.up(p);
+					return i;
+				},
+				(i, p) -> {
+					i.down(p);
+					return i;
+				}
+			);
+			index.atomCommitted();
+		}
+
+		void atomCommitted() {
+			index.atomCommitted();
+		}
+
+		@Override
+		public Class<V> particleClass() {
+			return particleClass;
+		}
+
+		@Override
+		public void up(Particle particle) {
+			index.up(particleClass.cast(particle));
+		}
+
+		@Override
+		public void down(Particle particle) {
+			index.down(particleClass.cast(particle));
 		}
 
 		void processCheckSpin(CMMicroInstruction cmMicroInstruction) {
 			if (particleClass.isInstance(cmMicroInstruction.getParticle())) {
-				V particle = particleClass.cast(cmMicroInstruction.getParticle());
 				if (cmMicroInstruction.getCheckSpin() == Spin.NEUTRAL) {
-					curValue = outputReducer.apply(curValue, particle);
+					up(cmMicroInstruction.getParticle());
+				} else {
+					down(cmMicroInstruction.getParticle());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Feeds each particle to every consumer interested in its class, resolving
+	 * the interested consumers once per concrete particle class.
+	 */
+	private static final class ParticleClassDispatcher {
+		private final List<ParticleSpinConsumer> consumers;
+		private final Map<Class<?>, List<ParticleSpinConsumer>> consumersByClass = new HashMap<>();
+
+		ParticleClassDispatcher(List<ParticleSpinConsumer> consumers) {
+			this.consumers = consumers;
+		}
+
+		private List<ParticleSpinConsumer> consumersOf(Particle particle) {
+			return consumersByClass.computeIfAbsent(particle.getClass(), c -> consumers.stream()
+				.filter(consumer -> consumer.particleClass().isAssignableFrom(c))
+				.collect(Collectors.toList()));
+		}
+
+		ParticleClassDispatcher up(Particle particle) {
+			for (ParticleSpinConsumer consumer : consumersOf(particle)) {
+				consumer.up(particle);
+			}
+			return this;
+		}
+
+		ParticleClassDispatcher down(Particle particle) {
+			for (ParticleSpinConsumer consumer : consumersOf(particle)) {
+				consumer.down(particle);
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Associative state computers folded together over the store as a vector of
+	 * their values, so that the store may reduce segments in parallel.
+	 */
+	private static final class AssociativeStateComputers<T extends RadixEngineAtom> {
+		private final List<ApplicationStateComputer<?, ?, T>> computers;
+		private final Map<Class<?>, int[]> computersByClass = new ConcurrentHashMap<>();
+
+		AssociativeStateComputers(List<ApplicationStateComputer<?, ?, T>> computers) {
+			this.computers = computers;
+		}
+
+		private int[] computersOf(Particle particle) {
+			return computersByClass.computeIfAbsent(particle.getClass(), c -> IntStream.range(0, computers.size())
+				.filter(i -> computers.get(i).particleClass().isAssignableFrom(c))
+				.toArray());
+		}
+
+		private Object[] reduce(Object[] values, Particle particle, boolean up) {
+			final int[] interested = computersOf(particle);
+			if (interested.length == 0) {
+				return values;
+			}
+
+			// Values may be shared between segments so must not be updated in place
+			final Object[] next = values.clone();
+			for (int i : interested) {
+				next[i] = computers.get(i).reduce(next[i], particle, up);
+			}
+			return next;
+		}
+
+		private Object[] combine(Object[] values0, Object[] values1) {
+			final Object[] combined = new Object[values0.length];
+			for (int i = 0; i < combined.length; i++) {
+				combined[i] = computers.get(i).combine(values0[i], values1[i]);
+			}
+			return combined;
+		}
+
+		void initialize(EngineStore<T> engineStore) {
+			final Object[] identity = computers.stream().map(c -> c.curValue).toArray();
+			final Object[] values = engineStore.compute(
+				Particle.class,
+				identity,
+				(v, p) -> reduce(v, p, true),
+				(v, p) -> reduce(v, p, false),
+				this::combine
+			);
+			for (int i = 0; i < values.length; i++) {
+				computers.get(i).setValue(values[i]);
+			}
+		}
+	}
+
+	/**
+	 * A set of state computers and indexes which are initialized together
+	 * in a single pass over the store.
+	 */
+	public final class StateComputerBatch {
+		private final Map<Class<?>, ApplicationStateComputer<?, ?, T>> batchStateComputers = new LinkedHashMap<>();
+		private final Map<Class<?>, ApplicationIndex<?, T>> batchIndexes = new LinkedHashMap<>();
+
+		private StateComputerBatch() {
+		}
+
+		/**
+		 * Adds a state computer to this batch.
+		 *
+		 * @see RadixEngine#addStateComputer(Class, Class, Object, BiFunction, BiFunction)
+		 */
+		public <U, V extends Particle, W extends U> StateComputerBatch addStateComputer(
+			Class<V> particleClass,
+			Class<U> computerClass,
+			W initial,
+			BiFunction<U, V, U> outputReducer,
+			BiFunction<U, V, U> inputReducer
+		) {
+			ApplicationStateComputer<U, V, T> applicationStateComputer = new ApplicationStateComputer<>(
+				particleClass, initial, outputReducer, inputReducer, null
+			);
+			batchStateComputers.put(computerClass, applicationStateComputer);
+			return this;
+		}
+
+		/**
+		 * Adds an associative state computer to this batch. All associative state computers
+		 * of a batch are initialized together in a single pass which the store may parallelize.
+		 *
+		 * @see RadixEngine#addStateComputer(Class, Class, Object, BiFunction, BiFunction, BinaryOperator)
+		 */
+		public <U, V extends Particle, W extends U> StateComputerBatch addStateComputer(
+			Class<V> particleClass,
+			Class<U> computerClass,
+			W identity,
+			BiFunction<U, V, U> outputReducer,
+			BiFunction<U, V, U> inputReducer,
+			BinaryOperator<U> combiner
+		) {
+			ApplicationStateComputer<U, V, T> applicationStateComputer = new ApplicationStateComputer<>(
+				particleClass, identity, outputReducer, inputReducer, Objects.requireNonNull(combiner)
+			);
+			batchStateComputers.put(computerClass, applicationStateComputer);
+			return this;
+		}
+
+		/**
+		 * Adds an index to this batch.
+		 *
+		 * @see RadixEngine#addIndex(Class, Class, EngineIndex)
+		 */
+		public <V extends Particle, I extends EngineIndex<V>> StateComputerBatch addIndex(
+			Class<V> particleClass,
+			Class<I> indexClass,
+			I index
+		) {
+			ApplicationIndex<V, T> applicationIndex = new ApplicationIndex<>(particleClass, index);
+			batchIndexes.put(indexClass, applicationIndex);
+			return this;
+		}
+
+		/**
+		 * Initializes all state computers and indexes of this batch with a single
+		 * pass over the particles currently in the store and adds them to the engine.
+		 * Associative state computers are initialized in a separate pass which the
+		 * store may parallelize.
+		 */
+		public void initialize() {
+			final List<ParticleSpinConsumer> consumers = new ArrayList<>();
+			final List<ApplicationStateComputer<?, ?, T>> associativeComputers = new ArrayList<>();
+			for (ApplicationStateComputer<?, ?, T> computer : batchStateComputers.values()) {
+				if (computer.isAssociative()) {
+					associativeComputers.add(computer);
 				} else {
-					curValue = inputReducer.apply(curValue, particle);
+					consumers.add(computer);
+				}
+			}
+			consumers.addAll(batchIndexes.values());
+			synchronized (stateUpdateEngineLock) {
+				if (!consumers.isEmpty()) {
+					engineStore.compute(
+						Particle.class,
+						new ParticleClassDispatcher(consumers),
+						ParticleClassDispatcher::up,
+						ParticleClassDispatcher::down
+					);
+				}
+				if (!associativeComputers.isEmpty()) {
+					new AssociativeStateComputers<>(associativeComputers).initialize(engineStore);
 				}
+				batchIndexes.values().forEach(ApplicationIndex::atomCommitted);
+				stateComputers.putAll(batchStateComputers);
+				indexes.putAll(batchIndexes);
 			}
 		}
 	}
 
+	private static final int REPLAY_BATCH_SIZE = 1024;
+	private static final int MAX_RECOVERY_WINDOW = 1 << 20;
+
 	private final ConstraintMachine constraintMachine;
 	private final CMStore virtualizedCMStore;
 	private final UnaryOperator<CMStore> virtualStoreLayer;
 	private final EngineStore<T> engineStore;
 	private final AtomChecker<T> checker;
+	private final StaticCheckCache staticCheckCache;
 	private final Object stateUpdateEngineLock = new Object();
 	private final Map<Class<?>, ApplicationStateComputer<?, ?, T>> stateComputers = new HashMap<>();
+	private final Map<Class<?>, ApplicationIndex<?, T>> indexes = new HashMap<>();
 	private final List<RadixEngineBranch<T>> branches = new ArrayList<>();
+	private StateAccumulator stateAccumulator;
+	private CommitJournal commitJournal;
+	private Function<T, byte[]> journalSerializer;
+	// Set while the journal may hold atoms the store does not, which only recovery can reconcile
+	private boolean journalAhead;
+	private final List<CommitListenerDispatcher<T>> commitListeners = new CopyOnWriteArrayList<>();
+	private final Queue<CommittedAtom<T>> undispatchedCommits = new ConcurrentLinkedQueue<>();
+	private final Object dispatchLock = new Object();
+	private volatile EngineMetrics metrics = EngineMetrics.NOOP;
+	private long stateVersion;
 
 	public RadixEngine(
 		ConstraintMachine constraintMachine,
@@ -113,12 +471,33 @@ public final class RadixEngine<T extends RadixEngineAtom> {
 		UnaryOperator<CMStore> virtualStoreLayer,
 		EngineStore<T> engineStore,
 		AtomChecker<T> checker
+	) {
+		this(constraintMachine, virtualStoreLayer, engineStore, checker, null, 0);
+	}
+
+	/**
+	 * Creates a Radix Engine which remembers up to {@code staticCheckCacheSize} atoms
+	 * which have passed a static check so that a subsequent {@link #checkAndStore(RadixEngineAtom, PermissionLevel)}
+	 * of the same atom at the same permission level skips the constraint machine. The atom checker
+	 * is still run as its checks may depend on more than the atom.
+	 *
+	 * @param hasher the hasher to digest the instructions of cached atoms with, may be null if caching is disabled
+	 * @param staticCheckCacheSize the maximum number of cached static checks, or 0 to disable caching
+	 */
+	public RadixEngine(
+		ConstraintMachine constraintMachine,
+		UnaryOperator<CMStore> virtualStoreLayer,
+		EngineStore<T> engineStore,
+		AtomChecker<T> checker,
+		Hasher hasher,
+		int staticCheckCacheSize
 	) {
 		this.constraintMachine = Objects.requireNonNull(constraintMachine);
 		this.virtualStoreLayer = Objects.requireNonNull(virtualStoreLayer);
 		this.virtualizedCMStore = virtualStoreLayer.apply(CMStores.empty());
 		this.engineStore = Objects.requireNonNull(engineStore);
 		this.checker = checker;
+		this.staticCheckCache = staticCheckCacheSize > 0 ? new StaticCheckCache(hasher, staticCheckCacheSize) : null;
 	}
 
 	/**
@@ -143,7 +522,40 @@ public final class RadixEngine<T extends RadixEngineAtom> {
 		BiFunction<U, V, U> inputReducer
 	) {
 		ApplicationStateComputer<U, V, T> applicationStateComputer = new ApplicationStateComputer<>(
-			particleClass, initial, outputReducer, inputReducer
+			particleClass, initial, outputReducer, inputReducer, null
+		);
+		synchronized (stateUpdateEngineLock) {
+			applicationStateComputer.initialize(this.engineStore);
+			stateComputers.put(computerClass, applicationStateComputer);
+		}
+	}
+
+	/**
+	 * Add a deterministic computation engine whose reducers are associative, so that
+	 * the initial computation over the atoms currently in the store may be split into
+	 * segments which are reduced independently (e.g. in parallel) and then combined.
+	 * Reducing a segment onto any state must equal combining that state with the segment
+	 * reduced onto {@code identity}, as holds for sums and counts.
+	 *
+	 * @param particleClass the particle class of the particles to map
+	 * @param computerClass the class of the computer that computes the state
+	 * @param identity the initial value of the output, which must be an identity of the combiner
+	 * @param outputReducer deterministic function which computes the next state if a particle has been created
+	 * @param inputReducer deterministic function which computes the next state if a particle has been destroyed
+	 * @param combiner associative function which combines the states of two consecutive segments
+	 * @param <U> the class of the state
+	 * @param <V> the class of the particles to map
+	 */
+	public <U, V extends Particle, W extends U> void addStateComputer(
+		Class<V> particleClass,
+		Class<U> computerClass,
+		W identity,
+		BiFunction<U, V, U> outputReducer,
+		BiFunction<U, V, U> inputReducer,
+		BinaryOperator<U> combiner
+	) {
+		ApplicationStateComputer<U, V, T> applicationStateComputer = new ApplicationStateComputer<>(
+			particleClass, identity, outputReducer, inputReducer, Objects.requireNonNull(combiner)
 		);
 		synchronized (stateUpdateEngineLock) {
 			applicationStateComputer.initialize(this.engineStore);
@@ -151,6 +563,16 @@ public final class RadixEngine<T extends RadixEngineAtom> {
 		}
 	}
 
+	/**
+	 * Creates a batch of state computers and indexes which, rather than each
+	 * scanning the store, are all initialized in one pass over the store.
+	 *
+	 * @return an empty batch
+	 */
+	public StateComputerBatch batch() {
+		return new StateComputerBatch();
+	}
+
 	/**
 	 * Retrieves the latest state
 	 * @param applicationStateClass the class of the state to retrieve
@@ -163,17 +585,133 @@ public final class RadixEngine<T extends RadixEngineAtom> {
 		}
 	}
 
-	public void staticCheck(T atom) throws RadixEngineException {
-		staticCheck(atom, PermissionLevel.USER);
+	/**
+	 * Add an index which is incrementally updated as particles of the given class are
+	 * created and destroyed. Initially feeds the index with all the particles currently
+	 * in the store and then updates it as atoms get stored.
+	 *
+	 * @param particleClass the particle class of the particles to index
+	 * @param indexClass the class the index is retrieved by
+	 * @param index the index to maintain
+	 * @param <V> the class of the particles to index
+	 * @param <I> the class of the index
+	 */
+	public <V extends Particle, I extends EngineIndex<V>> void addIndex(
+		Class<V> particleClass,
+		Class<I> indexClass,
+		I index
+	) {
+		ApplicationIndex<V, T> applicationIndex = new ApplicationIndex<>(particleClass, index);
+		synchronized (stateUpdateEngineLock) {
+			applicationIndex.initialize(this.engineStore);
+			indexes.put(indexClass, applicationIndex);
+		}
+	}
+
+	/**
+	 * Retrieves an index previously added with {@link #addIndex(Class, Class, EngineIndex)}
+	 * @param indexClass the class of the index to retrieve
+	 * @param <I> the class of the index to retrieve
+	 * @return the index
+	 */
+	public <I> I getIndex(Class<I> indexClass) {
+		synchronized (stateUpdateEngineLock) {
+			return indexClass.cast(indexes.get(indexClass).index);
+		}
 	}
 
-	public void staticCheck(T atom, PermissionLevel permissionLevel) throws RadixEngineException {
-		final Optional<CMError> error = constraintMachine.validate(atom.getCMInstruction(), atom.getWitness(), permissionLevel);
+	/**
+	 * Reads from an index previously added with {@link #addIndex(Class, Class, EngineIndex)}
+	 * such that all queries made by the reader observe the same committed state. Indexes
+	 * supporting {@link EngineIndex#snapshot()} are read from a snapshot without blocking
+	 * atoms from being stored, other indexes are read while no atoms are being stored.
+	 *
+	 * @param indexClass the class of the index to read
+	 * @param reader function which queries the index
+	 * @param <I> the class of the index to read
+	 * @param <R> the class of the result
+	 * @return the result of the reader
+	 */
+	public <I, R> R readIndex(Class<I> indexClass, Function<I, R> reader) {
+		final EngineIndex<?> snapshot;
+		synchronized (stateUpdateEngineLock) {
+			final EngineIndex<?> index = indexes.get(indexClass).index;
+			snapshot = index.snapshot();
+			if (snapshot == null) {
+				return reader.apply(indexClass.cast(index));
+			}
+		}
+		return reader.apply(indexClass.cast(snapshot));
+	}
+
+	public long staticCheck(T atom) throws RadixEngineException {
+		return staticCheck(atom, PermissionLevel.USER);
+	}
+
+	/**
+	 * Checks an atom against the constraint machine and the atom checker, metering the cost of
+	 * the validation against the execution budget of the permission level.
+	 *
+	 * @param atom the atom to check
+	 * @param permissionLevel permission level to execute on
+	 * @return the execution cost of validating the atom
+	 * @throws RadixEngineException if the atom is invalid, carrying the execution cost if the constraint machine rejected it
+	 */
+	public long staticCheck(T atom, PermissionLevel permissionLevel) throws RadixEngineException {
+		return staticCheck(atom, permissionLevel, cacheKey(atom, permissionLevel));
+	}
+
+	private StaticCheckCache.Key cacheKey(T atom, PermissionLevel permissionLevel) {
+		return staticCheckCache == null ? null : staticCheckCache.key(atom, permissionLevel);
+	}
+
+	// Caches the check under the given key, if any
+	private long staticCheck(T atom, PermissionLevel permissionLevel, StaticCheckCache.Key cacheKey) throws RadixEngineException {
+		final StaticCheckEvent event = new StaticCheckEvent();
+		event.begin();
+		final long start = System.nanoTime();
+		Object outcome = AtomEvent.EXCEPTION;
+		try {
+			final long executionCost = staticCheckInternal(atom, permissionLevel, cacheKey);
+			metrics.atomChecked();
+			outcome = AtomEvent.OK;
+			return executionCost;
+		} catch (RadixEngineException e) {
+			outcome = e.getErrorCode();
+			metrics.atomRejected(e.getErrorCode());
+			throw e;
+		} finally {
+			metrics.staticChecked(System.nanoTime() - start);
+			commitEvent(event, atom, outcome);
+		}
+	}
+
+	private static void commitEvent(AtomEvent event, RadixEngineAtom atom, Object outcome) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.addAtom(atom.getCMInstruction());
+			event.setOutcome(outcome);
+			event.commit();
+		}
+	}
+
+	private long staticCheckInternal(T atom, PermissionLevel permissionLevel, StaticCheckCache.Key cacheKey) throws RadixEngineException {
+		final ExecutionMeter executionMeter = constraintMachine.newExecutionMeter(permissionLevel);
+		final Optional<CMError> error = constraintMachine.validate(atom.getCMInstruction(), atom.getWitness(), permissionLevel, executionMeter);
 		if (error.isPresent()) {
 			CMError e = error.get();
-			throw new RadixEngineException(RadixEngineErrorCode.CM_ERROR, e.getErrorDescription(), e.getDataPointer(), e);
+			throw new RadixEngineException(RadixEngineErrorCode.CM_ERROR, e.getErrorDescription(), e.getDataPointer(), e, executionMeter.getCost());
 		}
 
+		runChecker(atom);
+
+		if (cacheKey != null) {
+			staticCheckCache.put(cacheKey, atom, executionMeter.getCost());
+		}
+		return executionMeter.getCost();
+	}
+
+	private void runChecker(T atom) throws RadixEngineException {
 		if (checker != null) {
 			Result hookResult = checker.check(atom);
 			if (hookResult.isError()) {
@@ -194,7 +732,8 @@ public final class RadixEngine<T extends RadixEngineAtom> {
 			UnaryOperator<CMStore> virtualStoreLayer,
 			EngineStore<T> parentStore,
 			AtomChecker<T> checker,
-			Map<Class<?>, ApplicationStateComputer<?, ?, T>> stateComputers
+			Map<Class<?>, ApplicationStateComputer<?, ?, T>> stateComputers,
+			Map<Class<?>, ApplicationIndex<?, T>> indexes
 		) {
 			TransientEngineStore<T> transientEngineStore = new TransientEngineStore<>(
 				parentStore
@@ -208,19 +747,28 @@ public final class RadixEngine<T extends RadixEngineAtom> {
 			);
 
 			engine.stateComputers.putAll(stateComputers);
+			engine.indexes.putAll(indexes);
 		}
 
-		public void checkAndStore(T atom) throws RadixEngineException {
-			engine.checkAndStore(atom);
+		public long checkAndStore(T atom) throws RadixEngineException {
+			return engine.checkAndStore(atom);
 		}
 
-		public void checkAndStore(T atom, PermissionLevel permissionLevel) throws RadixEngineException {
-			engine.checkAndStore(atom, permissionLevel);
+		public long checkAndStore(T atom, PermissionLevel permissionLevel) throws RadixEngineException {
+			return engine.checkAndStore(atom, permissionLevel);
 		}
 
 		public <U> U getComputedState(Class<U> applicationStateClass) {
 			return engine.getComputedState(applicationStateClass);
 		}
+
+		public <I> I getIndex(Class<I> indexClass) {
+			return engine.getIndex(indexClass);
+		}
+
+		public <I, R> R readIndex(Class<I> indexClass, Function<I, R> reader) {
+			return engine.readIndex(indexClass, reader);
+		}
 	}
 
 	public void deleteBranches() {
@@ -231,19 +779,253 @@ public final class RadixEngine<T extends RadixEngineAtom> {
 
 	public RadixEngineBranch<T> transientBranch() {
 		synchronized (stateUpdateEngineLock) {
-			Map<Class<?>, ApplicationStateComputer<?, ?, T>> branchedStateComputers = new HashMap<>();
-			this.stateComputers.forEach((c, computer) -> branchedStateComputers.put(c, computer.copy()));
-			RadixEngineBranch<T> branch = new RadixEngineBranch<>(
-				this.constraintMachine,
-				this.virtualStoreLayer,
-				this.engineStore,
-				this.checker,
-				branchedStateComputers
+			return branch(this.engineStore, ApplicationIndex::branch);
+		}
+	}
+
+	/**
+	 * Creates a transient branch which reads particles from a snapshot rather than from the store
+	 * of this engine, so atoms committed to this engine after branching are not visible to it.
+	 * The branch starts from the current computed state, so the snapshot must be of the store of
+	 * this engine at its current version. Indexes are likewise branched off their
+	 * {@link EngineIndex#snapshot()} at that version. The snapshot stays owned by the caller,
+	 * which closes it once the branch is no longer used.
+	 *
+	 * @param snapshot a snapshot of the store of this engine at its current version
+	 * @return the branch
+	 * @throws IllegalArgumentException if the snapshot is not of the current version of the store of this engine
+	 * @throws IllegalStateException if an index of this engine does not support snapshots
+	 */
+	public RadixEngineBranch<T> transientBranch(MultiVersionEngineStore<T>.Snapshot snapshot) {
+		synchronized (stateUpdateEngineLock) {
+			if (snapshot.getStore() != this.engineStore || snapshot.getVersion() != snapshot.getStore().getVersion()) {
+				throw new IllegalArgumentException(
+					String.format("Snapshot at version %s is not of the current version of the engine store", snapshot.getVersion())
+				);
+			}
+			return branch(snapshot, ApplicationIndex::snapshotBranch);
+		}
+	}
+
+	// Must be called under the state update lock so the copied state matches the parent store
+	private RadixEngineBranch<T> branch(EngineStore<T> parentStore, UnaryOperator<ApplicationIndex<?, T>> indexBrancher) {
+		final BranchEvent event = new BranchEvent();
+		event.begin();
+		Map<Class<?>, ApplicationStateComputer<?, ?, T>> branchedStateComputers = new HashMap<>();
+		this.stateComputers.forEach((c, computer) -> branchedStateComputers.put(c, computer.copy()));
+		Map<Class<?>, ApplicationIndex<?, T>> branchedIndexes = new HashMap<>();
+		this.indexes.forEach((c, index) -> branchedIndexes.put(c, indexBrancher.apply(index)));
+		RadixEngineBranch<T> branch = new RadixEngineBranch<>(
+			this.constraintMachine,
+			this.virtualStoreLayer,
+			parentStore,
+			this.checker,
+			branchedStateComputers,
+			branchedIndexes
+		);
+
+		branches.add(branch);
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.setStateComputerCount(branchedStateComputers.size());
+			event.setIndexCount(branchedIndexes.size());
+			event.commit();
+		}
+
+		return branch;
+	}
+
+	/**
+	 * Registers an accumulator which is initialized with the particles in the store and from then on
+	 * updated and committed with every stored atom.
+	 *
+	 * @param stateAccumulator the accumulator to maintain
+	 */
+	public void setStateAccumulator(StateAccumulator stateAccumulator) {
+		synchronized (stateUpdateEngineLock) {
+			if (this.stateAccumulator != null) {
+				throw new IllegalStateException("State accumulator already set");
+			}
+
+			engineStore.compute(
+				Particle.class,
+				stateAccumulator,
+				(accumulator, particle) -> {
+					accumulator.up(particle);
+					return accumulator;
+				},
+				(accumulator, particle) -> {
+					if (virtualizedCMStore.getSpin(particle) != Spin.UP) {
+						accumulator.down(particle);
+					}
+					return accumulator;
+				}
+			);
+			stateAccumulator.commit(stateVersion);
+			this.stateAccumulator = stateAccumulator;
+		}
+	}
+
+	/**
+	 * Registers a journal to which every atom is appended before it is stored. Each entry is the state
+	 * version the atom is committed at as a big endian long followed by the serialized atom, so that
+	 * atoms journaled but lost by the store in a crash can be recovered.
+	 * <p>
+	 * On registering, the journaled atoms missing from the store are stored and committed, and the state
+	 * version of the engine continues from the last journaled version, so versions keep increasing across
+	 * restarts. The store may only have lost the latest atoms it stored, and an atom is taken to be stored
+	 * once the store holds every particle it pushes at or after the pushed spin. The journal must be set
+	 * before the state accumulator, which records roots by state version.
+	 * <p>
+	 * If an append or a store fails the engine stops committing until it is restarted, as the journal
+	 * may then hold atoms the store does not. Such an atom is committed on recovery.
+	 *
+	 * @param commitJournal the journal to append to
+	 * @param serializer serializes atoms into journal entries
+	 * @param deserializer deserializes atoms from journal entries
+	 * @throws IllegalStateException if a journal or state accumulator is already set, atoms have been
+	 * committed beyond the last journaled version, or the store holds none of the atoms retained by the journal
+	 */
+	public void setCommitJournal(CommitJournal commitJournal, Function<T, byte[]> serializer, Function<byte[], T> deserializer) {
+		Objects.requireNonNull(commitJournal);
+		Objects.requireNonNull(serializer);
+		Objects.requireNonNull(deserializer);
+		synchronized (stateUpdateEngineLock) {
+			if (this.commitJournal != null) {
+				throw new IllegalStateException("Commit journal already set");
+			}
+			if (this.stateAccumulator != null) {
+				throw new IllegalStateException("Commit journal must be set before the state accumulator");
+			}
+
+			try {
+				recover(commitJournal, deserializer);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Failed to recover from the commit journal", e);
+			}
+			this.commitJournal = commitJournal;
+			this.journalSerializer = serializer;
+		}
+		dispatchCommitted();
+	}
+
+	// Reads back from the end of the journal in growing windows until an atom the store holds is found
+	private void recover(CommitJournal journal, Function<byte[], T> deserializer) throws IOException {
+		final long firstOffset = journal.getFirstOffset();
+		final Deque<Pair<Long, T>> unstored = new ArrayDeque<>();
+		long storedVersion = -1;
+		long end = journal.getNextOffset();
+		int window = REPLAY_BATCH_SIZE;
+		while (storedVersion < 0 && end > firstOffset) {
+			final long from = Math.max(firstOffset, end - window);
+			final List<JournalEntry> entries;
+			try (CommitJournal.Tailer tailer = journal.tail(from)) {
+				entries = tailer.poll((int) (end - from));
+			}
+			for (int i = entries.size() - 1; i >= 0; i--) {
+				final byte[] payload = entries.get(i).getPayload();
+				final long version = ByteBuffer.wrap(payload).getLong();
+				final T atom = deserializer.apply(Arrays.copyOfRange(payload, Long.BYTES, payload.length));
+				if (isStored(atom)) {
+					storedVersion = version;
+					break;
+				}
+				unstored.addFirst(Pair.of(version, atom));
+			}
+			end = from;
+			window = Math.min(window * 2, MAX_RECOVERY_WINDOW);
+		}
+
+		if (storedVersion < 0) {
+			// Atoms before those retained may or may not be stored
+			if (firstOffset > 0) {
+				throw new IllegalStateException("The store does not hold any of the atoms retained by the commit journal");
+			}
+			storedVersion = unstored.isEmpty() ? 0 : unstored.getFirst().getFirst() - 1;
+		}
+		final long journaledVersion = unstored.isEmpty() ? storedVersion : unstored.getLast().getFirst();
+		if (stateVersion > journaledVersion) {
+			throw new IllegalStateException(
+				String.format("State version %s is ahead of the last journaled version %s", stateVersion, journaledVersion)
 			);
+		}
 
-			branches.add(branch);
+		this.stateVersion = storedVersion;
+		final List<T> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+		while (!unstored.isEmpty()) {
+			batch.add(unstored.removeFirst().getSecond());
+			if (batch.size() == REPLAY_BATCH_SIZE || unstored.isEmpty()) {
+				engineStore.storeAtoms(batch);
+				batch.forEach(this::processCommitted);
+				batch.clear();
+			}
+		}
+	}
 
-			return branch;
+	// Atoms which push nothing are never taken to be stored, storing them again is harmless
+	private boolean isStored(T atom) {
+		boolean pushes = false;
+		for (CMMicroInstruction microInstruction : atom.getCMInstruction().getMicroInstructions()) {
+			if (microInstruction.isPush()) {
+				pushes = true;
+				if (SpinStateMachine.isBefore(engineStore.getSpin(microInstruction.getParticle()), microInstruction.getNextSpin())) {
+					return false;
+				}
+			}
+		}
+		return pushes;
+	}
+
+	/**
+	 * Registers a listener to atoms committed from now on. Committed atoms are buffered and delivered
+	 * in batches on the given executor, so a slow listener does not hold up commits unless its buffer
+	 * is full and it is registered with {@link CommitListener.OverflowPolicy#BLOCK}.
+	 *
+	 * @param listener the listener to notify
+	 * @param executor the executor to deliver on
+	 * @param bufferSize the maximum number of undelivered atoms, which is also the maximum batch size
+	 * @param overflowPolicy what to do with committed atoms when the buffer is full
+	 */
+	public void addCommitListener(
+		CommitListener<T> listener,
+		Executor executor,
+		int bufferSize,
+		CommitListener.OverflowPolicy overflowPolicy
+	) {
+		synchronized (stateUpdateEngineLock) {
+			commitListeners.add(new CommitListenerDispatcher<>(listener, executor, bufferSize, overflowPolicy));
+		}
+	}
+
+	/**
+	 * Unregisters a listener. Atoms already buffered may still be delivered.
+	 *
+	 * @param listener the listener to unregister
+	 */
+	public void removeCommitListener(CommitListener<T> listener) {
+		synchronized (stateUpdateEngineLock) {
+			commitListeners.removeIf(dispatcher -> dispatcher.getListener() == listener);
+		}
+	}
+
+	/**
+	 * Sets the metrics to report throughput, latencies, lock contention and rejections to.
+	 *
+	 * @param metrics the metrics to update
+	 */
+	public void setMetrics(EngineMetrics metrics) {
+		this.metrics = Objects.requireNonNull(metrics);
+	}
+
+	/**
+	 * Retrieves the state version, which is the number of atoms stored by this engine.
+	 *
+	 * @return the current state version
+	 */
+	public long getStateVersion() {
+		synchronized (stateUpdateEngineLock) {
+			return stateVersion;
 		}
 	}
 
@@ -252,24 +1034,62 @@ public final class RadixEngine<T extends RadixEngineAtom> {
 	 * If the atom has any conflicts or dependency issues the atom will not be stored.
 	 *
 	 * @param atom atom to store
+	 * @return the execution cost of validating the atom
 	 * @throws RadixEngineException on state conflict, dependency issues or bad atom
 	 */
-	public void checkAndStore(T atom) throws RadixEngineException {
-		checkAndStore(atom, PermissionLevel.USER);
+	public long checkAndStore(T atom) throws RadixEngineException {
+		return checkAndStore(atom, PermissionLevel.USER);
 	}
 
 	/**
 	 * Atomically stores the given atom into the store. If the atom
 	 * has any conflicts or dependency issues the atom will not be stored.
+	 * <p>
+	 * The execution cost of an atom whose static check was cached is the cost metered by that check,
+	 * so the cost reported does not depend on whether the check was cached.
 	 *
 	 * @param atom the atom to store
 	 * @param permissionLevel permission level to execute on
+	 * @return the execution cost of validating the atom
 	 * @throws RadixEngineException on state conflict or dependency issues
 	 */
-	public void checkAndStore(T atom, PermissionLevel permissionLevel) throws RadixEngineException {
-		this.staticCheck(atom, permissionLevel);
+	public long checkAndStore(T atom, PermissionLevel permissionLevel) throws RadixEngineException {
+		final CheckAndStoreEvent event = new CheckAndStoreEvent();
+		event.begin();
+		Object outcome = AtomEvent.EXCEPTION;
+		try {
+			final long executionCost = checkAndStoreInternal(atom, permissionLevel);
+			outcome = AtomEvent.OK;
+			return executionCost;
+		} catch (RadixEngineException e) {
+			outcome = e.getErrorCode();
+			throw e;
+		} finally {
+			commitEvent(event, atom, outcome);
+		}
+	}
+
+	private long checkAndStoreInternal(T atom, PermissionLevel permissionLevel) throws RadixEngineException {
+		// Atoms which have already passed the constraint machine (e.g. on mempool entry) only require the checker and state checks
+		final StaticCheckCache.Key cacheKey = cacheKey(atom, permissionLevel);
+		final OptionalLong cachedCost = cacheKey == null ? OptionalLong.empty() : staticCheckCache.executionCost(cacheKey, atom);
+		final long executionCost;
+		if (cachedCost.isPresent()) {
+			executionCost = cachedCost.getAsLong();
+			try {
+				runChecker(atom);
+			} catch (RadixEngineException e) {
+				metrics.atomRejected(e.getErrorCode());
+				throw e;
+			}
+		} else {
+			// Not cached as the entry would be invalidated once stored
+			executionCost = this.staticCheck(atom, permissionLevel, null);
+		}
 
+		final long lockRequested = System.nanoTime();
 		synchronized (stateUpdateEngineLock) {
+			metrics.lockAcquired(System.nanoTime() - lockRequested);
 			if (!branches.isEmpty()) {
 				throw new IllegalStateException(
 					String.format("%s transient branches still exist. Must delete branches before storing additional atoms.", branches.size())
@@ -277,11 +1097,114 @@ public final class RadixEngine<T extends RadixEngineAtom> {
 			}
 
 			// TODO Feature: Return updated state for some given query (e.g. for current validator set)
-			stateCheckAndStoreInternal(atom);
+			try {
+				stateCheckAndStoreInternal(atom);
+			} catch (RadixEngineException e) {
+				metrics.atomRejected(e.getErrorCode());
+				throw e;
+			}
+
+			if (cacheKey != null) {
+				staticCheckCache.invalidate(cacheKey);
+			}
+		}
+		dispatchCommitted();
+		metrics.atomStored();
+		return executionCost;
+	}
+
+	/**
+	 * Replays atoms from a trusted source, such as the finalized ledger of this node, skipping
+	 * static and state checks. Atoms are written to the store in batches and state computers and
+	 * indexes are fed as usual.
+	 * <p>
+	 * A running {@link ReplayHashChain} hash over the replayed atoms is verified against the given
+	 * checkpoints before the atoms leading up to each checkpoint are stored. On a mismatch, atoms up
+	 * to the last stored batch remain stored.
+	 *
+	 * @param atoms the atoms to replay in commit order
+	 * @param hasher the hasher to hash the particles of the atoms with
+	 * @param initialHash the running hash before the first atom, {@link ReplayHashChain#GENESIS} if replaying from genesis
+	 * @param checkpoints the expected running hash after the given number of replayed atoms
+	 * @return the running hash after the last atom
+	 * @throws RadixEngineException if the running hash does not match a checkpoint
+	 */
+	public HashCode replayTrusted(
+		Iterable<T> atoms,
+		Hasher hasher,
+		HashCode initialHash,
+		Map<Long, HashCode> checkpoints
+	) throws RadixEngineException {
+		Objects.requireNonNull(hasher);
+		Objects.requireNonNull(checkpoints);
+		try {
+			return replayTrustedInternal(atoms, hasher, initialHash, checkpoints);
+		} finally {
+			// Atoms stored before a checkpoint mismatch are committed all the same
+			dispatchCommitted();
 		}
 	}
 
+	private HashCode replayTrustedInternal(
+		Iterable<T> atoms,
+		Hasher hasher,
+		HashCode initialHash,
+		Map<Long, HashCode> checkpoints
+	) throws RadixEngineException {
+		synchronized (stateUpdateEngineLock) {
+			if (!branches.isEmpty()) {
+				throw new IllegalStateException(
+					String.format("%s transient branches still exist. Must delete branches before storing additional atoms.", branches.size())
+				);
+			}
+
+			HashCode runningHash = Objects.requireNonNull(initialHash);
+			long replayed = 0;
+			List<T> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+			for (T atom : atoms) {
+				runningHash = ReplayHashChain.next(runningHash, atom, hasher);
+				replayed++;
+				batch.add(atom);
+
+				final HashCode checkpoint = checkpoints.get(replayed);
+				if (checkpoint != null && !checkpoint.equals(runningHash)) {
+					throw new RadixEngineException(
+						RadixEngineErrorCode.REPLAY_CHECKPOINT_MISMATCH,
+						String.format("Replay hash %s after %s atoms does not match checkpoint %s", runningHash, replayed, checkpoint),
+						DataPointer.ofAtom()
+					);
+				}
+				if (checkpoint != null || batch.size() == REPLAY_BATCH_SIZE) {
+					storeTrusted(batch);
+					batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+				}
+			}
+			storeTrusted(batch);
+			return runningHash;
+		}
+	}
+
+	private void storeTrusted(List<T> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		final long start = System.nanoTime();
+		journal(batch);
+		engineStore.storeAtoms(batch);
+		journalAhead = false;
+		final long stored = System.nanoTime();
+		metrics.storeWritten(stored - start);
+
+		for (T atom : batch) {
+			processCommitted(atom);
+			metrics.atomStored();
+		}
+		metrics.stateComputersUpdated(System.nanoTime() - stored);
+	}
+
 	private void stateCheckAndStoreInternal(T atom) throws RadixEngineException {
+		final long start = System.nanoTime();
 		final CMInstruction cmInstruction = atom.getCMInstruction();
 
 		final Set<Particle> checkedParticles = new HashSet<>();
@@ -328,17 +1251,105 @@ public final class RadixEngine<T extends RadixEngineAtom> {
 			}
 		}
 
-		// Persist
+		final long spinsChecked = System.nanoTime();
+		metrics.spinsChecked(spinsChecked - start);
+
+		// Persist, journaling first so that every stored atom can be recovered
+		journal(List.of(atom));
 		engineStore.storeAtom(atom);
+		journalAhead = false;
+		final long stored = System.nanoTime();
+		metrics.storeWritten(stored - spinsChecked);
 
-		// Non-persisted computed state
-		for (CMMicroInstruction microInstruction : cmInstruction.getMicroInstructions()) {
+		processCommitted(atom);
+		metrics.stateComputersUpdated(System.nanoTime() - stored);
+	}
+
+	// Journals atoms about to be stored, as the state versions they are about to be committed at
+	private void journal(List<T> atoms) {
+		if (journalAhead) {
+			throw new IllegalStateException("Journaled atoms may be missing from the store, the engine must be restarted to recover them");
+		}
+		if (commitJournal == null) {
+			return;
+		}
+
+		final List<byte[]> payloads = new ArrayList<>(atoms.size());
+		long version = stateVersion;
+		for (T atom : atoms) {
+			final byte[] serialized = journalSerializer.apply(atom);
+			payloads.add(ByteBuffer.allocate(Long.BYTES + serialized.length).putLong(++version).put(serialized).array());
+		}
+		// Cleared once the atoms are stored, an append failing part way may also have journaled some
+		journalAhead = true;
+		try {
+			commitJournal.append(payloads);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to journal atoms", e);
+		}
+	}
+
+	// Updates the non-persisted computed state with an atom which has just been stored
+	private void processCommitted(T atom) {
+		final boolean notifyListeners = !commitListeners.isEmpty();
+		final ImmutableList.Builder<Particle> upParticles = notifyListeners ? ImmutableList.builder() : null;
+		final ImmutableList.Builder<Particle> downParticles = notifyListeners ? ImmutableList.builder() : null;
+		for (CMMicroInstruction microInstruction : atom.getCMInstruction().getMicroInstructions()) {
 			// Treat check spin as the first push for now
 			if (!microInstruction.isCheckSpin()) {
 				continue;
 			}
 
+			if (notifyListeners) {
+				if (microInstruction.getCheckSpin() == Spin.NEUTRAL) {
+					upParticles.add(microInstruction.getParticle());
+				} else {
+					downParticles.add(microInstruction.getParticle());
+				}
+			}
+
 			stateComputers.forEach((a, computer) -> computer.processCheckSpin(microInstruction));
+			indexes.forEach((a, index) -> index.processCheckSpin(microInstruction));
+			if (stateAccumulator != null) {
+				final Particle particle = microInstruction.getParticle();
+				if (microInstruction.getCheckSpin() == Spin.NEUTRAL) {
+					stateAccumulator.up(particle);
+				} else if (virtualizedCMStore.getSpin(particle) != Spin.UP) {
+					// Virtually up particles were never accumulated
+					stateAccumulator.down(particle);
+				}
+			}
+		}
+
+		indexes.forEach((a, index) -> index.atomCommitted());
+
+		stateVersion++;
+		if (stateAccumulator != null) {
+			stateAccumulator.commit(stateVersion);
+		}
+
+		if (notifyListeners) {
+			undispatchedCommits.add(new CommittedAtom<>(atom, upParticles.build(), downParticles.build(), stateVersion));
+		}
+	}
+
+	// Dispatches committed atoms to listeners once the state update lock is released, so that listeners
+	// blocking commits may still read the engine. Atoms are queued under the lock so they stay in order.
+	private void dispatchCommitted() {
+		if (undispatchedCommits.isEmpty()) {
+			return;
+		}
+
+		synchronized (dispatchLock) {
+			while (true) {
+				final CommittedAtom<T> committedAtom = undispatchedCommits.poll();
+				if (committedAtom == null) {
+					break;
+				}
+				for (CommitListenerDispatcher<T> dispatcher : commitListeners) {
+					dispatcher.dispatch(committedAtom);
+				}
+			}
 		}
 	}
 }
@@ -26,5 +26,6 @@ public enum RadixEngineErrorCode {
 	HOOK_ERROR,
 	VIRTUAL_STATE_CONFLICT,
 	STATE_CONFLICT,
-	MISSING_DEPENDENCY
+	MISSING_DEPENDENCY,
+	REPLAY_CHECKPOINT_MISMATCH
 }
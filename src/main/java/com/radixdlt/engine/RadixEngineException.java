@@ -29,16 +29,18 @@ public final class RadixEngineException extends Exception {
 	private final RadixEngineErrorCode errorCode;
 	private final DataPointer dp;
 	private final CMError cmError;
+	private final long executionCost;
 
 	RadixEngineException(RadixEngineErrorCode errorCode, String message, DataPointer dp) {
-		this(errorCode, message, dp, null);
+		this(errorCode, message, dp, null, 0);
 	}
 
-	RadixEngineException(RadixEngineErrorCode errorCode, String message, DataPointer dp, CMError cmError) {
+	RadixEngineException(RadixEngineErrorCode errorCode, String message, DataPointer dp, CMError cmError, long executionCost) {
 		super(message + (cmError == null ? "" : "\n" + cmError));
 		this.errorCode = Objects.requireNonNull(errorCode);
 		this.dp = dp;
 		this.cmError = cmError;
+		this.executionCost = executionCost;
 	}
 
 	/**
@@ -67,4 +69,13 @@ public final class RadixEngineException extends Exception {
 	public CMError getCmError() {
 		return cmError;
 	}
+
+	/**
+	 * Get the cost the constraint machine consumed before rejecting the atom
+	 *
+	 * @return the execution cost, 0 if the atom was not rejected by the constraint machine
+	 */
+	public long getExecutionCost() {
+		return executionCost;
+	}
 }
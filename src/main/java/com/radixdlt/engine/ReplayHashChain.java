@@ -0,0 +1,58 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.radixdlt.crypto.Hasher;
+import java.util.Objects;
+
+/**
+ * Running hash over the witnesses and instructions of the atoms committed to an engine, in
+ * commit order, used to detect corrupt or reordered history when replaying trusted atoms with
+ * {@link RadixEngine#replayTrusted(Iterable, Hasher, HashCode, java.util.Map)}.
+ * The witness alone does not cover the particles an atom spins, so a replayed atom with a
+ * valid witness but tampered instructions would otherwise go unnoticed.
+ */
+public final class ReplayHashChain {
+	/**
+	 * The running hash before any atom has been committed.
+	 */
+	public static final HashCode GENESIS = HashCode.fromBytes(new byte[32]);
+
+	private ReplayHashChain() {
+		throw new IllegalStateException("Cannot instantiate.");
+	}
+
+	/**
+	 * Computes the running hash after committing an atom.
+	 *
+	 * @param previous the running hash before the atom
+	 * @param atom the committed atom
+	 * @param hasher the hasher to hash the particles of the atom with
+	 * @return the running hash after the atom
+	 */
+	public static HashCode next(HashCode previous, RadixEngineAtom atom, Hasher hasher) {
+		final HashCode witness = Objects.requireNonNull(atom.getWitness(), "Replayed atoms must have a witness");
+		return Hashing.sha256().newHasher()
+			.putBytes(previous.asBytes())
+			.putBytes(witness.asBytes())
+			.putBytes(InstructionDigest.of(atom.getCMInstruction(), hasher).asBytes())
+			.hash();
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.crypto.Hasher;
+import com.radixdlt.store.ParticleKey;
+import com.radixdlt.store.ParticleKeys;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An authenticated index of the spins of particles, keyed by particle hash, which yields
+ * proofs of the spin of a particle against a single root hash.
+ * <p>
+ * The index is a binary trie over the bits of the {@link ParticleKey}s of the particles in which a
+ * subtree holding a single particle is collapsed into a leaf, so paths are logarithmic in the number
+ * of particles. Nodes are immutable and hash lazily, so the nodes touched by all the particles of an
+ * atom or block are only hashed once when the root is next read, and branches share all nodes.
+ * Nodes are hashed with SHA-256, see {@link SparseMerkleProof} for the hashes.
+ * <p>
+ * Register with {@link RadixEngine#addIndex(Class, Class, EngineIndex)} for {@link Particle}.
+ */
+public final class SparseMerkleIndex implements EngineIndex<Particle> {
+	private static final long CACHED_PARTICLE_KEYS = 1 << 16;
+	static final HashCode EMPTY = HashCode.fromBytes(new byte[32]);
+	static final byte LEAF_PREFIX = 0;
+	static final byte INTERNAL_PREFIX = 1;
+
+	private abstract static class Node {
+		abstract HashCode hash();
+	}
+
+	private static final class Leaf extends Node {
+		private final ParticleKey key;
+		private final Spin spin;
+		private volatile HashCode hash;
+
+		private Leaf(ParticleKey key, Spin spin) {
+			this.key = key;
+			this.spin = spin;
+		}
+
+		@Override
+		HashCode hash() {
+			HashCode h = hash;
+			if (h == null) {
+				h = leafHash(key, spin);
+				hash = h;
+			}
+			return h;
+		}
+	}
+
+	private static final class Internal extends Node {
+		private final Node left;
+		private final Node right;
+		private volatile HashCode hash;
+
+		private Internal(Node left, Node right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		HashCode hash() {
+			HashCode h = hash;
+			if (h == null) {
+				h = internalHash(hashOf(left), hashOf(right));
+				hash = h;
+			}
+			return h;
+		}
+	}
+
+	private final ParticleKeys particleKeys;
+	private Node root;
+	private long size;
+
+	/**
+	 * Creates an empty index.
+	 *
+	 * @param hasher the hasher to compute the keys of particles with
+	 */
+	public SparseMerkleIndex(Hasher hasher) {
+		this(new ParticleKeys(Objects.requireNonNull(hasher), CACHED_PARTICLE_KEYS), null, 0);
+	}
+
+	private SparseMerkleIndex(ParticleKeys particleKeys, Node root, long size) {
+		this.particleKeys = particleKeys;
+		this.root = root;
+		this.size = size;
+	}
+
+	static int bit(ParticleKey key, int depth) {
+		return (int) (key.getLong(depth / Long.SIZE) >>> (Long.SIZE - 1 - depth % Long.SIZE)) & 1;
+	}
+
+	static HashCode leafHash(ParticleKey key, Spin spin) {
+		final byte[] keyBytes = new byte[ParticleKey.BYTES];
+		key.toBytes(keyBytes, 0);
+		return Hashing.sha256().newHasher()
+			.putByte(LEAF_PREFIX)
+			.putBytes(keyBytes)
+			.putByte((byte) spin.ordinal())
+			.hash();
+	}
+
+	static HashCode internalHash(HashCode left, HashCode right) {
+		return Hashing.sha256().newHasher()
+			.putByte(INTERNAL_PREFIX)
+			.putBytes(left.asBytes())
+			.putBytes(right.asBytes())
+			.hash();
+	}
+
+	private static HashCode hashOf(Node node) {
+		return node == null ? EMPTY : node.hash();
+	}
+
+	@Override
+	public synchronized void up(Particle particle) {
+		put(particleKeys.keyOf(particle), Spin.UP);
+	}
+
+	@Override
+	public synchronized void down(Particle particle) {
+		put(particleKeys.keyOf(particle), Spin.DOWN);
+	}
+
+	private void put(ParticleKey key, Spin spin) {
+		root = put(root, new Leaf(key, spin), 0);
+	}
+
+	private Node put(Node node, Leaf leaf, int depth) {
+		if (node == null) {
+			size++;
+			return leaf;
+		}
+
+		if (node instanceof Leaf) {
+			final Leaf existing = (Leaf) node;
+			if (existing.key.equals(leaf.key)) {
+				return leaf;
+			}
+			size++;
+			return split(existing, leaf, depth);
+		}
+
+		final Internal internal = (Internal) node;
+		return bit(leaf.key, depth) == 0
+			? new Internal(put(internal.left, leaf, depth + 1), internal.right)
+			: new Internal(internal.left, put(internal.right, leaf, depth + 1));
+	}
+
+	private static Node split(Leaf existing, Leaf leaf, int depth) {
+		final int existingBit = bit(existing.key, depth);
+		final int leafBit = bit(leaf.key, depth);
+		if (existingBit == leafBit) {
+			final Node child = split(existing, leaf, depth + 1);
+			return existingBit == 0 ? new Internal(child, null) : new Internal(null, child);
+		}
+		return leafBit == 0 ? new Internal(leaf, existing) : new Internal(existing, leaf);
+	}
+
+	@Override
+	public synchronized SparseMerkleIndex branch() {
+		// Nodes are immutable so a branch simply shares them
+		return new SparseMerkleIndex(particleKeys, root, size);
+	}
+
+	/**
+	 * Retrieves the root hash over the spins of all particles in the index.
+	 *
+	 * @return the root hash
+	 */
+	public synchronized HashCode getRoot() {
+		return hashOf(root);
+	}
+
+	/**
+	 * Retrieves the number of particles in the index, up or down.
+	 *
+	 * @return the number of particles
+	 */
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * Creates a proof of the spin of a particle against the current root.
+	 *
+	 * @param particle the particle to prove the spin of
+	 * @return the proof of inclusion or, if the particle is neutral, of non-inclusion
+	 */
+	public synchronized SparseMerkleProof getProof(Particle particle) {
+		final ParticleKey key = particleKeys.keyOf(particle);
+		final List<HashCode> siblings = new ArrayList<>();
+		Node node = root;
+		int depth = 0;
+		while (node instanceof Internal) {
+			final Internal internal = (Internal) node;
+			if (bit(key, depth) == 0) {
+				siblings.add(hashOf(internal.right));
+				node = internal.left;
+			} else {
+				siblings.add(hashOf(internal.left));
+				node = internal.right;
+			}
+			depth++;
+		}
+
+		final Leaf leaf = (Leaf) node;
+		return new SparseMerkleProof(
+			key,
+			ImmutableList.copyOf(siblings),
+			leaf == null ? null : leaf.key,
+			leaf == null ? null : leaf.spin
+		);
+	}
+}
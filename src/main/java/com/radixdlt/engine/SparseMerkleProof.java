@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.store.ParticleKey;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * A proof of the spin of a particle in a {@link SparseMerkleIndex}, verifiable against
+ * the root hash of the index without trusting the node which created it.
+ * <p>
+ * A leaf hashes to {@code SHA-256(0x00 || key || spin ordinal)}, an internal node to
+ * {@code SHA-256(0x01 || left || right)} and an empty subtree to 32 zero bytes. The proof
+ * holds the hashes of the siblings along the path of the particle key from the root down to
+ * the leaf or empty subtree the path ends in. If the path ends in the leaf of another particle,
+ * or in an empty subtree, the particle is proven to be neutral.
+ */
+public final class SparseMerkleProof {
+	private final ParticleKey key;
+	private final ImmutableList<HashCode> siblings;
+	private final ParticleKey leafKey;
+	private final Spin leafSpin;
+
+	SparseMerkleProof(ParticleKey key, ImmutableList<HashCode> siblings, @Nullable ParticleKey leafKey, @Nullable Spin leafSpin) {
+		if ((leafKey == null) != (leafSpin == null)) {
+			throw new IllegalArgumentException("A leaf requires both a key and a spin");
+		}
+
+		this.key = Objects.requireNonNull(key);
+		this.siblings = Objects.requireNonNull(siblings);
+		this.leafKey = leafKey;
+		this.leafSpin = leafSpin;
+	}
+
+	public ParticleKey getKey() {
+		return key;
+	}
+
+	/**
+	 * Retrieves the hashes of the siblings along the path of the key, root first.
+	 *
+	 * @return the sibling hashes
+	 */
+	public ImmutableList<HashCode> getSiblings() {
+		return siblings;
+	}
+
+	/**
+	 * Retrieves the spin this proof claims for the particle.
+	 *
+	 * @return the spin of the particle
+	 */
+	public Spin getSpin() {
+		return leafKey != null && leafKey.equals(key) ? leafSpin : Spin.NEUTRAL;
+	}
+
+	/**
+	 * Verifies this proof against a root hash.
+	 *
+	 * @param root the trusted root hash of the index
+	 * @return whether the particle has the spin claimed by {@link #getSpin()} in the index with the given root
+	 */
+	public boolean verify(HashCode root) {
+		final int depth = siblings.size();
+		if (depth > ParticleKey.BYTES * Byte.SIZE) {
+			return false;
+		}
+
+		// The leaf of another particle must be where the particle would be
+		if (leafKey != null) {
+			for (int i = 0; i < depth; i++) {
+				if (SparseMerkleIndex.bit(leafKey, i) != SparseMerkleIndex.bit(key, i)) {
+					return false;
+				}
+			}
+		}
+
+		HashCode hash = leafKey == null ? SparseMerkleIndex.EMPTY : SparseMerkleIndex.leafHash(leafKey, leafSpin);
+		for (int i = depth - 1; i >= 0; i--) {
+			hash = SparseMerkleIndex.bit(key, i) == 0
+				? SparseMerkleIndex.internalHash(hash, siblings.get(i))
+				: SparseMerkleIndex.internalHash(siblings.get(i), hash);
+		}
+		return hash.equals(root);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s{key=%s depth=%s spin=%s}", getClass().getSimpleName(), key, siblings.size(), getSpin());
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import com.google.common.hash.HashCode;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.crypto.Hasher;
+import com.radixdlt.store.ParticleKey;
+import com.radixdlt.store.ParticleKeys;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Order independent hash over the particles spun up and down in an engine, allowing the
+ * states of engines to be compared without exporting them.
+ * <p>
+ * The root is the sum modulo 2<sup>256</sup> of the hashes of the particles currently up, maintained
+ * by adding the hash of each particle spun up and subtracting the hash of each particle spun down.
+ * It therefore only depends on the set of up particles and is updated in time proportional to the
+ * particles touched by an atom.
+ * <p>
+ * Register with {@link RadixEngine#setStateAccumulator(StateAccumulator)}. Roots are retained by
+ * state version, which only continues across restarts if the engine has a commit journal set first,
+ * see {@link RadixEngine#setCommitJournal(com.radixdlt.engine.journal.CommitJournal, java.util.function.Function, java.util.function.Function)}.
+ */
+public final class StateAccumulator {
+	private static final long CACHED_PARTICLE_KEYS = 1 << 16;
+
+	private final ParticleKeys particleKeys;
+	private final int retainedRoots;
+	// Most significant word first
+	private final long[] sum = new long[ParticleKey.LONGS];
+	private final TreeMap<Long, HashCode> roots = new TreeMap<>();
+	private long version = -1;
+
+	/**
+	 * Creates an accumulator which retains the roots of the given number of most recent state versions.
+	 *
+	 * @param hasher the hasher to hash particles with
+	 * @param retainedRoots the number of state version roots to retain
+	 */
+	public StateAccumulator(Hasher hasher, int retainedRoots) {
+		if (retainedRoots <= 0) {
+			throw new IllegalArgumentException("retainedRoots must be positive but was " + retainedRoots);
+		}
+
+		this.particleKeys = new ParticleKeys(Objects.requireNonNull(hasher), CACHED_PARTICLE_KEYS);
+		this.retainedRoots = retainedRoots;
+	}
+
+	synchronized void up(Particle particle) {
+		final ParticleKey key = particleKeys.keyOf(particle);
+		long carry = 0;
+		for (int i = sum.length - 1; i >= 0; i--) {
+			final long word = key.getLong(i);
+			final long result = sum[i] + word + carry;
+			carry = Long.compareUnsigned(result, sum[i]) < 0 || (carry == 1 && result == sum[i]) ? 1 : 0;
+			sum[i] = result;
+		}
+	}
+
+	synchronized void down(Particle particle) {
+		final ParticleKey key = particleKeys.keyOf(particle);
+		long borrow = 0;
+		for (int i = sum.length - 1; i >= 0; i--) {
+			final long word = key.getLong(i);
+			final long result = sum[i] - word - borrow;
+			borrow = Long.compareUnsigned(sum[i], word) < 0 || (borrow == 1 && sum[i] == word) ? 1 : 0;
+			sum[i] = result;
+		}
+	}
+
+	synchronized void commit(long version) {
+		this.version = version;
+		roots.put(version, currentRoot());
+		while (roots.size() > retainedRoots) {
+			roots.pollFirstEntry();
+		}
+	}
+
+	private HashCode currentRoot() {
+		final ByteBuffer buffer = ByteBuffer.allocate(ParticleKey.BYTES);
+		for (long word : sum) {
+			buffer.putLong(word);
+		}
+		return HashCode.fromBytes(buffer.array());
+	}
+
+	/**
+	 * Retrieves the root of the latest committed state version.
+	 *
+	 * @return the current state root
+	 */
+	public synchronized HashCode getRoot() {
+		return currentRoot();
+	}
+
+	/**
+	 * Retrieves the latest committed state version, or -1 if not yet initialized.
+	 *
+	 * @return the current state version
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Retrieves the root of a committed state version.
+	 *
+	 * @param version the state version
+	 * @return the state root, or empty if the version is unknown or no longer retained
+	 */
+	public synchronized Optional<HashCode> getRoot(long version) {
+		return Optional.ofNullable(roots.get(version));
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import com.google.common.hash.HashCode;
+import com.radixdlt.constraintmachine.CMInstruction;
+import com.radixdlt.constraintmachine.PermissionLevel;
+import com.radixdlt.crypto.ECDSASignature;
+import com.radixdlt.crypto.Hasher;
+import com.radixdlt.identifiers.EUID;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+
+/**
+ * Bounded cache of atoms which have successfully passed the constraint machine, keyed by
+ * the atom witness, a digest of the atom instructions and the permission level the check
+ * was executed on.
+ * <p>
+ * As the witness covers neither the instructions nor the signatures, the instructions are
+ * digested into the key and the signatures of the checked atom are retained and must match
+ * for a cache hit. The execution cost metered by the check is retained so that it can be
+ * reported for the atom when the check is reused.
+ */
+final class StaticCheckCache {
+	static final class Key {
+		private final HashCode witness;
+		private final HashCode instructionDigest;
+		private final PermissionLevel permissionLevel;
+
+		private Key(HashCode witness, HashCode instructionDigest, PermissionLevel permissionLevel) {
+			this.witness = witness;
+			this.instructionDigest = instructionDigest;
+			this.permissionLevel = permissionLevel;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(witness, instructionDigest, permissionLevel);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+
+			Key k = (Key) o;
+			return Objects.equals(this.witness, k.witness)
+				&& Objects.equals(this.instructionDigest, k.instructionDigest)
+				&& this.permissionLevel == k.permissionLevel;
+		}
+	}
+
+	private static final class Entry {
+		private final Map<EUID, ECDSASignature> signatures;
+		private final long executionCost;
+
+		private Entry(Map<EUID, ECDSASignature> signatures, long executionCost) {
+			this.signatures = signatures;
+			this.executionCost = executionCost;
+		}
+	}
+
+	private final Hasher hasher;
+	private final Map<Key, Entry> entries;
+
+	StaticCheckCache(Hasher hasher, int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive but was " + maxSize);
+		}
+
+		this.hasher = Objects.requireNonNull(hasher);
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Computes the key of an atom, digesting its instructions. Callers compute the key once per
+	 * atom and pass it to each cache operation, as hashing particles is comparatively expensive.
+	 *
+	 * @return the key, or null if the atom cannot be cached
+	 */
+	Key key(RadixEngineAtom atom, PermissionLevel permissionLevel) {
+		final HashCode witness = atom.getWitness();
+		final CMInstruction cmInstruction = atom.getCMInstruction();
+		if (witness == null || cmInstruction == null) {
+			return null;
+		}
+
+		return new Key(witness, InstructionDigest.of(cmInstruction, hasher), permissionLevel);
+	}
+
+	synchronized void put(Key key, RadixEngineAtom atom, long executionCost) {
+		entries.put(key, new Entry(atom.getCMInstruction().getSignatures(), executionCost));
+	}
+
+	/**
+	 * Looks up the check of an atom.
+	 *
+	 * @return the execution cost metered by the cached check, or empty if the atom was not checked
+	 */
+	OptionalLong executionCost(Key key, RadixEngineAtom atom) {
+		final Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+		}
+		return entry != null && entry.signatures.equals(atom.getCMInstruction().getSignatures())
+			? OptionalLong.of(entry.executionCost)
+			: OptionalLong.empty();
+	}
+
+	synchronized void invalidate(Key key) {
+		entries.remove(key);
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,472 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine.journal;
+
+import com.google.common.collect.ImmutableList;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * A sequential, segmented journal of commits on disk which can be tailed by offset.
+ * <p>
+ * Each entry is assigned the next offset and written as its payload length, offset, payload and
+ * the CRC32C of the offset and payload. Entries are appended to the active segment file, which is
+ * rotated once it exceeds a size or age. On opening, a torn entry at the end of the last segment,
+ * left by a crash during an append, is truncated. Any other corrupt entry fails the opening rather
+ * than silently discarding the intact entries after it.
+ */
+public final class CommitJournal implements Closeable {
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+	private static final int TRAILER_BYTES = Integer.BYTES;
+	private static final int MAX_PAYLOAD_BYTES = 1 << 30;
+
+	/**
+	 * Tuning of a {@link CommitJournal}.
+	 */
+	public static final class Config {
+		private final long maxSegmentBytes;
+		private final Duration maxSegmentAge;
+		private final boolean syncOnAppend;
+
+		/**
+		 * @param maxSegmentBytes the size in bytes after which the active segment is rotated
+		 * @param maxSegmentAge the age after which the active segment is rotated
+		 * @param syncOnAppend whether every append is forced to disk before returning
+		 */
+		public Config(long maxSegmentBytes, Duration maxSegmentAge, boolean syncOnAppend) {
+			if (maxSegmentBytes <= 0 || maxSegmentAge.isNegative() || maxSegmentAge.isZero()) {
+				throw new IllegalArgumentException(
+					String.format("Invalid config maxSegmentBytes=%s maxSegmentAge=%s", maxSegmentBytes, maxSegmentAge)
+				);
+			}
+
+			this.maxSegmentBytes = maxSegmentBytes;
+			this.maxSegmentAge = maxSegmentAge;
+			this.syncOnAppend = syncOnAppend;
+		}
+
+		public static Config defaults() {
+			return new Config(256L * 1024 * 1024, Duration.ofHours(1), true);
+		}
+	}
+
+	private final Path directory;
+	private final Config config;
+	private final Clock clock;
+	private final Object lock = new Object();
+	// Segment files by the offset of their first entry
+	private final ConcurrentSkipListMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+	private FileChannel active;
+	private long activeBytes;
+	private Instant activeCreated;
+	private volatile long nextOffset;
+
+	/**
+	 * Opens a journal in a directory, recovering any segments previously written to it.
+	 *
+	 * @param directory the directory of the segment files
+	 * @param config the tuning of the journal
+	 */
+	public CommitJournal(Path directory, Config config) throws IOException {
+		this(directory, config, Clock.systemUTC());
+	}
+
+	CommitJournal(Path directory, Config config, Clock clock) throws IOException {
+		this.directory = Objects.requireNonNull(directory);
+		this.config = Objects.requireNonNull(config);
+		this.clock = Objects.requireNonNull(clock);
+
+		Files.createDirectories(directory);
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path path : files.collect(Collectors.toList())) {
+				final String name = path.getFileName().toString();
+				if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+					segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), path);
+				}
+			}
+		}
+
+		if (segments.isEmpty()) {
+			openSegment(0);
+		} else {
+			final Map.Entry<Long, Path> last = segments.lastEntry();
+			this.active = FileChannel.open(last.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.activeCreated = clock.instant();
+			recover(last.getKey());
+		}
+	}
+
+	private void recover(long firstOffset) throws IOException {
+		final long size = active.size();
+		long position = 0;
+		long offset = firstOffset;
+		while (true) {
+			final JournalEntry entry = readEntry(active, position, size);
+			if (entry == null || entry.getOffset() != offset) {
+				break;
+			}
+			position += recordBytes(entry.getPayloadLength());
+			offset++;
+		}
+
+		if (position < size && !isTornTail(active, position, size)) {
+			throw new IOException(
+				String.format("Corrupt journal entry %s at position %s of %s", offset, position, segments.lastEntry().getValue())
+			);
+		}
+		active.truncate(position);
+		active.force(true);
+		this.activeBytes = position;
+		this.nextOffset = offset;
+	}
+
+	// A crash during an append leaves the last record incomplete, or leaves unwritten zeros behind it
+	private static boolean isTornTail(FileChannel channel, long position, long size) throws IOException {
+		if (position + HEADER_BYTES > size) {
+			return true;
+		}
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		readFully(channel, header, position);
+		final int payloadLength = header.getInt();
+		if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_BYTES || position + recordBytes(payloadLength) >= size) {
+			return true;
+		}
+
+		final ByteBuffer rest = ByteBuffer.allocate(64 * 1024);
+		long checked = position;
+		while (checked < size) {
+			rest.clear().limit((int) Math.min(rest.capacity(), size - checked));
+			readFully(channel, rest, checked);
+			while (rest.hasRemaining()) {
+				if (rest.get() != 0) {
+					return false;
+				}
+			}
+			checked += rest.limit();
+		}
+		return true;
+	}
+
+	private void openSegment(long firstOffset) throws IOException {
+		final Path path = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, firstOffset, SEGMENT_SUFFIX));
+		this.active = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.activeBytes = 0;
+		this.activeCreated = clock.instant();
+		segments.put(firstOffset, path);
+	}
+
+	private static int recordBytes(int payloadLength) {
+		return HEADER_BYTES + payloadLength + TRAILER_BYTES;
+	}
+
+	private static int checksum(ByteBuffer record, int payloadLength) {
+		final CRC32C crc = new CRC32C();
+		crc.update(record.duplicate().position(Integer.BYTES).limit(HEADER_BYTES + payloadLength));
+		return (int) crc.getValue();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+		buffer.flip();
+	}
+
+	// Returns null if there is no intact entry at the position
+	private static JournalEntry readEntry(FileChannel channel, long position, long size) throws IOException {
+		if (position + HEADER_BYTES > size) {
+			return null;
+		}
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		readFully(channel, header, position);
+		final int payloadLength = header.getInt();
+		if (payloadLength < 0 || payloadLength > MAX_PAYLOAD_BYTES || position + recordBytes(payloadLength) > size) {
+			return null;
+		}
+
+		final ByteBuffer record = ByteBuffer.allocate(recordBytes(payloadLength));
+		readFully(channel, record, position);
+		if (record.getInt(HEADER_BYTES + payloadLength) != checksum(record, payloadLength)) {
+			return null;
+		}
+		final byte[] payload = new byte[payloadLength];
+		record.position(HEADER_BYTES).get(payload);
+		return new JournalEntry(record.getLong(Integer.BYTES), payload);
+	}
+
+	/**
+	 * Appends an entry to the journal.
+	 *
+	 * @param payload the payload of the entry
+	 * @return the offset of the entry
+	 */
+	public long append(byte[] payload) throws IOException {
+		return append(ImmutableList.of(payload));
+	}
+
+	/**
+	 * Appends entries to the journal, forcing them to disk at most once.
+	 *
+	 * @param payloads the payloads of the entries in order
+	 * @return the offset of the first entry
+	 */
+	public long append(List<byte[]> payloads) throws IOException {
+		synchronized (lock) {
+			if (active == null) {
+				throw new IllegalStateException("Journal is closed");
+			}
+
+			final long firstOffset = nextOffset;
+			long offset = firstOffset;
+			for (byte[] payload : payloads) {
+				if (payload.length > MAX_PAYLOAD_BYTES) {
+					throw new IllegalArgumentException("Payload of " + payload.length + " bytes is too large");
+				}
+				rotateIfRequired(offset);
+
+				final ByteBuffer record = ByteBuffer.allocate(recordBytes(payload.length));
+				record.putInt(payload.length).putLong(offset).put(payload);
+				record.putInt(checksum(record, payload.length));
+				record.flip();
+				while (record.hasRemaining()) {
+					active.write(record, activeBytes + record.position());
+				}
+				activeBytes += record.limit();
+				offset++;
+			}
+
+			if (config.syncOnAppend) {
+				active.force(false);
+			}
+			// Publishes the entries to tailers
+			nextOffset = offset;
+			return firstOffset;
+		}
+	}
+
+	private void rotateIfRequired(long offset) throws IOException {
+		final boolean full = activeBytes >= config.maxSegmentBytes;
+		final boolean old = Duration.between(activeCreated, clock.instant()).compareTo(config.maxSegmentAge) >= 0;
+		if (activeBytes > 0 && (full || old)) {
+			active.force(true);
+			active.close();
+			openSegment(offset);
+		}
+	}
+
+	/**
+	 * Forces all appended entries to disk.
+	 */
+	public void sync() throws IOException {
+		synchronized (lock) {
+			if (active != null) {
+				active.force(false);
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the offset the next appended entry will have.
+	 *
+	 * @return the next offset
+	 */
+	public long getNextOffset() {
+		return nextOffset;
+	}
+
+	/**
+	 * Retrieves the offset of the first entry still retained.
+	 *
+	 * @return the first retained offset, which is the next offset if no entries are retained
+	 */
+	public long getFirstOffset() {
+		return segments.firstKey();
+	}
+
+	/**
+	 * Reads the last entry appended to the journal.
+	 *
+	 * @return the last entry, or empty if the journal has no entries
+	 * @throws IOException if the entry cannot be read or is no longer retained
+	 */
+	public Optional<JournalEntry> lastEntry() throws IOException {
+		synchronized (lock) {
+			if (nextOffset == 0) {
+				return Optional.empty();
+			}
+			try (Tailer tailer = tail(nextOffset - 1)) {
+				return tailer.poll(1).stream().findFirst();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the segments which only hold entries before the given offset.
+	 * The active segment is never deleted.
+	 *
+	 * @param offset the first offset which must be retained
+	 * @return the number of segments deleted
+	 */
+	public int deleteSegmentsBefore(long offset) throws IOException {
+		synchronized (lock) {
+			int deleted = 0;
+			Map.Entry<Long, Path> first = segments.firstEntry();
+			while (first != null) {
+				final Long next = segments.higherKey(first.getKey());
+				if (next == null || next > offset) {
+					break;
+				}
+				segments.remove(first.getKey());
+				Files.delete(first.getValue());
+				deleted++;
+				first = segments.firstEntry();
+			}
+			return deleted;
+		}
+	}
+
+	/**
+	 * Creates a tailer reading the entries of this journal from an offset onwards.
+	 *
+	 * @param fromOffset the offset of the first entry to read
+	 * @return the tailer, which must be closed once no longer used
+	 */
+	public Tailer tail(long fromOffset) {
+		if (fromOffset < 0) {
+			throw new IllegalArgumentException("Invalid offset " + fromOffset);
+		}
+		return new Tailer(fromOffset);
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (active != null) {
+				active.force(true);
+				active.close();
+				active = null;
+			}
+		}
+	}
+
+	/**
+	 * Reads the entries of a {@link CommitJournal} in order as they are appended.
+	 */
+	public final class Tailer implements Closeable {
+		private long offset;
+		private FileChannel channel;
+		private long position;
+
+		private Tailer(long offset) {
+			this.offset = offset;
+		}
+
+		/**
+		 * Retrieves the offset of the next entry this tailer will read.
+		 *
+		 * @return the next offset
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Reads the entries appended since the last poll.
+		 *
+		 * @param maxEntries the maximum number of entries to read
+		 * @return the entries read, empty if there are no new entries
+		 * @throws IOException if the entries cannot be read or are no longer retained
+		 */
+		public List<JournalEntry> poll(int maxEntries) throws IOException {
+			final List<JournalEntry> entries = new ArrayList<>();
+			while (entries.size() < maxEntries && offset < nextOffset) {
+				if (channel == null) {
+					seek();
+				}
+
+				final JournalEntry entry = readEntry(channel, position, channel.size());
+				if (entry == null) {
+					if (position < channel.size()) {
+						throw new IOException("Corrupt journal entry " + offset);
+					}
+					// The segment has been rotated
+					channel.close();
+					channel = null;
+					continue;
+				}
+				if (entry.getOffset() != offset) {
+					throw new IOException(String.format("Expected journal entry %s but found %s", offset, entry.getOffset()));
+				}
+
+				entries.add(entry);
+				position += recordBytes(entry.getPayloadLength());
+				offset++;
+			}
+			return entries;
+		}
+
+		private void seek() throws IOException {
+			final Map.Entry<Long, Path> segment = segments.floorEntry(offset);
+			if (segment == null) {
+				throw new IOException("Journal entry " + offset + " is no longer retained");
+			}
+
+			channel = FileChannel.open(segment.getValue(), StandardOpenOption.READ);
+			position = 0;
+			long skipped = segment.getKey();
+			while (skipped < offset) {
+				final JournalEntry entry = readEntry(channel, position, channel.size());
+				if (entry == null) {
+					throw new IOException("Journal entry " + offset + " not found in " + segment.getValue());
+				}
+				position += recordBytes(entry.getPayloadLength());
+				skipped++;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+		}
+	}
+}
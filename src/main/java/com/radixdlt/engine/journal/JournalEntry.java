@@ -0,0 +1,71 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine.journal;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An entry read from a {@link CommitJournal}.
+ */
+public final class JournalEntry {
+	private final long offset;
+	private final byte[] payload;
+
+	JournalEntry(long offset, byte[] payload) {
+		this.offset = offset;
+		this.payload = Objects.requireNonNull(payload);
+	}
+
+	/**
+	 * Retrieves the offset of this entry, which is its position in the sequence of all entries appended.
+	 *
+	 * @return the offset
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	public byte[] getPayload() {
+		return payload.clone();
+	}
+
+	int getPayloadLength() {
+		return payload.length;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(offset, Arrays.hashCode(payload));
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof JournalEntry)) {
+			return false;
+		}
+
+		JournalEntry other = (JournalEntry) o;
+		return this.offset == other.offset && Arrays.equals(this.payload, other.payload);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s{offset=%s length=%s}", getClass().getSimpleName(), offset, payload.length);
+	}
+}
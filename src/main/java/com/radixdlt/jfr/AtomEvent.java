@@ -0,0 +1,91 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.jfr;
+
+import com.radixdlt.constraintmachine.CMInstruction;
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.constraintmachine.CMMicroInstruction.CMMicroOp;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+
+/**
+ * Base of the flight recorder events of operations on atoms, describing the shape of the atoms
+ * and the outcome of the operation. The duration of the operation is that of the event.
+ * <p>
+ * Fields should only be set if {@link #shouldCommit()} so disabled events cost next to nothing.
+ */
+@Category({"Radix", "Engine"})
+public abstract class AtomEvent extends jdk.jfr.Event {
+	/**
+	 * The outcome of an operation which succeeded.
+	 */
+	public static final String OK = "OK";
+	/**
+	 * The outcome of an operation which failed with an unexpected exception.
+	 */
+	public static final String EXCEPTION = "EXCEPTION";
+
+	@Label("Instruction Count")
+	@Description("Number of micro instructions")
+	private int instructionCount;
+
+	@Label("Particle Count")
+	@Description("Number of particles spun")
+	private int particleCount;
+
+	@Label("Particle Group Count")
+	private int particleGroupCount;
+
+	@Label("Signature Count")
+	private int signatureCount;
+
+	@Label("Outcome")
+	@Description("OK, the error code of the failure or EXCEPTION")
+	private String outcome = OK;
+
+	/**
+	 * Adds the shape of an atom to this event.
+	 *
+	 * @param cmInstruction the instruction of the atom
+	 */
+	public void addAtom(CMInstruction cmInstruction) {
+		if (cmInstruction == null) {
+			return;
+		}
+
+		for (CMMicroInstruction microInstruction : cmInstruction.getMicroInstructions()) {
+			if (microInstruction.getMicroOp() == CMMicroOp.PARTICLE_GROUP) {
+				particleGroupCount++;
+			} else if (microInstruction.isPush()) {
+				particleCount++;
+			}
+		}
+		instructionCount += cmInstruction.getMicroInstructions().size();
+		signatureCount += cmInstruction.getSignatures().size();
+	}
+
+	/**
+	 * Sets the outcome of the operation.
+	 *
+	 * @param outcome {@link #OK} or the error code of the failure
+	 */
+	public void setOutcome(Object outcome) {
+		this.outcome = String.valueOf(outcome);
+	}
+}
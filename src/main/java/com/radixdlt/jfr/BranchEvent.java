@@ -0,0 +1,43 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.radixdlt.Branch")
+@Label("Branch")
+@Description("Creation of a transient RadixEngine branch")
+@Category({"Radix", "Engine"})
+public final class BranchEvent extends jdk.jfr.Event {
+	@Label("State Computer Count")
+	private int stateComputerCount;
+
+	@Label("Index Count")
+	private int indexCount;
+
+	public void setStateComputerCount(int stateComputerCount) {
+		this.stateComputerCount = stateComputerCount;
+	}
+
+	public void setIndexCount(int indexCount) {
+		this.indexCount = indexCount;
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.radixdlt.StoreAtom")
+@Label("Store Atom")
+@Description("EngineStore.storeAtom of an atom, or storeAtoms of a batch of atoms")
+public final class StoreAtomEvent extends AtomEvent {
+	@Label("Atom Count")
+	private int atomCount;
+
+	public void setAtomCount(int atomCount) {
+		this.atomCount = atomCount;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.radixdlt.StoreCompute")
+@Label("Store Compute")
+@Description("EngineStore.compute of a state over the particles of a class")
+@Category({"Radix", "Engine"})
+public final class StoreComputeEvent extends jdk.jfr.Event {
+	@Label("Particle Class")
+	private String particleClass;
+
+	@Label("Parallel")
+	@Description("Whether the state was computed with a combiner")
+	private boolean parallel;
+
+	public void setParticleClass(Class<?> particleClass) {
+		this.particleClass = particleClass.getName();
+	}
+
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+}
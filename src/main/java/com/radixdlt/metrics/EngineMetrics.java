@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.metrics;
+
+import com.radixdlt.constraintmachine.CMErrorCode;
+import com.radixdlt.engine.RadixEngineErrorCode;
+
+/**
+ * Receiver of measurements from the hot paths of the {@link com.radixdlt.engine.RadixEngine}
+ * and {@link com.radixdlt.constraintmachine.ConstraintMachine}. Called on every atom, so
+ * implementations must be cheap and thread safe. All methods do nothing by default.
+ */
+public interface EngineMetrics {
+	/**
+	 * Metrics which discard all measurements.
+	 */
+	EngineMetrics NOOP = new EngineMetrics() { };
+
+	/**
+	 * Called when an atom has passed its static check.
+	 */
+	default void atomChecked() {
+		// Discarded by default
+	}
+
+	/**
+	 * Called when an atom has been stored.
+	 */
+	default void atomStored() {
+		// Discarded by default
+	}
+
+	/**
+	 * Called when an atom has been rejected by the engine.
+	 *
+	 * @param errorCode the reason of the rejection
+	 */
+	default void atomRejected(RadixEngineErrorCode errorCode) {
+		// Discarded by default
+	}
+
+	/**
+	 * Called when the constraint machine has validated an instruction.
+	 *
+	 * @param nanos the duration of the validation
+	 */
+	default void cmValidated(long nanos) {
+		// Discarded by default
+	}
+
+	/**
+	 * Called when the constraint machine has rejected an instruction.
+	 *
+	 * @param errorCode the reason of the rejection
+	 */
+	default void cmRejected(CMErrorCode errorCode) {
+		// Discarded by default
+	}
+
+	/**
+	 * Called when a static check of an atom has completed, successfully or not.
+	 *
+	 * @param nanos the duration of the static check
+	 */
+	default void staticChecked(long nanos) {
+		// Discarded by default
+	}
+
+	/**
+	 * Called when the spins of the particles of an atom have been checked against the store.
+	 *
+	 * @param nanos the duration of the spin checks
+	 */
+	default void spinsChecked(long nanos) {
+		// Discarded by default
+	}
+
+	/**
+	 * Called when an atom has been written to the store.
+	 *
+	 * @param nanos the duration of the write
+	 */
+	default void storeWritten(long nanos) {
+		// Discarded by default
+	}
+
+	/**
+	 * Called when the state computers and indexes have been updated with a stored atom.
+	 *
+	 * @param nanos the duration of the updates
+	 */
+	default void stateComputersUpdated(long nanos) {
+		// Discarded by default
+	}
+
+	/**
+	 * Called when the engine state update lock has been acquired.
+	 *
+	 * @param nanos the time spent waiting for the lock
+	 */
+	default void lockAcquired(long nanos) {
+		// Discarded by default
+	}
+}
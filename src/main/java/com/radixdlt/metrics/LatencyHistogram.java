@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of durations in nanoseconds with power of two buckets,
+ * accurate to within a factor of two.
+ */
+public final class LatencyHistogram {
+	private static final int BUCKETS = Long.SIZE;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		final long clamped = Math.max(nanos, 0);
+		// Bucket 0 holds 0 and bucket i > 0 holds [2^(i-1), 2^i)
+		counts.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(clamped));
+		count.increment();
+		totalNanos.add(clamped);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	/**
+	 * Estimates a percentile of the recorded durations as the upper bound of the bucket it falls in.
+	 *
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the estimated duration in nanoseconds, 0 if nothing has been recorded
+	 */
+	public long getPercentileNanos(double percentile) {
+		if (percentile < 0.0 || percentile > 100.0) {
+			throw new IllegalArgumentException("Invalid percentile " + percentile);
+		}
+
+		final long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return (1L << i) - 1;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.metrics;
+
+import com.radixdlt.constraintmachine.CMErrorCode;
+import com.radixdlt.engine.RadixEngineErrorCode;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link EngineMetrics} which keep counters and latency histograms in memory
+ * for a metrics exporter to read and compute rates from.
+ */
+public final class RecordingEngineMetrics implements EngineMetrics {
+	private final LongAdder atomsChecked = new LongAdder();
+	private final LongAdder atomsStored = new LongAdder();
+	private final Map<RadixEngineErrorCode, LongAdder> atomRejections = new EnumMap<>(RadixEngineErrorCode.class);
+	private final Map<CMErrorCode, LongAdder> cmRejections = new EnumMap<>(CMErrorCode.class);
+	private final LatencyHistogram cmValidation = new LatencyHistogram();
+	private final LatencyHistogram staticCheck = new LatencyHistogram();
+	private final LatencyHistogram spinCheck = new LatencyHistogram();
+	private final LatencyHistogram storeWrite = new LatencyHistogram();
+	private final LatencyHistogram stateComputerUpdate = new LatencyHistogram();
+	private final LatencyHistogram lockWait = new LatencyHistogram();
+
+	public RecordingEngineMetrics() {
+		// Populated upfront so the maps are only ever read concurrently
+		for (RadixEngineErrorCode errorCode : RadixEngineErrorCode.values()) {
+			atomRejections.put(errorCode, new LongAdder());
+		}
+		for (CMErrorCode errorCode : CMErrorCode.values()) {
+			cmRejections.put(errorCode, new LongAdder());
+		}
+	}
+
+	@Override
+	public void atomChecked() {
+		atomsChecked.increment();
+	}
+
+	@Override
+	public void atomStored() {
+		atomsStored.increment();
+	}
+
+	@Override
+	public void atomRejected(RadixEngineErrorCode errorCode) {
+		atomRejections.get(errorCode).increment();
+	}
+
+	@Override
+	public void cmValidated(long nanos) {
+		cmValidation.record(nanos);
+	}
+
+	@Override
+	public void cmRejected(CMErrorCode errorCode) {
+		cmRejections.get(errorCode).increment();
+	}
+
+	@Override
+	public void staticChecked(long nanos) {
+		staticCheck.record(nanos);
+	}
+
+	@Override
+	public void spinsChecked(long nanos) {
+		spinCheck.record(nanos);
+	}
+
+	@Override
+	public void storeWritten(long nanos) {
+		storeWrite.record(nanos);
+	}
+
+	@Override
+	public void stateComputersUpdated(long nanos) {
+		stateComputerUpdate.record(nanos);
+	}
+
+	@Override
+	public void lockAcquired(long nanos) {
+		lockWait.record(nanos);
+	}
+
+	public long getAtomsChecked() {
+		return atomsChecked.sum();
+	}
+
+	public long getAtomsStored() {
+		return atomsStored.sum();
+	}
+
+	public long getAtomRejections(RadixEngineErrorCode errorCode) {
+		return atomRejections.get(errorCode).sum();
+	}
+
+	public long getCmRejections(CMErrorCode errorCode) {
+		return cmRejections.get(errorCode).sum();
+	}
+
+	public LatencyHistogram getCmValidation() {
+		return cmValidation;
+	}
+
+	public LatencyHistogram getStaticCheck() {
+		return staticCheck;
+	}
+
+	public LatencyHistogram getSpinCheck() {
+		return spinCheck;
+	}
+
+	public LatencyHistogram getStoreWrite() {
+		return storeWrite;
+	}
+
+	public LatencyHistogram getStateComputerUpdate() {
+		return stateComputerUpdate;
+	}
+
+	public LatencyHistogram getLockWait() {
+		return lockWait;
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.crypto.Hasher;
+import com.radixdlt.engine.RadixEngineAtom;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+
+/**
+ * An {@link EngineStore} which answers {@link Spin#NEUTRAL} for particles which have
+ * never been stored without accessing the underlying store, by keeping a Bloom filter
+ * of all the particles stored.
+ * <p>
+ * The filter grows as particles are stored by adding filters of doubling capacity and
+ * halving false positive probability, keeping the overall false positive probability
+ * bounded by twice the initial one.
+ *
+ * @param <T> the type of engine atom
+ */
+public final class BloomFilteredEngineStore<T extends RadixEngineAtom> implements EngineStore<T> {
+	private static final double FPP_TIGHTENING_RATIO = 0.5;
+
+	private static final long CACHED_PARTICLE_KEYS = 1 << 16;
+
+	// All 256 bits of the particle hash so that key collisions do not bound the false positive rate
+	private static final Funnel<ParticleKey> PARTICLE_KEY_FUNNEL = (key, sink) -> {
+		for (int i = 0; i < ParticleKey.LONGS; i++) {
+			sink.putLong(key.getLong(i));
+		}
+	};
+
+	/**
+	 * Snapshot of the effectiveness of a {@link BloomFilteredEngineStore}.
+	 */
+	public static final class FilterMetrics {
+		private final long lookups;
+		private final long filteredLookups;
+		private final long falsePositives;
+		private final int filterCount;
+		private final double expectedFpp;
+
+		private FilterMetrics(long lookups, long filteredLookups, long falsePositives, int filterCount, double expectedFpp) {
+			this.lookups = lookups;
+			this.filteredLookups = filteredLookups;
+			this.falsePositives = falsePositives;
+			this.filterCount = filterCount;
+			this.expectedFpp = expectedFpp;
+		}
+
+		/**
+		 * @return the number of spin lookups made
+		 */
+		public long getLookups() {
+			return lookups;
+		}
+
+		/**
+		 * @return the number of spin lookups answered without accessing the underlying store
+		 */
+		public long getFilteredLookups() {
+			return filteredLookups;
+		}
+
+		/**
+		 * @return the number of spin lookups passed to the underlying store which found nothing
+		 */
+		public long getFalsePositives() {
+			return falsePositives;
+		}
+
+		/**
+		 * @return the observed false positive rate amongst the lookups of particles not stored
+		 */
+		public double getFalsePositiveRate() {
+			final long negatives = filteredLookups + falsePositives;
+			return negatives == 0 ? 0.0 : (double) falsePositives / negatives;
+		}
+
+		/**
+		 * @return the number of filters currently in use
+		 */
+		public int getFilterCount() {
+			return filterCount;
+		}
+
+		/**
+		 * @return the false positive probability expected of the filters given their current contents
+		 */
+		public double getExpectedFpp() {
+			return expectedFpp;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s{lookups=%s filtered=%s falsePositives=%s filters=%s expectedFpp=%s}",
+				getClass().getSimpleName(), lookups, filteredLookups, falsePositives, filterCount, expectedFpp);
+		}
+	}
+
+	private final EngineStore<T> store;
+	private final ParticleKeys particleKeys;
+	private final Object filterLock = new Object();
+	private final List<BloomFilter<ParticleKey>> filters = new CopyOnWriteArrayList<>();
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder filteredLookups = new LongAdder();
+	private final LongAdder falsePositives = new LongAdder();
+	private long currentCapacity;
+	private double currentFpp;
+	private long currentInsertions;
+
+	/**
+	 * Wraps a store, initially filtering all the particles currently in it.
+	 * The store must not discard spent particles, as they would be missing from the filter.
+	 *
+	 * @param store the underlying store
+	 * @param hasher the hasher to hash particles with
+	 * @param expectedInsertions the capacity of the initial filter
+	 * @param fpp the false positive probability of the initial filter
+	 */
+	public BloomFilteredEngineStore(EngineStore<T> store, Hasher hasher, long expectedInsertions, double fpp) {
+		if (expectedInsertions <= 0) {
+			throw new IllegalArgumentException("expectedInsertions must be positive but was " + expectedInsertions);
+		}
+		if (fpp <= 0.0 || fpp >= 1.0) {
+			throw new IllegalArgumentException("fpp must be between 0 and 1 exclusive but was " + fpp);
+		}
+		if (store.discardsSpentParticles()) {
+			throw new IllegalArgumentException("Cannot filter a store which discards spent particles");
+		}
+
+		this.store = Objects.requireNonNull(store);
+		this.particleKeys = new ParticleKeys(Objects.requireNonNull(hasher), CACHED_PARTICLE_KEYS);
+		this.currentCapacity = expectedInsertions;
+		this.currentFpp = fpp;
+		this.filters.add(BloomFilter.create(PARTICLE_KEY_FUNNEL, expectedInsertions, fpp));
+
+		// Both up and down particles have been stored
+		this.store.compute(
+			Particle.class,
+			this,
+			(s, p) -> {
+				s.put(p);
+				return s;
+			},
+			(s, p) -> {
+				s.put(p);
+				return s;
+			}
+		);
+	}
+
+	private void put(Particle particle) {
+		final ParticleKey key = particleKeys.keyOf(particle);
+		synchronized (filterLock) {
+			if (currentInsertions >= currentCapacity) {
+				currentCapacity *= 2;
+				currentFpp *= FPP_TIGHTENING_RATIO;
+				currentInsertions = 0;
+				filters.add(BloomFilter.create(PARTICLE_KEY_FUNNEL, currentCapacity, currentFpp));
+			}
+
+			if (filters.get(filters.size() - 1).put(key)) {
+				currentInsertions++;
+			}
+		}
+	}
+
+	private boolean mightContain(Particle particle) {
+		final ParticleKey key = particleKeys.keyOf(particle);
+		for (BloomFilter<ParticleKey> filter : filters) {
+			if (filter.mightContain(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void storeAtom(T atom) {
+		// Filter first so that concurrent lookups never miss a stored particle
+		for (CMMicroInstruction microInstruction : atom.getCMInstruction().getMicroInstructions()) {
+			if (microInstruction.isPush()) {
+				put(microInstruction.getParticle());
+			}
+		}
+
+		store.storeAtom(atom);
+	}
+
+	@Override
+	public <U extends Particle, V> V compute(
+		Class<U> particleClass,
+		V initial,
+		BiFunction<V, U, V> outputReducer,
+		BiFunction<V, U, V> inputReducer
+	) {
+		return store.compute(particleClass, initial, outputReducer, inputReducer);
+	}
+
+	@Override
+	public <U extends Particle, V> V compute(
+		Class<U> particleClass,
+		V identity,
+		BiFunction<V, U, V> outputReducer,
+		BiFunction<V, U, V> inputReducer,
+		BinaryOperator<V> combiner
+	) {
+		return store.compute(particleClass, identity, outputReducer, inputReducer, combiner);
+	}
+
+	@Override
+	public boolean discardsSpentParticles() {
+		return store.discardsSpentParticles();
+	}
+
+	@Override
+	public Spin getSpin(Particle particle) {
+		lookups.increment();
+		if (!mightContain(particle)) {
+			filteredLookups.increment();
+			return Spin.NEUTRAL;
+		}
+
+		final Spin spin = store.getSpin(particle);
+		if (spin == Spin.NEUTRAL) {
+			falsePositives.increment();
+		}
+		return spin;
+	}
+
+	/**
+	 * Retrieves the current effectiveness of the filter.
+	 *
+	 * @return the filter metrics
+	 */
+	public FilterMetrics getMetrics() {
+		double expectedFpp = 0.0;
+		for (BloomFilter<ParticleKey> filter : filters) {
+			expectedFpp += filter.expectedFpp();
+		}
+		return new FilterMetrics(
+			lookups.sum(),
+			filteredLookups.sum(),
+			falsePositives.sum(),
+			filters.size(),
+			Math.min(expectedFpp, 1.0)
+		);
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.radixdlt.DefaultSerialization;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.serialization.DeserializeException;
+import com.radixdlt.serialization.DsonOutput.Output;
+import com.radixdlt.serialization.Serialization;
+import java.util.Objects;
+
+/**
+ * A {@link ParticleCodec} serializing particles to their persisted DSON form.
+ */
+public final class DsonParticleCodec implements ParticleCodec {
+	private final Serialization serialization;
+
+	public DsonParticleCodec() {
+		this(DefaultSerialization.getInstance());
+	}
+
+	public DsonParticleCodec(Serialization serialization) {
+		this.serialization = Objects.requireNonNull(serialization);
+	}
+
+	@Override
+	public byte[] encode(Particle particle) {
+		return serialization.toDson(particle, Output.PERSIST);
+	}
+
+	@Override
+	public <P extends Particle> P decode(byte[] bytes, Class<P> particleClass) {
+		try {
+			return serialization.fromDson(bytes, particleClass);
+		} catch (DeserializeException e) {
+			throw new IllegalStateException("Stored particle of " + particleClass + " could not be deserialized", e);
+		}
+	}
+}
@@ -19,7 +19,9 @@ package com.radixdlt.store;
 
 import com.radixdlt.engine.RadixEngineAtom;
 import com.radixdlt.constraintmachine.Particle;
+import java.util.List;
 import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 
 /**
  *  A state that gives access to the state of a certain shard space
@@ -30,6 +32,18 @@ public interface EngineStore<T extends RadixEngineAtom> extends CMStore {
 	 */
 	void storeAtom(T atom);
 
+	/**
+	 * Stores atoms into this CMStore in order, as if stored one by one.
+	 * Stores may override this to amortize the cost of a write across the batch.
+	 *
+	 * @param atoms the atoms to store
+	 */
+	default void storeAtoms(List<T> atoms) {
+		for (T atom : atoms) {
+			storeAtom(atom);
+		}
+	}
+
 	/**
 	 * Deterministically computes a value from a list of particles of a given type.
 	 * Must implement this until we get rid of optimistic concurrency.
@@ -46,4 +60,41 @@ public interface EngineStore<T extends RadixEngineAtom> extends CMStore {
 		BiFunction<V, U, V> outputReducer,
 		BiFunction<V, U, V> inputReducer
 	);
+
+	/**
+	 * Computes a value from a list of particles of a given type where the reducers
+	 * are associative, allowing the store to reduce segments of the list independently
+	 * (e.g. in parallel) and combine the segment results in order.
+	 * <p>
+	 * For any value {@code v} and segment of particles, folding the segment onto
+	 * {@code v} must equal combining {@code v} with the segment folded onto {@code identity}.
+	 * By default the particles are reduced sequentially.
+	 *
+	 * @param particleClass the particle class to reduce
+	 * @param identity the initial value of the state, which must be an identity of the combiner
+	 * @param combiner associative function which combines the states of two consecutive segments
+	 * @param <U> the particle class to reduce
+	 * @param <V> the class of the state to reduce to
+	 * @return the computed, reduced state
+	 */
+	default <U extends Particle, V> V compute(
+		Class<U> particleClass,
+		V identity,
+		BiFunction<V, U, V> outputReducer,
+		BiFunction<V, U, V> inputReducer,
+		BinaryOperator<V> combiner
+	) {
+		return compute(particleClass, identity, outputReducer, inputReducer);
+	}
+
+	/**
+	 * Whether this store discards spent particles, keeping only enough to answer their spin,
+	 * in which case {@link #compute(Class, Object, BiFunction, BiFunction)} folds up particles only.
+	 * By default all particles stored are folded.
+	 *
+	 * @return true if spent particles are not folded
+	 */
+	default boolean discardsSpentParticles() {
+		return false;
+	}
 }
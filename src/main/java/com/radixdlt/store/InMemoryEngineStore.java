@@ -20,22 +20,69 @@ package com.radixdlt.store;
 import com.radixdlt.constraintmachine.CMMicroInstruction;
 import com.radixdlt.constraintmachine.Particle;
 import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.crypto.Hasher;
 import com.radixdlt.engine.RadixEngineAtom;
 import com.radixdlt.utils.Pair;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 
+/**
+ * An {@link EngineStore} held in memory.
+ * <p>
+ * By default the full history of particles and the atoms which stored them is kept.
+ * In compacting mode only the up particles are kept, down particles are reduced to
+ * {@link ParticleKey} tombstones sufficient to detect double spends and no atoms are
+ * retained, at the cost of {@link #compute(Class, Object, BiFunction, BiFunction)}
+ * folding over the up particles only, as reported by {@link #discardsSpentParticles()}.
+ */
 public final class InMemoryEngineStore<T extends RadixEngineAtom> implements EngineStore<T> {
+	private static final long CACHED_PARTICLE_KEYS = 1 << 16;
+
 	private final Object lock = new Object();
 	private final Map<Particle, Pair<Spin, T>> storedParticles = new HashMap<>();
 	private final List<Pair<Particle, Spin>> inOrderParticles = new ArrayList<>();
 
+	// Compacting mode only
+	private final ParticleKeys particleKeys;
+	private final ParticleKeySpinTable spins = new ParticleKeySpinTable();
+	private final Map<ParticleKey, Particle> upParticles = new LinkedHashMap<>();
+
+	/**
+	 * Creates a store which keeps the full history of particles.
+	 */
+	public InMemoryEngineStore() {
+		this.particleKeys = null;
+	}
+
+	/**
+	 * Creates a compacting store which only keeps up particles and the keys of down particles.
+	 * As particles are only ever spun down once, a particle which is no longer up is either down,
+	 * and hence has a tombstone, or has never been stored.
+	 *
+	 * @param hasher hasher used to compute the {@link ParticleKey}s of particles
+	 */
+	public InMemoryEngineStore(Hasher hasher) {
+		this.particleKeys = new ParticleKeys(Objects.requireNonNull(hasher), CACHED_PARTICLE_KEYS);
+	}
+
+	private boolean isCompacting() {
+		return particleKeys != null;
+	}
+
 	@Override
 	public void storeAtom(T atom) {
 		synchronized (lock) {
+			if (isCompacting()) {
+				storeAtomCompacted(atom);
+				return;
+			}
+
 			for (CMMicroInstruction microInstruction : atom.getCMInstruction().getMicroInstructions()) {
 				if (microInstruction.isPush()) {
 					Spin nextSpin = microInstruction.getNextSpin();
@@ -49,10 +96,44 @@ public final class InMemoryEngineStore<T extends RadixEngineAtom> implements Eng
 		}
 	}
 
+	@Override
+	public void storeAtoms(List<T> atoms) {
+		synchronized (lock) {
+			for (T atom : atoms) {
+				storeAtom(atom);
+			}
+		}
+	}
+
+	private void storeAtomCompacted(T atom) {
+		for (CMMicroInstruction microInstruction : atom.getCMInstruction().getMicroInstructions()) {
+			if (microInstruction.isPush()) {
+				final Particle particle = microInstruction.getParticle();
+				final ParticleKey key = particleKeys.keyOf(particle);
+				final Spin nextSpin = microInstruction.getNextSpin();
+				if (nextSpin == Spin.UP) {
+					upParticles.put(key, particle);
+				} else {
+					upParticles.remove(key);
+				}
+				spins.put(key, nextSpin);
+			}
+		}
+	}
+
 	@Override
 	public <U extends Particle, V> V compute(Class<U> particleClass, V initial, BiFunction<V, U, V> outputReducer, BiFunction<V, U, V> inputReducer) {
 		V v = initial;
 		synchronized (lock) {
+			if (isCompacting()) {
+				for (Particle particle : upParticles.values()) {
+					if (particleClass.isInstance(particle)) {
+						v = outputReducer.apply(v, particleClass.cast(particle));
+					}
+				}
+				return v;
+			}
+
 			for (Pair<Particle, Spin> spinParticle : inOrderParticles) {
 				Particle particle = spinParticle.getFirst();
 				if (particleClass.isInstance(particle)) {
@@ -67,9 +148,57 @@ public final class InMemoryEngineStore<T extends RadixEngineAtom> implements Eng
 		return v;
 	}
 
+	@Override
+	public <U extends Particle, V> V compute(
+		Class<U> particleClass,
+		V identity,
+		BiFunction<V, U, V> outputReducer,
+		BiFunction<V, U, V> inputReducer,
+		BinaryOperator<V> combiner
+	) {
+		// Copied under the lock so that slow reducers do not hold up stores
+		final List<Particle> compacted;
+		final List<Pair<Particle, Spin>> history;
+		synchronized (lock) {
+			if (isCompacting()) {
+				compacted = new ArrayList<>(upParticles.values());
+				history = null;
+			} else {
+				compacted = null;
+				history = new ArrayList<>(inOrderParticles);
+			}
+		}
+
+		if (compacted != null) {
+			return compacted.parallelStream()
+				.filter(particleClass::isInstance)
+				.reduce(identity, (v, particle) -> outputReducer.apply(v, particleClass.cast(particle)), combiner);
+		}
+
+		// Ordered parallel reduction, segments are combined in the order they were stored
+		return history.parallelStream()
+			.filter(spinParticle -> particleClass.isInstance(spinParticle.getFirst()))
+			.reduce(
+				identity,
+				(v, spinParticle) -> spinParticle.getSecond().equals(Spin.UP)
+					? outputReducer.apply(v, particleClass.cast(spinParticle.getFirst()))
+					: inputReducer.apply(v, particleClass.cast(spinParticle.getFirst())),
+				combiner
+			);
+	}
+
+	@Override
+	public boolean discardsSpentParticles() {
+		return isCompacting();
+	}
+
 	@Override
 	public Spin getSpin(Particle particle) {
 		synchronized (lock) {
+			if (isCompacting()) {
+				return spins.get(particleKeys.keyOf(particle));
+			}
+
 			Pair<Spin, T> stored = storedParticles.get(particle);
 			return stored == null ? Spin.NEUTRAL : stored.getFirst();
 		}
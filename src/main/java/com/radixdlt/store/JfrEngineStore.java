@@ -0,0 +1,118 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.engine.RadixEngineAtom;
+import com.radixdlt.jfr.StoreAtomEvent;
+import com.radixdlt.jfr.StoreComputeEvent;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+
+/**
+ * An {@link EngineStore} which emits Java Flight Recorder events for the atoms stored
+ * and the states computed by an underlying store.
+ *
+ * @param <T> the type of engine atom
+ */
+public final class JfrEngineStore<T extends RadixEngineAtom> implements EngineStore<T> {
+	private final EngineStore<T> store;
+
+	public JfrEngineStore(EngineStore<T> store) {
+		this.store = Objects.requireNonNull(store);
+	}
+
+	@Override
+	public void storeAtom(T atom) {
+		final StoreAtomEvent event = new StoreAtomEvent();
+		event.begin();
+		store.storeAtom(atom);
+		event.end();
+		if (event.shouldCommit()) {
+			event.addAtom(atom.getCMInstruction());
+			event.setAtomCount(1);
+			event.commit();
+		}
+	}
+
+	@Override
+	public void storeAtoms(List<T> atoms) {
+		final StoreAtomEvent event = new StoreAtomEvent();
+		event.begin();
+		store.storeAtoms(atoms);
+		event.end();
+		if (event.shouldCommit()) {
+			for (T atom : atoms) {
+				event.addAtom(atom.getCMInstruction());
+			}
+			event.setAtomCount(atoms.size());
+			event.commit();
+		}
+	}
+
+	@Override
+	public <U extends Particle, V> V compute(
+		Class<U> particleClass,
+		V initial,
+		BiFunction<V, U, V> outputReducer,
+		BiFunction<V, U, V> inputReducer
+	) {
+		final StoreComputeEvent event = new StoreComputeEvent();
+		event.begin();
+		final V state = store.compute(particleClass, initial, outputReducer, inputReducer);
+		commitEvent(event, particleClass, false);
+		return state;
+	}
+
+	@Override
+	public <U extends Particle, V> V compute(
+		Class<U> particleClass,
+		V identity,
+		BiFunction<V, U, V> outputReducer,
+		BiFunction<V, U, V> inputReducer,
+		BinaryOperator<V> combiner
+	) {
+		final StoreComputeEvent event = new StoreComputeEvent();
+		event.begin();
+		final V state = store.compute(particleClass, identity, outputReducer, inputReducer, combiner);
+		commitEvent(event, particleClass, true);
+		return state;
+	}
+
+	private static void commitEvent(StoreComputeEvent event, Class<?> particleClass, boolean parallel) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.setParticleClass(particleClass);
+			event.setParallel(parallel);
+			event.commit();
+		}
+	}
+
+	@Override
+	public boolean discardsSpentParticles() {
+		return store.discardsSpentParticles();
+	}
+
+	@Override
+	public Spin getSpin(Particle particle) {
+		return store.getSpin(particle);
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.engine.RadixEngineAtom;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiFunction;
+
+/**
+ * An in memory {@link EngineStore} which keeps the spins of particles at every committed
+ * state version, allowing consistent reads of past states while atoms continue to be stored.
+ * <p>
+ * Each stored atom increments the state version. Reads never lock: the spin of a particle is
+ * kept as a chain of versions, newest first, which readers walk back to the version they read at.
+ * Versions below the watermark, the oldest version still read by an open {@link Snapshot},
+ * are discarded by {@link #collectGarbage()}.
+ * <p>
+ * Like {@link InMemoryEngineStore}, the full history of pushes is deliberately retained so that
+ * {@link #compute(Class, Object, BiFunction, BiFunction)} can fold it, as state computers and
+ * indexes are initialized from it. As spins only move forward this is at most an up and a down
+ * entry per particle, so memory grows with the particles stored rather than with reads or
+ * snapshots. Where spent particles must not be retained, use a compacting {@link InMemoryEngineStore}.
+ */
+public final class MultiVersionEngineStore<T extends RadixEngineAtom> implements EngineStore<T> {
+	private static final class Version {
+		private final long version;
+		private final Spin spin;
+		private volatile Version previous;
+
+		private Version(long version, Spin spin, Version previous) {
+			this.version = version;
+			this.spin = spin;
+			this.previous = previous;
+		}
+	}
+
+	private static final class LogEntry {
+		private final long version;
+		private final Particle particle;
+		private final Spin spin;
+
+		private LogEntry(long version, Particle particle, Spin spin) {
+			this.version = version;
+			this.particle = particle;
+			this.spin = spin;
+		}
+	}
+
+	/**
+	 * A read only view of the store at a committed state version.
+	 * Must be closed once no longer used so that older versions can be discarded.
+	 */
+	public final class Snapshot implements EngineStore<T>, AutoCloseable {
+		private final long version;
+		private boolean closed;
+
+		private Snapshot(long version) {
+			this.version = version;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		public MultiVersionEngineStore<T> getStore() {
+			return MultiVersionEngineStore.this;
+		}
+
+		@Override
+		public void storeAtom(T atom) {
+			throw new UnsupportedOperationException("Snapshots are read only");
+		}
+
+		@Override
+		public <U extends Particle, V> V compute(Class<U> particleClass, V initial, BiFunction<V, U, V> outputReducer, BiFunction<V, U, V> inputReducer) {
+			return MultiVersionEngineStore.this.compute(particleClass, initial, outputReducer, inputReducer, version);
+		}
+
+		@Override
+		public Spin getSpin(Particle particle) {
+			// Pinned by this snapshot so never discarded while read
+			return readSpin(particle, version);
+		}
+
+		@Override
+		public void close() {
+			synchronized (snapshotLock) {
+				if (!closed) {
+					closed = true;
+					openSnapshots.computeIfPresent(version, (v, count) -> count == 1 ? null : count - 1);
+				}
+			}
+		}
+	}
+
+	private final Object writeLock = new Object();
+	private final Map<Particle, Version> spins = new ConcurrentHashMap<>();
+	private final Queue<LogEntry> inOrderParticles = new ConcurrentLinkedQueue<>();
+	private volatile long version;
+
+	private final Object snapshotLock = new Object();
+	private final TreeMap<Long, Integer> openSnapshots = new TreeMap<>();
+	private volatile long watermark;
+
+	@Override
+	public void storeAtom(T atom) {
+		synchronized (writeLock) {
+			final long nextVersion = version + 1;
+			for (CMMicroInstruction microInstruction : atom.getCMInstruction().getMicroInstructions()) {
+				if (microInstruction.isPush()) {
+					final Particle particle = microInstruction.getParticle();
+					final Spin nextSpin = microInstruction.getNextSpin();
+					spins.compute(particle, (p, previous) -> new Version(nextVersion, nextSpin, previous));
+					inOrderParticles.add(new LogEntry(nextVersion, particle, nextSpin));
+				}
+			}
+			// Publishes the atom to readers
+			version = nextVersion;
+		}
+	}
+
+	/**
+	 * Retrieves the latest committed state version, which is the number of atoms stored.
+	 *
+	 * @return the current state version
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Retrieves the oldest state version which can still be read.
+	 *
+	 * @return the watermark
+	 */
+	public long getWatermark() {
+		return watermark;
+	}
+
+	/**
+	 * Opens a snapshot of the latest committed state version.
+	 *
+	 * @return the snapshot, which must be closed once no longer used
+	 */
+	public Snapshot snapshot() {
+		synchronized (snapshotLock) {
+			return openSnapshot(version);
+		}
+	}
+
+	/**
+	 * Opens a snapshot of a past committed state version.
+	 *
+	 * @param version the state version to read at
+	 * @return the snapshot, which must be closed once no longer used
+	 * @throws IllegalArgumentException if the version is not committed or has been discarded
+	 */
+	public Snapshot snapshot(long version) {
+		synchronized (snapshotLock) {
+			checkReadable(version);
+			return openSnapshot(version);
+		}
+	}
+
+	private Snapshot openSnapshot(long version) {
+		openSnapshots.merge(version, 1, Integer::sum);
+		return new Snapshot(version);
+	}
+
+	private void checkReadable(long version) {
+		if (version < watermark || version > this.version) {
+			throw new IllegalArgumentException(
+				String.format("Version %s is not readable, versions %s to %s are", version, watermark, this.version)
+			);
+		}
+	}
+
+	/**
+	 * Discards the versions no longer readable by any open snapshot, advancing the watermark
+	 * to the oldest open snapshot or, if there are none, to the latest committed state version.
+	 * Only the version chains are trimmed: the latest spin of every particle and the history folded
+	 * by {@link #compute(Class, Object, BiFunction, BiFunction)} are retained.
+	 *
+	 * @return the new watermark
+	 */
+	public long collectGarbage() {
+		final long newWatermark;
+		synchronized (snapshotLock) {
+			newWatermark = openSnapshots.isEmpty() ? version : openSnapshots.firstKey();
+			watermark = newWatermark;
+		}
+
+		// Readers at or above the watermark stop at or before the newest version below it
+		for (Version head : spins.values()) {
+			Version current = head;
+			while (current != null && current.version > newWatermark) {
+				current = current.previous;
+			}
+			if (current != null) {
+				current.previous = null;
+			}
+		}
+		return newWatermark;
+	}
+
+	/**
+	 * Retrieves the spin of a particle at a committed state version. The version is not pinned,
+	 * so if {@link #collectGarbage()} discards it during the read the read fails rather than
+	 * returning a spin from a truncated history; open a {@link Snapshot} to pin it instead.
+	 *
+	 * @param particle the particle to get the spin of
+	 * @param version the state version to read at
+	 * @return the spin of the particle at the given version
+	 * @throws IllegalArgumentException if the version is not committed or has been discarded
+	 */
+	public Spin getSpin(Particle particle, long version) {
+		checkReadable(version);
+		final Spin spin = readSpin(particle, version);
+		// Collection raises the watermark before truncating, so a read of a truncated history sees it raised
+		checkReadable(version);
+		return spin;
+	}
+
+	@Override
+	public Spin getSpin(Particle particle) {
+		while (true) {
+			final long latest = version;
+			final Spin spin = readSpin(particle, latest);
+			if (latest >= watermark) {
+				return spin;
+			}
+			// Overtaken by commits and a collection during the read, so read the newer version
+		}
+	}
+
+	private Spin readSpin(Particle particle, long version) {
+		Version current = spins.get(particle);
+		while (current != null && current.version > version) {
+			current = current.previous;
+		}
+		return current == null ? Spin.NEUTRAL : current.spin;
+	}
+
+	@Override
+	public <U extends Particle, V> V compute(Class<U> particleClass, V initial, BiFunction<V, U, V> outputReducer, BiFunction<V, U, V> inputReducer) {
+		return compute(particleClass, initial, outputReducer, inputReducer, version);
+	}
+
+	private <U extends Particle, V> V compute(
+		Class<U> particleClass,
+		V initial,
+		BiFunction<V, U, V> outputReducer,
+		BiFunction<V, U, V> inputReducer,
+		long version
+	) {
+		V v = initial;
+		// Entries are appended in version order so the fold stops at the first later entry
+		for (LogEntry entry : inOrderParticles) {
+			if (entry.version > version) {
+				break;
+			}
+			if (particleClass.isInstance(entry.particle)) {
+				if (entry.spin == Spin.UP) {
+					v = outputReducer.apply(v, particleClass.cast(entry.particle));
+				} else {
+					v = inputReducer.apply(v, particleClass.cast(entry.particle));
+				}
+			}
+		}
+		return v;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.crypto.Hasher;
+import com.radixdlt.engine.RadixEngineAtom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiFunction;
+
+/**
+ * An {@link EngineStore} whose spin index and particles are held outside the heap, so the
+ * heap footprint of the store is independent of the number of particles stored.
+ * <p>
+ * Spins are kept in an open addressing table of {@link ParticleKey}s in direct buffers and
+ * particles in an append only log of serialized particles from which
+ * {@link #compute(Class, Object, BiFunction, BiFunction)} replays history. Atoms are not retained.
+ *
+ * @param <T> the type of engine atom
+ */
+public final class OffHeapEngineStore<T extends RadixEngineAtom> implements EngineStore<T> {
+	private static final int DEFAULT_SHARD_BITS = 4;
+	private static final int DEFAULT_LOG_CHUNK_SIZE = 64 * 1024 * 1024;
+	private static final long CACHED_PARTICLE_KEYS = 1 << 16;
+
+	private final Object lock = new Object();
+	private final ParticleKeys particleKeys;
+	private final ParticleCodec codec;
+	private final OffHeapSpinTable spins;
+	private final OffHeapParticleLog log;
+	private final List<Class<? extends Particle>> particleClasses = new ArrayList<>();
+	private final Map<Class<? extends Particle>, Integer> particleClassIds = new HashMap<>();
+
+	/**
+	 * Creates a store which serializes particles to DSON.
+	 *
+	 * @param hasher the hasher to compute particle keys with
+	 */
+	public OffHeapEngineStore(Hasher hasher) {
+		this(hasher, new DsonParticleCodec(), DEFAULT_SHARD_BITS, DEFAULT_LOG_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param hasher the hasher to compute particle keys with
+	 * @param codec the codec to serialize particles with
+	 * @param shardBits the log2 number of spin table shards, each of which holds up to 20 million particles
+	 * @param logChunkSize the size of each buffer of the particle log, which bounds the size of a serialized particle
+	 */
+	public OffHeapEngineStore(Hasher hasher, ParticleCodec codec, int shardBits, int logChunkSize) {
+		this.particleKeys = new ParticleKeys(Objects.requireNonNull(hasher), CACHED_PARTICLE_KEYS);
+		this.codec = Objects.requireNonNull(codec);
+		this.spins = new OffHeapSpinTable(shardBits);
+		this.log = new OffHeapParticleLog(logChunkSize);
+	}
+
+	private int classIdOf(Class<? extends Particle> particleClass) {
+		return particleClassIds.computeIfAbsent(particleClass, c -> {
+			if (particleClasses.size() > Short.MAX_VALUE) {
+				throw new IllegalStateException("Too many particle classes");
+			}
+			particleClasses.add(c);
+			return particleClasses.size() - 1;
+		});
+	}
+
+	@Override
+	public void storeAtom(T atom) {
+		synchronized (lock) {
+			for (CMMicroInstruction microInstruction : atom.getCMInstruction().getMicroInstructions()) {
+				if (microInstruction.isPush()) {
+					final Particle particle = microInstruction.getParticle();
+					final ParticleKey key = particleKeys.keyOf(particle);
+					final Spin nextSpin = microInstruction.getNextSpin();
+					final int classId = classIdOf(particle.getClass());
+					final long previousOffset = spins.getLogOffset(key);
+					final long offset = previousOffset < 0
+						? log.append(nextSpin, classId, codec.encode(particle))
+						: log.appendReference(nextSpin, classId, previousOffset);
+					spins.put(key, nextSpin, offset);
+				}
+			}
+		}
+	}
+
+	@Override
+	public <U extends Particle, V> V compute(Class<U> particleClass, V initial, BiFunction<V, U, V> outputReducer, BiFunction<V, U, V> inputReducer) {
+		final List<V> value = new ArrayList<>(1);
+		value.add(initial);
+		synchronized (lock) {
+			log.forEach(
+				classId -> particleClass.isAssignableFrom(particleClasses.get(classId)),
+				(spin, classId, bytes) -> {
+					final U particle = particleClass.cast(codec.decode(bytes, particleClasses.get(classId)));
+					final BiFunction<V, U, V> reducer = spin == Spin.UP ? outputReducer : inputReducer;
+					value.set(0, reducer.apply(value.get(0), particle));
+				}
+			);
+		}
+		return value.get(0);
+	}
+
+	@Override
+	public Spin getSpin(Particle particle) {
+		final ParticleKey key = particleKeys.keyOf(particle);
+		synchronized (lock) {
+			return spins.getSpin(key);
+		}
+	}
+
+	/**
+	 * Retrieves the number of distinct particles stored.
+	 *
+	 * @return the number of particles
+	 */
+	public long size() {
+		synchronized (lock) {
+			return spins.size();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.radixdlt.constraintmachine.Spin;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An append only log of serialized particles and the spins they were stored with,
+ * held in fixed size direct buffer chunks outside the heap. Not thread safe.
+ */
+final class OffHeapParticleLog {
+	private static final Spin[] SPINS = Spin.values();
+	// spin, class id, length
+	private static final int HEADER_BYTES = Byte.BYTES + Short.BYTES + Integer.BYTES;
+	// Length of an entry whose payload is the offset of an earlier entry of the same particle
+	private static final int REFERENCE_LENGTH = -1;
+
+	/**
+	 * Receives the entries of the log.
+	 */
+	interface EntryConsumer {
+		void accept(Spin spin, int classId, byte[] bytes);
+	}
+
+	/**
+	 * Filters the entries of the log by class before they are read.
+	 */
+	interface ClassFilter {
+		boolean test(int classId);
+	}
+
+	private final int chunkSize;
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+
+	OffHeapParticleLog(int chunkSize) {
+		if (chunkSize < HEADER_BYTES + Long.BYTES) {
+			throw new IllegalArgumentException("chunkSize too small: " + chunkSize);
+		}
+
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Appends an entry to the log.
+	 *
+	 * @return the offset of the entry
+	 */
+	long append(Spin spin, int classId, byte[] bytes) {
+		final int entryBytes = HEADER_BYTES + bytes.length;
+		if (entryBytes > chunkSize) {
+			throw new IllegalArgumentException(String.format("Entry of %s bytes exceeds chunk size %s", entryBytes, chunkSize));
+		}
+
+		final ByteBuffer chunk = chunkFor(entryBytes);
+		final long offset = offsetOf(chunk);
+		chunk.put((byte) spin.ordinal());
+		chunk.putShort((short) classId);
+		chunk.putInt(bytes.length);
+		chunk.put(bytes);
+		return offset;
+	}
+
+	/**
+	 * Appends an entry to the log whose particle is that of an earlier entry, so that
+	 * a particle spun down is not serialized again.
+	 *
+	 * @return the offset of the entry
+	 */
+	long appendReference(Spin spin, int classId, long particleOffset) {
+		final ByteBuffer chunk = chunkFor(HEADER_BYTES + Long.BYTES);
+		final long offset = offsetOf(chunk);
+		chunk.put((byte) spin.ordinal());
+		chunk.putShort((short) classId);
+		chunk.putInt(REFERENCE_LENGTH);
+		chunk.putLong(particleOffset);
+		return offset;
+	}
+
+	private ByteBuffer chunkFor(int entryBytes) {
+		ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+		if (chunk == null || chunk.remaining() < entryBytes) {
+			chunk = ByteBuffer.allocateDirect(chunkSize);
+			chunks.add(chunk);
+		}
+		return chunk;
+	}
+
+	private long offsetOf(ByteBuffer lastChunk) {
+		return (long) (chunks.size() - 1) * chunkSize + lastChunk.position();
+	}
+
+	/**
+	 * Reads the entries of the log in the order they were appended, skipping the
+	 * payload of entries whose class is filtered out.
+	 */
+	void forEach(ClassFilter classFilter, EntryConsumer consumer) {
+		for (ByteBuffer chunk : chunks) {
+			final ByteBuffer reader = chunk.duplicate();
+			reader.flip();
+			while (reader.hasRemaining()) {
+				final Spin spin = SPINS[reader.get()];
+				final int classId = reader.getShort();
+				final int length = reader.getInt();
+				if (length == REFERENCE_LENGTH) {
+					final long particleOffset = reader.getLong();
+					if (classFilter.test(classId)) {
+						consumer.accept(spin, classId, readBytes(particleOffset));
+					}
+				} else if (classFilter.test(classId)) {
+					final byte[] bytes = new byte[length];
+					reader.get(bytes);
+					consumer.accept(spin, classId, bytes);
+				} else {
+					reader.position(reader.position() + length);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the serialized particle of the entry at an offset.
+	 */
+	byte[] readBytes(long offset) {
+		final ByteBuffer reader = chunks.get((int) (offset / chunkSize)).duplicate();
+		reader.position((int) (offset % chunkSize) + Byte.BYTES + Short.BYTES);
+		final int length = reader.getInt();
+		if (length == REFERENCE_LENGTH) {
+			return readBytes(reader.getLong());
+		}
+
+		final byte[] bytes = new byte[length];
+		reader.get(bytes);
+		return bytes;
+	}
+}
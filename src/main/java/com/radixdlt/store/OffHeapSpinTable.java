@@ -0,0 +1,179 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.radixdlt.constraintmachine.Spin;
+import java.nio.ByteBuffer;
+
+/**
+ * An open addressing hash table of particle spins and log offsets keyed by {@link ParticleKey},
+ * held in direct buffers outside the heap. The table is split into shards by key so that
+ * no single buffer exceeds the maximum buffer size.
+ * <p>
+ * Spins only ever move forward so entries are never removed. Not thread safe.
+ */
+final class OffHeapSpinTable {
+	private static final Spin[] SPINS = Spin.values();
+	private static final byte EMPTY = 0;
+	private static final int SPIN_OFFSET = ParticleKey.BYTES;
+	private static final int LOG_OFFSET_OFFSET = ParticleKey.BYTES + Long.BYTES;
+	private static final int SLOT_BYTES = LOG_OFFSET_OFFSET + Long.BYTES;
+	private static final int MIN_BITS = 4;
+	private static final int MAX_BITS = 25;
+	private static final double MAX_LOAD_FACTOR = 0.6;
+
+	private static final class Shard {
+		private int bits;
+		private ByteBuffer slots;
+		private int size;
+
+		private Shard(int bits) {
+			this.bits = bits;
+			this.slots = ByteBuffer.allocateDirect(SLOT_BYTES << bits);
+		}
+
+		private int find(ParticleKey key) {
+			final int mask = (1 << bits) - 1;
+			int slot = key.slot(bits);
+			while (slots.get(slot * SLOT_BYTES + SPIN_OFFSET) != EMPTY && !matches(slot, key)) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private boolean matches(int slot, ParticleKey key) {
+			final int offset = slot * SLOT_BYTES;
+			for (int i = 0; i < ParticleKey.LONGS; i++) {
+				if (slots.getLong(offset + i * Long.BYTES) != key.getLong(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void put(ParticleKey key, byte spin, long logOffset) {
+			int slot = find(key);
+			if (slots.get(slot * SLOT_BYTES + SPIN_OFFSET) == EMPTY) {
+				if (size + 1 > (1 << bits) * MAX_LOAD_FACTOR) {
+					resize();
+					slot = find(key);
+				}
+				final int offset = slot * SLOT_BYTES;
+				for (int i = 0; i < ParticleKey.LONGS; i++) {
+					slots.putLong(offset + i * Long.BYTES, key.getLong(i));
+				}
+				size++;
+			}
+			slots.put(slot * SLOT_BYTES + SPIN_OFFSET, spin);
+			slots.putLong(slot * SLOT_BYTES + LOG_OFFSET_OFFSET, logOffset);
+		}
+
+		private void resize() {
+			if (bits >= MAX_BITS) {
+				throw new IllegalStateException("Spin table shard is full, more shards are required");
+			}
+
+			final ByteBuffer oldSlots = this.slots;
+			final int oldSlotCount = 1 << bits;
+			this.bits++;
+			this.slots = ByteBuffer.allocateDirect(SLOT_BYTES << bits);
+			this.size = 0;
+			final long[] key = new long[ParticleKey.LONGS];
+			for (int slot = 0; slot < oldSlotCount; slot++) {
+				final int offset = slot * SLOT_BYTES;
+				final byte spin = oldSlots.get(offset + SPIN_OFFSET);
+				if (spin != EMPTY) {
+					for (int i = 0; i < ParticleKey.LONGS; i++) {
+						key[i] = oldSlots.getLong(offset + i * Long.BYTES);
+					}
+					put(ParticleKey.of(key, 0), spin, oldSlots.getLong(offset + LOG_OFFSET_OFFSET));
+				}
+			}
+		}
+	}
+
+	private final int shardBits;
+	private final Shard[] shards;
+
+	/**
+	 * @param shardBits the log2 number of shards, each of which may hold up to 2^25 slots
+	 */
+	OffHeapSpinTable(int shardBits) {
+		if (shardBits < 0 || shardBits > Integer.SIZE - 2) {
+			throw new IllegalArgumentException("Invalid shardBits " + shardBits);
+		}
+
+		this.shardBits = shardBits;
+		this.shards = new Shard[1 << shardBits];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new Shard(MIN_BITS);
+		}
+	}
+
+	private Shard shardOf(ParticleKey key) {
+		// Slots within a shard are selected by the first long so the shard is selected by another
+		return shardBits == 0 ? shards[0] : shards[(int) (key.getLong(1) >>> (Long.SIZE - shardBits))];
+	}
+
+	/**
+	 * Sets the spin of a particle.
+	 *
+	 * @param key the key of the particle
+	 * @param spin the spin of the particle, must not be {@link Spin#NEUTRAL}
+	 * @param logOffset the offset of the log entry which set the spin
+	 */
+	void put(ParticleKey key, Spin spin, long logOffset) {
+		if (spin == Spin.NEUTRAL) {
+			throw new IllegalArgumentException("Neutral spins are not stored");
+		}
+
+		shardOf(key).put(key, (byte) (spin.ordinal() + 1), logOffset);
+	}
+
+	/**
+	 * Retrieves the spin of a particle.
+	 *
+	 * @param key the key of the particle
+	 * @return the spin of the particle, {@link Spin#NEUTRAL} if it is not in the table
+	 */
+	Spin getSpin(ParticleKey key) {
+		final Shard shard = shardOf(key);
+		final byte spin = shard.slots.get(shard.find(key) * SLOT_BYTES + SPIN_OFFSET);
+		return spin == EMPTY ? Spin.NEUTRAL : SPINS[spin - 1];
+	}
+
+	/**
+	 * Retrieves the offset of the log entry which last set the spin of a particle.
+	 *
+	 * @param key the key of the particle
+	 * @return the log offset, or -1 if the particle is not in the table
+	 */
+	long getLogOffset(ParticleKey key) {
+		final Shard shard = shardOf(key);
+		final int offset = shard.find(key) * SLOT_BYTES;
+		return shard.slots.get(offset + SPIN_OFFSET) == EMPTY ? -1 : shard.slots.getLong(offset + LOG_OFFSET_OFFSET);
+	}
+
+	long size() {
+		long size = 0;
+		for (Shard shard : shards) {
+			size += shard.size;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.radixdlt.constraintmachine.Particle;
+
+/**
+ * Converts particles to and from bytes for stores which keep particles outside the heap.
+ */
+public interface ParticleCodec {
+	/**
+	 * Serializes a particle.
+	 *
+	 * @param particle the particle to serialize
+	 * @return the serialized particle
+	 */
+	byte[] encode(Particle particle);
+
+	/**
+	 * Deserializes a particle previously serialized with {@link #encode(Particle)}.
+	 *
+	 * @param bytes the serialized particle
+	 * @param particleClass the class of the particle
+	 * @param <P> the class of the particle
+	 * @return the deserialized particle
+	 */
+	<P extends Particle> P decode(byte[] bytes, Class<P> particleClass);
+}
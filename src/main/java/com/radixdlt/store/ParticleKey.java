@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.google.common.hash.HashCode;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.crypto.Hasher;
+import java.nio.ByteBuffer;
+
+/**
+ * A canonical fixed size key of a particle, the first {@value #BYTES} bytes of
+ * its hash, which is cheap to compare and retains nothing of the particle.
+ */
+public final class ParticleKey {
+	public static final int BYTES = 32;
+	public static final int LONGS = BYTES / Long.BYTES;
+
+	private final long l0;
+	private final long l1;
+	private final long l2;
+	private final long l3;
+
+	private ParticleKey(long l0, long l1, long l2, long l3) {
+		this.l0 = l0;
+		this.l1 = l1;
+		this.l2 = l2;
+		this.l3 = l3;
+	}
+
+	/**
+	 * Creates the key of a particle from the hash of the particle.
+	 *
+	 * @param hash the hash of the particle, of at least {@value #BYTES} bytes
+	 * @return the key
+	 */
+	public static ParticleKey of(HashCode hash) {
+		if (hash.bits() < BYTES * Byte.SIZE) {
+			throw new IllegalArgumentException("Hash must be at least " + BYTES + " bytes but was " + hash.bits() / Byte.SIZE);
+		}
+
+		return of(hash.asBytes(), 0);
+	}
+
+	/**
+	 * Computes the key of a particle.
+	 *
+	 * @param particle the particle
+	 * @param hasher the hasher to hash the particle with
+	 * @return the key
+	 */
+	public static ParticleKey of(Particle particle, Hasher hasher) {
+		return of(hasher.hash(particle));
+	}
+
+	/**
+	 * Reads a key previously written with {@link #toBytes(byte[], int)}.
+	 *
+	 * @param bytes the bytes to read from
+	 * @param offset the offset of the key
+	 * @return the key
+	 */
+	public static ParticleKey of(byte[] bytes, int offset) {
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, BYTES);
+		return new ParticleKey(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+	}
+
+	static ParticleKey of(long[] longs, int offset) {
+		return new ParticleKey(longs[offset], longs[offset + 1], longs[offset + 2], longs[offset + 3]);
+	}
+
+	/**
+	 * Retrieves one of the {@value #LONGS} longs making up this key.
+	 *
+	 * @param index the index of the long
+	 * @return the long
+	 */
+	public long getLong(int index) {
+		switch (index) {
+			case 0:
+				return l0;
+			case 1:
+				return l1;
+			case 2:
+				return l2;
+			case 3:
+				return l3;
+			default:
+				throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+	}
+
+	/**
+	 * Writes this key into a byte array.
+	 *
+	 * @param bytes the bytes to write into
+	 * @param offset the offset to write the key at
+	 */
+	public void toBytes(byte[] bytes, int offset) {
+		ByteBuffer.wrap(bytes, offset, BYTES).putLong(l0).putLong(l1).putLong(l2).putLong(l3);
+	}
+
+	/**
+	 * Spreads this key over a power of two sized table.
+	 *
+	 * @param bits the log2 size of the table
+	 * @return the slot of this key in the table
+	 */
+	public int slot(int bits) {
+		// Fibonacci hashing so keys derived from weak hashes still spread well
+		return (int) ((l0 * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - bits));
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(l0);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof ParticleKey)) {
+			return false;
+		}
+
+		ParticleKey other = (ParticleKey) o;
+		return this.l0 == other.l0 && this.l1 == other.l1 && this.l2 == other.l2 && this.l3 == other.l3;
+	}
+
+	@Override
+	public String toString() {
+		byte[] bytes = new byte[BYTES];
+		toBytes(bytes, 0);
+		return HashCode.fromBytes(bytes).toString();
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.radixdlt.constraintmachine.Spin;
+
+/**
+ * An open addressing hash table of particle spins keyed by {@link ParticleKey}, laid
+ * out in primitive arrays so an entry costs {@value ParticleKey#BYTES} bytes of key and
+ * a spin byte rather than a map entry, a key object and a particle object graph.
+ * <p>
+ * Spins only ever move forward so entries are never removed. Not thread safe.
+ */
+final class ParticleKeySpinTable {
+	private static final Spin[] SPINS = Spin.values();
+	private static final byte EMPTY = 0;
+	private static final int MIN_BITS = 4;
+	private static final double MAX_LOAD_FACTOR = 0.6;
+
+	private int bits;
+	private long[] keys;
+	private byte[] spins;
+	private int size;
+
+	ParticleKeySpinTable() {
+		this(1 << MIN_BITS);
+	}
+
+	ParticleKeySpinTable(int expectedSize) {
+		int initialBits = MIN_BITS;
+		while ((1 << initialBits) * MAX_LOAD_FACTOR < expectedSize) {
+			initialBits++;
+		}
+		allocate(initialBits);
+	}
+
+	private void allocate(int tableBits) {
+		this.bits = tableBits;
+		this.keys = new long[(1 << tableBits) * ParticleKey.LONGS];
+		this.spins = new byte[1 << tableBits];
+		this.size = 0;
+	}
+
+	private int find(ParticleKey key) {
+		final int mask = (1 << bits) - 1;
+		int slot = key.slot(bits);
+		while (spins[slot] != EMPTY && !matches(slot, key)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private boolean matches(int slot, ParticleKey key) {
+		final int offset = slot * ParticleKey.LONGS;
+		for (int i = 0; i < ParticleKey.LONGS; i++) {
+			if (keys[offset + i] != key.getLong(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the spin of a particle.
+	 *
+	 * @param key the key of the particle
+	 * @param spin the spin of the particle, must not be {@link Spin#NEUTRAL}
+	 */
+	void put(ParticleKey key, Spin spin) {
+		if (spin == Spin.NEUTRAL) {
+			throw new IllegalArgumentException("Neutral spins are not stored");
+		}
+
+		int slot = find(key);
+		if (spins[slot] == EMPTY) {
+			if (size + 1 > (1 << bits) * MAX_LOAD_FACTOR) {
+				resize();
+				slot = find(key);
+			}
+			final int offset = slot * ParticleKey.LONGS;
+			for (int i = 0; i < ParticleKey.LONGS; i++) {
+				keys[offset + i] = key.getLong(i);
+			}
+			size++;
+		}
+		spins[slot] = (byte) (spin.ordinal() + 1);
+	}
+
+	/**
+	 * Retrieves the spin of a particle.
+	 *
+	 * @param key the key of the particle
+	 * @return the spin of the particle, {@link Spin#NEUTRAL} if it is not in the table
+	 */
+	Spin get(ParticleKey key) {
+		final byte spin = spins[find(key)];
+		return spin == EMPTY ? Spin.NEUTRAL : SPINS[spin - 1];
+	}
+
+	int size() {
+		return size;
+	}
+
+	private void resize() {
+		final long[] oldKeys = this.keys;
+		final byte[] oldSpins = this.spins;
+		allocate(this.bits + 1);
+		for (int slot = 0; slot < oldSpins.length; slot++) {
+			if (oldSpins[slot] != EMPTY) {
+				put(ParticleKey.of(oldKeys, slot * ParticleKey.LONGS), SPINS[oldSpins[slot] - 1]);
+			}
+		}
+	}
+}
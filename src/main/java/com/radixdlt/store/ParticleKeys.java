@@ -0,0 +1,57 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.crypto.Hasher;
+import java.util.Objects;
+
+/**
+ * Computes the {@link ParticleKey}s of particles, remembering the key of each
+ * particle instance while it is in use so that a particle is hashed once as it
+ * passes through checks and stores.
+ */
+public final class ParticleKeys {
+	private final Hasher hasher;
+	// Weak keys are compared by identity so no deep particle comparison takes place
+	private final Cache<Particle, ParticleKey> keys;
+
+	/**
+	 * @param hasher the hasher to hash particles with
+	 * @param maxCachedKeys the maximum number of particle keys remembered
+	 */
+	public ParticleKeys(Hasher hasher, long maxCachedKeys) {
+		this.hasher = Objects.requireNonNull(hasher);
+		this.keys = CacheBuilder.newBuilder()
+			.weakKeys()
+			.maximumSize(maxCachedKeys)
+			.build();
+	}
+
+	/**
+	 * Retrieves the key of a particle.
+	 *
+	 * @param particle the particle
+	 * @return the key of the particle
+	 */
+	public ParticleKey keyOf(Particle particle) {
+		return keys.asMap().computeIfAbsent(particle, p -> ParticleKey.of(p, hasher));
+	}
+}
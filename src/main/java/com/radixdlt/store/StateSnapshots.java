@@ -0,0 +1,311 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.engine.RadixEngineAtom;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.zip.CRC32C;
+
+/**
+ * Export and import of the up and spent particles of a store and the values of state computers
+ * as a compact binary snapshot, allowing a node to bootstrap without replaying history.
+ * <p>
+ * A snapshot is a sequence of blocks, each of which is a length, a body and the CRC32C of
+ * the body. The first block holds the state version and state values, followed by blocks of
+ * up to 1024 particles, each with its spin, and an empty block marking the end. Spent particles
+ * are kept as tombstones so that they read as down rather than neutral once imported.
+ * <p>
+ * Each block is verified before it is stored, but blocks are stored as they are read, so an
+ * import which fails part way leaves the target store partially written. Import into a fresh
+ * store and discard it if the import fails.
+ */
+public final class StateSnapshots {
+	private static final int MAGIC = 0x52535348;
+	private static final int FORMAT_VERSION = 2;
+	private static final byte UP_ENTRY = 1;
+	private static final byte DOWN_ENTRY = 2;
+	private static final int PARTICLES_PER_BLOCK = 1024;
+	private static final int MAX_BLOCK_BYTES = 1 << 30;
+
+	private StateSnapshots() {
+		throw new IllegalStateException("Cannot instantiate.");
+	}
+
+	/**
+	 * The contents of a snapshot other than its particles.
+	 */
+	public static final class Imported {
+		private final long version;
+		private final ImmutableMap<String, byte[]> stateValues;
+		private final long particleCount;
+		private final long spentParticleCount;
+
+		private Imported(long version, ImmutableMap<String, byte[]> stateValues, long particleCount, long spentParticleCount) {
+			this.version = version;
+			this.stateValues = stateValues;
+			this.particleCount = particleCount;
+			this.spentParticleCount = spentParticleCount;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * Retrieves the serialized state values exported with the snapshot, by name.
+		 *
+		 * @return the state values
+		 */
+		public ImmutableMap<String, byte[]> getStateValues() {
+			return stateValues;
+		}
+
+		public long getParticleCount() {
+			return particleCount;
+		}
+
+		public long getSpentParticleCount() {
+			return spentParticleCount;
+		}
+	}
+
+	// Writes particle entries into blocks as the store is folded
+	private static final class ParticleBlockWriter {
+		private final DataOutputStream out;
+		private final ParticleCodec codec;
+		private final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream particleBytes = new ByteArrayOutputStream();
+		private final DataOutputStream particles = new DataOutputStream(particleBytes);
+		private int blockCount;
+		private long count;
+
+		private ParticleBlockWriter(DataOutputStream out, ParticleCodec codec) {
+			this.out = out;
+			this.codec = codec;
+		}
+
+		private ParticleBlockWriter write(Particle particle, byte entry) {
+			try {
+				final byte[] encoded = codec.encode(particle);
+				particles.writeByte(entry);
+				particles.writeUTF(particle.getClass().getName());
+				particles.writeInt(encoded.length);
+				particles.write(encoded);
+				count++;
+				if (++blockCount == PARTICLES_PER_BLOCK) {
+					writeParticleBlock();
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return this;
+		}
+
+		private long finish() throws IOException {
+			if (blockCount > 0) {
+				writeParticleBlock();
+			}
+			// An empty block marks the end of the snapshot
+			writeParticleBlock();
+			return count;
+		}
+
+		private void writeParticleBlock() throws IOException {
+			new DataOutputStream(blockBytes).writeInt(blockCount);
+			particleBytes.writeTo(blockBytes);
+			particleBytes.reset();
+			blockCount = 0;
+			writeBlock(out, blockBytes);
+		}
+	}
+
+	/**
+	 * Exports the particles currently up in a store, and the spent particles as tombstones.
+	 * Particles are written as the store is folded rather than collected first.
+	 *
+	 * @param store the store to export, which must not be written to during the export nor discard spent particles
+	 * @param version the state version of the store
+	 * @param stateValues serialized state computer values to include, by name
+	 * @param codec the codec to serialize particles with
+	 * @param output the stream to write the snapshot to
+	 * @return the number of particles exported, up or spent
+	 */
+	public static long export(
+		EngineStore<?> store,
+		long version,
+		Map<String, byte[]> stateValues,
+		ParticleCodec codec,
+		OutputStream output
+	) throws IOException {
+		if (store.discardsSpentParticles()) {
+			throw new IllegalArgumentException("Cannot export the tombstones of a store which discards spent particles");
+		}
+
+		final DataOutputStream out = new DataOutputStream(output);
+		final ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+		final DataOutputStream block = new DataOutputStream(blockBytes);
+		block.writeInt(MAGIC);
+		block.writeInt(FORMAT_VERSION);
+		block.writeLong(version);
+		block.writeInt(stateValues.size());
+		for (Map.Entry<String, byte[]> stateValue : stateValues.entrySet()) {
+			block.writeUTF(stateValue.getKey());
+			block.writeInt(stateValue.getValue().length);
+			block.write(stateValue.getValue());
+		}
+		writeBlock(out, blockBytes);
+
+		final ParticleBlockWriter writer;
+		try {
+			// A particle spent later in the fold is written once, as a tombstone when it is spent
+			writer = store.compute(
+				Particle.class,
+				new ParticleBlockWriter(out, codec),
+				(w, particle) -> store.getSpin(particle) == Spin.UP ? w.write(particle, UP_ENTRY) : w,
+				(w, particle) -> w.write(particle, DOWN_ENTRY)
+			);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		final long count = writer.finish();
+		out.flush();
+		return count;
+	}
+
+	private static void writeBlock(DataOutputStream out, ByteArrayOutputStream blockBytes) throws IOException {
+		final byte[] body = blockBytes.toByteArray();
+		blockBytes.reset();
+		final CRC32C crc = new CRC32C();
+		crc.update(body);
+		out.writeInt(body.length);
+		out.write(body);
+		out.writeInt((int) crc.getValue());
+	}
+
+	private static DataInputStream readBlock(DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0 || length > MAX_BLOCK_BYTES) {
+			throw new IOException("Invalid snapshot block length " + length);
+		}
+		final byte[] body = new byte[length];
+		in.readFully(body);
+		final CRC32C crc = new CRC32C();
+		crc.update(body);
+		if (in.readInt() != (int) crc.getValue()) {
+			throw new IOException("Snapshot block checksum mismatch");
+		}
+		return new DataInputStream(new ByteArrayInputStream(body));
+	}
+
+	/**
+	 * Imports a snapshot into a store, storing each block of particles without validation, spent
+	 * particles being pushed up and then down. The snapshot must only come from a trusted source.
+	 * If the import fails the store is left partially written and should be discarded.
+	 *
+	 * @param input the stream to read the snapshot from
+	 * @param codec the codec to deserialize particles with
+	 * @param store the store to import into, which should be empty
+	 * @param atomFactory creates the atom which stores a block of particles
+	 * @param <T> the type of engine atom
+	 * @return the state version and state values of the snapshot
+	 * @throws IOException if the snapshot cannot be read or is corrupt
+	 */
+	public static <T extends RadixEngineAtom> Imported importInto(
+		InputStream input,
+		ParticleCodec codec,
+		EngineStore<T> store,
+		Function<ImmutableList<CMMicroInstruction>, T> atomFactory
+	) throws IOException {
+		Objects.requireNonNull(store);
+		Objects.requireNonNull(atomFactory);
+
+		final DataInputStream in = new DataInputStream(input);
+		final DataInputStream header = readBlock(in);
+		if (header.readInt() != MAGIC) {
+			throw new IOException("Not a state snapshot");
+		}
+		final int formatVersion = header.readInt();
+		if (formatVersion != FORMAT_VERSION) {
+			throw new IOException("Unsupported snapshot format version " + formatVersion);
+		}
+		final long version = header.readLong();
+		final int stateValueCount = header.readInt();
+		final ImmutableMap.Builder<String, byte[]> stateValues = ImmutableMap.builder();
+		for (int i = 0; i < stateValueCount; i++) {
+			final String name = header.readUTF();
+			final byte[] value = new byte[header.readInt()];
+			header.readFully(value);
+			stateValues.put(name, value);
+		}
+
+		long particleCount = 0;
+		long spentParticleCount = 0;
+		while (true) {
+			final DataInputStream block = readBlock(in);
+			final int count = block.readInt();
+			if (count == 0) {
+				break;
+			}
+
+			final ImmutableList.Builder<CMMicroInstruction> instructions = ImmutableList.builder();
+			for (int i = 0; i < count; i++) {
+				final byte entry = block.readByte();
+				if (entry != UP_ENTRY && entry != DOWN_ENTRY) {
+					throw new IOException("Invalid snapshot particle entry " + entry);
+				}
+				final Class<? extends Particle> particleClass = particleClass(block.readUTF());
+				final byte[] encoded = new byte[block.readInt()];
+				block.readFully(encoded);
+				final Particle particle = codec.decode(encoded, particleClass);
+				instructions.add(CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL));
+				if (entry == DOWN_ENTRY) {
+					instructions.add(CMMicroInstruction.checkSpinAndPush(particle, Spin.UP));
+					spentParticleCount++;
+				} else {
+					particleCount++;
+				}
+			}
+			store.storeAtom(atomFactory.apply(instructions.build()));
+		}
+
+		return new Imported(version, stateValues.build(), particleCount, spentParticleCount);
+	}
+
+	private static Class<? extends Particle> particleClass(String name) throws IOException {
+		try {
+			return Class.forName(name).asSubclass(Particle.class);
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Unknown snapshot particle class " + name, e);
+		}
+	}
+}
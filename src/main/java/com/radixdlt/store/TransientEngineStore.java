@@ -5,6 +5,7 @@ import com.radixdlt.constraintmachine.Spin;
 import com.radixdlt.engine.RadixEngineAtom;
 import java.util.Objects;
 import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 
 public class TransientEngineStore<T extends RadixEngineAtom> implements EngineStore<T> {
 	private final EngineStore<T> base;
@@ -25,6 +26,24 @@ public class TransientEngineStore<T extends RadixEngineAtom> implements EngineSt
 		return transientStore.compute(aClass, baseResult, biFunction, biFunction1);
 	}
 
+	@Override
+	public <U extends Particle, V> V compute(
+		Class<U> aClass,
+		V identity,
+		BiFunction<V, U, V> outputReducer,
+		BiFunction<V, U, V> inputReducer,
+		BinaryOperator<V> combiner
+	) {
+		V baseResult = base.compute(aClass, identity, outputReducer, inputReducer, combiner);
+		// Transient particles are few so are simply folded on top of the base result
+		return transientStore.compute(aClass, baseResult, outputReducer, inputReducer);
+	}
+
+	@Override
+	public boolean discardsSpentParticles() {
+		return base.discardsSpentParticles();
+	}
+
 	@Override
 	public Spin getSpin(Particle particle) {
 		Spin transientSpin = transientStore.getSpin(particle);
@@ -0,0 +1,545 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.lsm;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.crypto.Hasher;
+import com.radixdlt.engine.RadixEngineAtom;
+import com.radixdlt.identifiers.EUID;
+import com.radixdlt.identifiers.RadixAddress;
+import com.radixdlt.store.EngineStore;
+import com.radixdlt.store.ParticleCodec;
+import com.radixdlt.store.ParticleKey;
+import com.radixdlt.store.ParticleKeys;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A log structured merge tree {@link EngineStore} on disk.
+ * <p>
+ * Particles are keyed by (destination EUID, particle class, particle key), once per destination,
+ * so the particles of an address are contiguous and can be scanned without a full scan. Writes go
+ * to an in memory table which, once large enough, is flushed in the background to an immutable
+ * sorted segment file with a sparse index and a Bloom filter. Segments of a similar size are merged
+ * by a background compaction once there are enough of them, so each entry is rewritten about
+ * log(n) times rather than on every compaction.
+ * <p>
+ * Keys are ordered rather than kept in history order, so {@link #compute(Class, Object, BiFunction, BiFunction)}
+ * folds over the particles in key order, each spent particle as its output immediately followed by its input.
+ * The primary entry of a spent particle therefore keeps the encoded particle, whereas its secondary entries are
+ * bare tombstones. The in memory table is not durable until flushed with {@link #flush()} or {@link #close()}.
+ *
+ * @param <T> the type of engine atom
+ */
+public final class LsmEngineStore<T extends RadixEngineAtom> implements EngineStore<T>, Closeable {
+	// EUIDs are 128 bits
+	private static final int DESTINATION_BYTES = 16;
+	private static final int CLASS_BYTES = Long.BYTES;
+	private static final int KEY_BYTES = DESTINATION_BYTES + CLASS_BYTES + ParticleKey.BYTES;
+	private static final byte PRIMARY = 1;
+	private static final byte SECONDARY = 0;
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".sst";
+	private static final long CACHED_PARTICLE_KEYS = 1 << 16;
+	private static final Spin[] SPINS = Spin.values();
+	// Older segments less than this many times the size of the newest are merged with it
+	private static final int TIER_RATIO = 2;
+
+	/**
+	 * Tuning of a {@link LsmEngineStore}.
+	 */
+	public static final class Config {
+		private final long memtableFlushBytes;
+		private final int compactionThreshold;
+		private final double bloomFpp;
+
+		/**
+		 * @param memtableFlushBytes the approximate size in bytes at which the in memory table is flushed
+		 * @param compactionThreshold the number of segments of a similar size at which they are merged
+		 * @param bloomFpp the false positive probability of the Bloom filter of each segment
+		 */
+		public Config(long memtableFlushBytes, int compactionThreshold, double bloomFpp) {
+			if (memtableFlushBytes <= 0 || compactionThreshold < 2 || bloomFpp <= 0.0 || bloomFpp >= 1.0) {
+				throw new IllegalArgumentException(
+					String.format("Invalid config memtableFlushBytes=%s compactionThreshold=%s bloomFpp=%s",
+						memtableFlushBytes, compactionThreshold, bloomFpp)
+				);
+			}
+
+			this.memtableFlushBytes = memtableFlushBytes;
+			this.compactionThreshold = compactionThreshold;
+			this.bloomFpp = bloomFpp;
+		}
+
+		public static Config defaults() {
+			return new Config(64L * 1024 * 1024, 8, 0.01);
+		}
+	}
+
+	private final Path directory;
+	private final ParticleKeys particleKeys;
+	private final ParticleCodec codec;
+	private final Config config;
+	private final Map<Class<?>, byte[]> classKeys = new ConcurrentHashMap<>();
+	private final Map<String, Class<? extends Particle>> particleClasses = new ConcurrentHashMap<>();
+	private final ExecutorService background = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "LsmEngineStore");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Object writeLock = new Object();
+	private volatile ConcurrentSkipListMap<byte[], byte[]> memtable = new ConcurrentSkipListMap<>(SSTable.KEY_ORDER);
+	private long memtableBytes;
+	// Newest first
+	private final Deque<ConcurrentSkipListMap<byte[], byte[]>> flushingMemtables = new ConcurrentLinkedDeque<>();
+
+	// Segments may only be accessed under the read lock as they are closed once compacted
+	private final ReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+	// Newest first
+	private List<SSTable> segments;
+	private final AtomicLong nextSegmentId = new AtomicLong();
+	private volatile Exception backgroundFailure;
+
+	/**
+	 * Opens a store in a directory, loading any segments previously written to it.
+	 *
+	 * @param directory the directory of the segment files
+	 * @param hasher the hasher to compute particle keys with
+	 * @param codec the codec to serialize particles with
+	 * @param config the tuning of the store
+	 */
+	public LsmEngineStore(Path directory, Hasher hasher, ParticleCodec codec, Config config) throws IOException {
+		this.directory = Objects.requireNonNull(directory);
+		this.particleKeys = new ParticleKeys(Objects.requireNonNull(hasher), CACHED_PARTICLE_KEYS);
+		this.codec = Objects.requireNonNull(codec);
+		this.config = Objects.requireNonNull(config);
+
+		Files.createDirectories(directory);
+		final List<Path> segmentPaths;
+		try (Stream<Path> files = Files.list(directory)) {
+			segmentPaths = files.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)).collect(Collectors.toList());
+		}
+
+		final List<SSTable> loaded = new ArrayList<>();
+		for (Path path : segmentPaths) {
+			final String name = path.getFileName().toString();
+			if (name.endsWith(SEGMENT_SUFFIX)) {
+				loaded.add(SSTable.open(path));
+				nextSegmentId.accumulateAndGet(segmentId(path) + 1, Math::max);
+			} else {
+				// Left over from an interrupted flush or compaction
+				Files.delete(path);
+			}
+		}
+		loaded.sort((s0, s1) -> Long.compare(segmentId(s1.getPath()), segmentId(s0.getPath())));
+		this.segments = ImmutableList.copyOf(loaded);
+	}
+
+	private static long segmentId(Path path) {
+		final String name = path.getFileName().toString();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	private Path nextSegmentPath() {
+		return directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, nextSegmentId.getAndIncrement(), SEGMENT_SUFFIX));
+	}
+
+	private void checkBackgroundFailure() {
+		final Exception failure = backgroundFailure;
+		if (failure != null) {
+			throw new IllegalStateException("Background flush or compaction failed", failure);
+		}
+	}
+
+	private byte[] classBytes(Class<?> particleClass) {
+		return classKeys.computeIfAbsent(
+			particleClass,
+			c -> Hashing.murmur3_128().hashString(c.getName(), StandardCharsets.UTF_8).asBytes()
+		);
+	}
+
+	private static byte[] key(byte[] destination, byte[] classBytes, ParticleKey particleKey) {
+		final byte[] key = new byte[KEY_BYTES];
+		System.arraycopy(destination, 0, key, 0, DESTINATION_BYTES);
+		System.arraycopy(classBytes, 0, key, DESTINATION_BYTES, CLASS_BYTES);
+		particleKey.toBytes(key, DESTINATION_BYTES + CLASS_BYTES);
+		return key;
+	}
+
+	// The destinations of a particle in key order, the first of which keys its primary entry
+	private static List<byte[]> destinations(Particle particle) {
+		final List<byte[]> destinations = particle.getDestinations().stream()
+			.map(EUID::toByteArray)
+			.sorted(SSTable.KEY_ORDER)
+			.collect(Collectors.toList());
+		if (destinations.isEmpty()) {
+			destinations.add(new byte[DESTINATION_BYTES]);
+		}
+		return destinations;
+	}
+
+	private static byte[] particleValue(Spin spin, byte primary, Particle particle, byte[] encoded) {
+		final byte[] className = particle.getClass().getName().getBytes(StandardCharsets.UTF_8);
+		return ByteBuffer.allocate(Byte.BYTES + Byte.BYTES + Short.BYTES + className.length + encoded.length)
+			.put((byte) spin.ordinal())
+			.put(primary)
+			.putShort((short) className.length)
+			.put(className)
+			.put(encoded)
+			.array();
+	}
+
+	// Secondary entries of a spent particle are only ever read for their spin
+	private static byte[] downValue() {
+		return new byte[] {(byte) Spin.DOWN.ordinal(), SECONDARY};
+	}
+
+	private static Spin spinOf(byte[] value) {
+		return SPINS[value[0]];
+	}
+
+	private static boolean isPrimary(byte[] value) {
+		return value[1] == PRIMARY;
+	}
+
+	private Particle decode(byte[] value) {
+		final ByteBuffer buffer = ByteBuffer.wrap(value, Byte.BYTES + Byte.BYTES, value.length - Byte.BYTES - Byte.BYTES);
+		final byte[] className = new byte[buffer.getShort()];
+		buffer.get(className);
+		final byte[] encoded = new byte[buffer.remaining()];
+		buffer.get(encoded);
+		final Class<? extends Particle> particleClass = particleClasses.computeIfAbsent(
+			new String(className, StandardCharsets.UTF_8),
+			name -> {
+				try {
+					return Class.forName(name).asSubclass(Particle.class);
+				} catch (ClassNotFoundException e) {
+					throw new IllegalStateException("Unknown stored particle class " + name, e);
+				}
+			}
+		);
+		return codec.decode(encoded, particleClass);
+	}
+
+	@Override
+	public void storeAtom(T atom) {
+		checkBackgroundFailure();
+		synchronized (writeLock) {
+			for (CMMicroInstruction microInstruction : atom.getCMInstruction().getMicroInstructions()) {
+				if (!microInstruction.isPush()) {
+					continue;
+				}
+
+				final Particle particle = microInstruction.getParticle();
+				final ParticleKey particleKey = particleKeys.keyOf(particle);
+				final byte[] classBytes = classBytes(particle.getClass());
+				final Spin spin = microInstruction.getNextSpin();
+				final byte[] encoded = codec.encode(particle);
+				final List<byte[]> destinations = destinations(particle);
+				for (int i = 0; i < destinations.size(); i++) {
+					final byte[] key = key(destinations.get(i), classBytes, particleKey);
+					final byte[] value;
+					if (i == 0) {
+						value = particleValue(spin, PRIMARY, particle, encoded);
+					} else {
+						value = spin == Spin.UP ? particleValue(spin, SECONDARY, particle, encoded) : downValue();
+					}
+					memtable.put(key, value);
+					memtableBytes += key.length + value.length;
+				}
+			}
+
+			if (memtableBytes >= config.memtableFlushBytes) {
+				rotateMemtable();
+			}
+		}
+	}
+
+	private Future<?> rotateMemtable() {
+		final ConcurrentSkipListMap<byte[], byte[]> full = memtable;
+		flushingMemtables.addFirst(full);
+		memtable = new ConcurrentSkipListMap<>(SSTable.KEY_ORDER);
+		memtableBytes = 0;
+		return background.submit(() -> {
+			try {
+				flushMemtable(full);
+				while (compact()) {
+					// Merging may complete a run of the next size
+				}
+			} catch (IOException | RuntimeException e) {
+				backgroundFailure = e;
+			}
+		});
+	}
+
+	private void flushMemtable(ConcurrentSkipListMap<byte[], byte[]> full) throws IOException {
+		if (!full.isEmpty()) {
+			final SSTable segment = SSTable.write(nextSegmentPath(), full.entrySet().iterator(), full.size(), config.bloomFpp);
+			segmentsLock.writeLock().lock();
+			try {
+				segments = ImmutableList.<SSTable>builder().add(segment).addAll(segments).build();
+			} finally {
+				segmentsLock.writeLock().unlock();
+			}
+		}
+		// Only removed once readable from the segment
+		flushingMemtables.remove(full);
+	}
+
+	// Only run on the background thread, so segments are only ever added in front of those being compacted.
+	// Merges the run of newest segments each less than TIER_RATIO times the size of the newest, if long enough.
+	// The merged segment takes the next id, so it still sorts newer than everything it did not merge.
+	private boolean compact() throws IOException {
+		final List<SSTable> current;
+		segmentsLock.readLock().lock();
+		try {
+			current = segments;
+		} finally {
+			segmentsLock.readLock().unlock();
+		}
+		if (current.isEmpty()) {
+			return false;
+		}
+
+		final long tierLimit = (long) TIER_RATIO * current.get(0).getEntryCount();
+		int runLength = 1;
+		while (runLength < current.size() && current.get(runLength).getEntryCount() < tierLimit) {
+			runLength++;
+		}
+		if (runLength < config.compactionThreshold) {
+			return false;
+		}
+		final List<SSTable> compacting = current.subList(0, runLength);
+
+		final List<Iterator<Map.Entry<byte[], byte[]>>> sources = new ArrayList<>();
+		int entryCount = 0;
+		for (SSTable segment : compacting) {
+			sources.add(segment.iterator(new byte[0]));
+			entryCount += segment.getEntryCount();
+		}
+		final SSTable compacted;
+		try {
+			compacted = SSTable.write(nextSegmentPath(), new MergingIterator(sources), entryCount, config.bloomFpp);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		segmentsLock.writeLock().lock();
+		try {
+			final int added = segments.size() - current.size();
+			segments = ImmutableList.<SSTable>builder()
+				.addAll(segments.subList(0, added))
+				.add(compacted)
+				.addAll(segments.subList(added + runLength, segments.size()))
+				.build();
+			// Left over segments of a crash before deletion are shadowed by the merged one
+			for (SSTable segment : compacting) {
+				segment.close();
+				Files.delete(segment.getPath());
+			}
+		} finally {
+			segmentsLock.writeLock().unlock();
+		}
+		return true;
+	}
+
+	/**
+	 * Flushes the in memory table to disk, returning once it is durable.
+	 */
+	public void flush() throws IOException {
+		final Future<?> flushed;
+		synchronized (writeLock) {
+			flushed = rotateMemtable();
+		}
+
+		try {
+			flushed.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while flushing", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Flush failed", e.getCause());
+		}
+		checkBackgroundFailure();
+	}
+
+	private byte[] get(byte[] key) throws IOException {
+		final byte[] current = memtable.get(key);
+		if (current != null) {
+			return current;
+		}
+
+		for (ConcurrentSkipListMap<byte[], byte[]> flushing : flushingMemtables) {
+			final byte[] value = flushing.get(key);
+			if (value != null) {
+				return value;
+			}
+		}
+
+		segmentsLock.readLock().lock();
+		try {
+			for (SSTable segment : segments) {
+				final byte[] value = segment.get(key);
+				if (value != null) {
+					return value;
+				}
+			}
+		} finally {
+			segmentsLock.readLock().unlock();
+		}
+		return null;
+	}
+
+	@Override
+	public Spin getSpin(Particle particle) {
+		checkBackgroundFailure();
+		final byte[] key = key(destinations(particle).get(0), classBytes(particle.getClass()), particleKeys.keyOf(particle));
+		try {
+			final byte[] value = get(key);
+			return value == null ? Spin.NEUTRAL : spinOf(value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Must be called under the segments read lock
+	private Iterator<Map.Entry<byte[], byte[]>> mergedFrom(byte[] fromKey) {
+		final List<Iterator<Map.Entry<byte[], byte[]>>> sources = new ArrayList<>();
+		sources.add(memtable.tailMap(fromKey).entrySet().iterator());
+		for (ConcurrentSkipListMap<byte[], byte[]> flushing : flushingMemtables) {
+			sources.add(flushing.tailMap(fromKey).entrySet().iterator());
+		}
+		for (SSTable segment : segments) {
+			sources.add(segment.iterator(fromKey));
+		}
+		return new MergingIterator(sources);
+	}
+
+	/**
+	 * Retrieves the particles currently up which have an address as a destination.
+	 *
+	 * @param address the address to scan
+	 * @return the up particles of the address in key order
+	 */
+	public ImmutableList<Particle> getUpParticles(RadixAddress address) {
+		checkBackgroundFailure();
+		final byte[] prefix = address.euid().toByteArray();
+		final ImmutableList.Builder<Particle> particles = ImmutableList.builder();
+		segmentsLock.readLock().lock();
+		try {
+			final Iterator<Map.Entry<byte[], byte[]>> entries = mergedFrom(prefix);
+			while (entries.hasNext()) {
+				final Map.Entry<byte[], byte[]> entry = entries.next();
+				if (!hasPrefix(entry.getKey(), prefix)) {
+					break;
+				}
+				if (spinOf(entry.getValue()) == Spin.UP) {
+					particles.add(decode(entry.getValue()));
+				}
+			}
+		} finally {
+			segmentsLock.readLock().unlock();
+		}
+		return particles.build();
+	}
+
+	private static boolean hasPrefix(byte[] key, byte[] prefix) {
+		for (int i = 0; i < prefix.length; i++) {
+			if (key[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public <U extends Particle, V> V compute(Class<U> particleClass, V initial, BiFunction<V, U, V> outputReducer, BiFunction<V, U, V> inputReducer) {
+		checkBackgroundFailure();
+		V v = initial;
+		segmentsLock.readLock().lock();
+		try {
+			final Iterator<Map.Entry<byte[], byte[]>> entries = mergedFrom(new byte[0]);
+			while (entries.hasNext()) {
+				final byte[] value = entries.next().getValue();
+				if (isPrimary(value) && spinOf(value) != Spin.NEUTRAL) {
+					final Particle particle = decode(value);
+					if (particleClass.isInstance(particle)) {
+						v = outputReducer.apply(v, particleClass.cast(particle));
+						// A spent particle is folded as its output and input together, as if replayed
+						if (spinOf(value) == Spin.DOWN) {
+							v = inputReducer.apply(v, particleClass.cast(particle));
+						}
+					}
+				}
+			}
+		} finally {
+			segmentsLock.readLock().unlock();
+		}
+		return v;
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		background.shutdown();
+		try {
+			background.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		segmentsLock.writeLock().lock();
+		try {
+			for (SSTable segment : segments) {
+				segment.close();
+			}
+		} finally {
+			segmentsLock.writeLock().unlock();
+		}
+	}
+}
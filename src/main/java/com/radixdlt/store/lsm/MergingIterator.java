@@ -0,0 +1,90 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.lsm;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges sorted iterators of entries into a single sorted iterator in which, of the
+ * entries with equal keys, only the one of the highest priority source is kept.
+ */
+final class MergingIterator implements Iterator<Map.Entry<byte[], byte[]>> {
+	private static final class Source {
+		private final int priority;
+		private final PeekingIterator<Map.Entry<byte[], byte[]>> entries;
+
+		private Source(int priority, Iterator<Map.Entry<byte[], byte[]>> entries) {
+			this.priority = priority;
+			this.entries = Iterators.peekingIterator(entries);
+		}
+	}
+
+	private final PriorityQueue<Source> sources = new PriorityQueue<>((s0, s1) -> {
+		final int compare = SSTable.KEY_ORDER.compare(s0.entries.peek().getKey(), s1.entries.peek().getKey());
+		return compare != 0 ? compare : Integer.compare(s0.priority, s1.priority);
+	});
+
+	/**
+	 * @param sources the sorted sources, highest priority first
+	 */
+	MergingIterator(List<Iterator<Map.Entry<byte[], byte[]>>> sources) {
+		for (int i = 0; i < sources.size(); i++) {
+			final Source source = new Source(i, sources.get(i));
+			if (source.entries.hasNext()) {
+				this.sources.add(source);
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !sources.isEmpty();
+	}
+
+	@Override
+	public Map.Entry<byte[], byte[]> next() {
+		final Source first = sources.poll();
+		if (first == null) {
+			throw new NoSuchElementException();
+		}
+
+		final Map.Entry<byte[], byte[]> entry = first.entries.next();
+		requeue(first);
+
+		// Drop the shadowed entries of lower priority sources
+		while (!sources.isEmpty() && SSTable.KEY_ORDER.compare(sources.peek().entries.peek().getKey(), entry.getKey()) == 0) {
+			final Source shadowed = sources.poll();
+			shadowed.entries.next();
+			requeue(shadowed);
+		}
+
+		return entry;
+	}
+
+	private void requeue(Source source) {
+		if (source.entries.hasNext()) {
+			sources.add(source);
+		}
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.lsm;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.primitives.UnsignedBytes;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable, sorted segment of key value entries on disk with a sparse index and a
+ * Bloom filter of its keys, both of which are held in memory once the segment is opened.
+ * <p>
+ * Layout: entries of {@code [int keyLength][key][int valueLength][value]} in key order,
+ * followed by the sparse index, the Bloom filter and a fixed size footer.
+ */
+final class SSTable implements Closeable {
+	static final Comparator<byte[]> KEY_ORDER = UnsignedBytes.lexicographicalComparator();
+
+	private static final int MAGIC = 0x52534C4D;
+	private static final int FOOTER_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+	private static final int INDEX_INTERVAL = 16;
+
+	private final Path path;
+	private final FileChannel channel;
+	private final List<byte[]> indexKeys;
+	private final long[] indexOffsets;
+	private final long entriesEnd;
+	private final int entryCount;
+	private final BloomFilter<byte[]> bloomFilter;
+
+	private SSTable(
+		Path path,
+		FileChannel channel,
+		List<byte[]> indexKeys,
+		long[] indexOffsets,
+		long entriesEnd,
+		int entryCount,
+		BloomFilter<byte[]> bloomFilter
+	) {
+		this.path = path;
+		this.channel = channel;
+		this.indexKeys = indexKeys;
+		this.indexOffsets = indexOffsets;
+		this.entriesEnd = entriesEnd;
+		this.entryCount = entryCount;
+		this.bloomFilter = bloomFilter;
+	}
+
+	/**
+	 * Writes sorted entries to a new segment file and opens it. The file is synced to disk
+	 * before it is atomically moved into place, and the move is synced with its directory,
+	 * so the segment is durable once returned.
+	 *
+	 * @param path the file to write, which must not exist
+	 * @param entries the entries in {@link #KEY_ORDER}
+	 * @param entryCount the number of entries
+	 * @param bloomFpp the false positive probability of the Bloom filter of the segment
+	 * @return the opened segment
+	 */
+	static SSTable write(Path path, Iterator<Map.Entry<byte[], byte[]>> entries, int entryCount, double bloomFpp) throws IOException {
+		final BloomFilter<byte[]> bloomFilter = BloomFilter.create(Funnels.byteArrayFunnel(), Math.max(entryCount, 1), bloomFpp);
+		final ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+		final DataOutputStream index = new DataOutputStream(indexBytes);
+		final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try (
+			FileChannel tmpChannel = FileChannel.open(
+				tmpPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE
+			);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(tmpChannel)))
+		) {
+			long offset = 0;
+			int written = 0;
+			while (entries.hasNext()) {
+				final Map.Entry<byte[], byte[]> entry = entries.next();
+				if (written % INDEX_INTERVAL == 0) {
+					index.writeInt(entry.getKey().length);
+					index.write(entry.getKey());
+					index.writeLong(offset);
+				}
+				out.writeInt(entry.getKey().length);
+				out.write(entry.getKey());
+				out.writeInt(entry.getValue().length);
+				out.write(entry.getValue());
+				offset += Integer.BYTES + entry.getKey().length + Integer.BYTES + entry.getValue().length;
+				bloomFilter.put(entry.getKey());
+				written++;
+			}
+			index.flush();
+			out.write(indexBytes.toByteArray());
+			final long bloomOffset = offset + indexBytes.size();
+			bloomFilter.writeTo(out);
+			out.writeLong(offset);
+			out.writeLong(bloomOffset);
+			out.writeInt(written);
+			out.writeInt(MAGIC);
+			out.flush();
+			tmpChannel.force(true);
+		}
+		Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(path.getParent());
+		return open(path);
+	}
+
+	// Makes renames within the directory durable, which file syncs alone do not
+	private static void syncDirectory(Path directory) throws IOException {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Opens an existing segment file.
+	 *
+	 * @param path the segment file
+	 * @return the opened segment
+	 */
+	static SSTable open(Path path) throws IOException {
+		final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			final long size = channel.size();
+			final ByteBuffer footer = read(channel, size - FOOTER_BYTES, FOOTER_BYTES);
+			final long entriesEnd = footer.getLong();
+			final long bloomOffset = footer.getLong();
+			final int entryCount = footer.getInt();
+			if (footer.getInt() != MAGIC) {
+				throw new IOException("Not a segment file: " + path);
+			}
+
+			final ByteBuffer indexBuffer = read(channel, entriesEnd, (int) (bloomOffset - entriesEnd));
+			final List<byte[]> indexKeys = new ArrayList<>();
+			final List<Long> offsets = new ArrayList<>();
+			while (indexBuffer.hasRemaining()) {
+				final byte[] key = new byte[indexBuffer.getInt()];
+				indexBuffer.get(key);
+				indexKeys.add(key);
+				offsets.add(indexBuffer.getLong());
+			}
+
+			final ByteBuffer bloomBuffer = read(channel, bloomOffset, (int) (size - FOOTER_BYTES - bloomOffset));
+			final BloomFilter<byte[]> bloomFilter = BloomFilter.readFrom(
+				new ByteArrayInputStream(bloomBuffer.array(), bloomBuffer.arrayOffset(), bloomBuffer.remaining()),
+				Funnels.byteArrayFunnel()
+			);
+
+			return new SSTable(
+				path,
+				channel,
+				indexKeys,
+				offsets.stream().mapToLong(Long::longValue).toArray(),
+				entriesEnd,
+				entryCount,
+				bloomFilter
+			);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of segment");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	Path getPath() {
+		return path;
+	}
+
+	int getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * Retrieves the value of a key.
+	 *
+	 * @param key the key to look up
+	 * @return the value, or null if the key is not in this segment
+	 */
+	byte[] get(byte[] key) throws IOException {
+		if (!bloomFilter.mightContain(key)) {
+			return null;
+		}
+
+		final int block = blockOf(key);
+		if (block < 0) {
+			return null;
+		}
+
+		final ByteBuffer entries = readBlock(block);
+		while (entries.hasRemaining()) {
+			final byte[] entryKey = new byte[entries.getInt()];
+			entries.get(entryKey);
+			final int valueLength = entries.getInt();
+			final int compare = KEY_ORDER.compare(entryKey, key);
+			if (compare == 0) {
+				final byte[] value = new byte[valueLength];
+				entries.get(value);
+				return value;
+			} else if (compare > 0) {
+				return null;
+			}
+			entries.position(entries.position() + valueLength);
+		}
+		return null;
+	}
+
+	/**
+	 * Iterates over the entries of this segment from a key onwards in key order,
+	 * reading a block at a time.
+	 *
+	 * @param fromKey the lowest key, inclusive
+	 * @return the iterator
+	 */
+	Iterator<Map.Entry<byte[], byte[]>> iterator(byte[] fromKey) {
+		return new Iterator<>() {
+			private int block = Math.max(blockOf(fromKey), 0);
+			private ByteBuffer entries;
+			private Map.Entry<byte[], byte[]> next = advance();
+
+			private Map.Entry<byte[], byte[]> advance() {
+				try {
+					while (true) {
+						if (entries == null || !entries.hasRemaining()) {
+							if (block >= indexOffsets.length) {
+								return null;
+							}
+							entries = readBlock(block++);
+						}
+						final byte[] key = new byte[entries.getInt()];
+						entries.get(key);
+						final byte[] value = new byte[entries.getInt()];
+						entries.get(value);
+						if (KEY_ORDER.compare(key, fromKey) >= 0) {
+							return new AbstractMap.SimpleImmutableEntry<>(key, value);
+						}
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Map.Entry<byte[], byte[]> next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				final Map.Entry<byte[], byte[]> current = next;
+				next = advance();
+				return current;
+			}
+		};
+	}
+
+	// Index of the last block whose first key is not after the key, -1 if the key precedes all blocks
+	private int blockOf(byte[] key) {
+		int low = 0;
+		int high = indexKeys.size() - 1;
+		int block = -1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (KEY_ORDER.compare(indexKeys.get(mid), key) <= 0) {
+				block = mid;
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return block;
+	}
+
+	private ByteBuffer readBlock(int block) throws IOException {
+		final long start = indexOffsets[block];
+		final long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : entriesEnd;
+		return read(channel, start, (int) (end - start));
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.atommodel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.radixdlt.atommodel.tokens.MutableSupplyTokenDefinitionParticle;
+import com.radixdlt.atommodel.tokens.MutableSupplyTokenDefinitionParticle.TokenTransition;
+import com.radixdlt.atommodel.tokens.TokenPermission;
+import com.radixdlt.atommodel.unique.UniqueParticle;
+import com.radixdlt.atomos.RRIParticle;
+import com.radixdlt.crypto.ECKeyPair;
+import com.radixdlt.identifiers.RRI;
+import com.radixdlt.identifiers.RadixAddress;
+import com.radixdlt.utils.UInt256;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RRIIndexTest {
+	private static final byte MAGIC = (byte) 0;
+	private RadixAddress address;
+	private RRIIndex index;
+
+	@Before
+	public void setup() {
+		this.address = new RadixAddress(MAGIC, ECKeyPair.generateNew().getPublicKey());
+		this.index = new RRIIndex();
+	}
+
+	@Test
+	public void when_rri_particle_is_spun_down__then_rri_is_claimed_by_its_address() {
+		RRI rri = RRI.of(this.address, "NAME");
+		this.index.down(new RRIParticle(rri));
+
+		assertThat(this.index.isClaimed(rri)).isTrue();
+		assertThat(this.index.getOwner(rri)).contains(this.address);
+		assertThat(this.index.isClaimed(RRI.of(this.address, "OTHER"))).isFalse();
+	}
+
+	@Test
+	public void when_token_definition_is_spun_up__then_it_is_the_token_definition_of_its_rri() {
+		RRI rri = RRI.of(this.address, "TOK");
+		MutableSupplyTokenDefinitionParticle tokenDefinition = new MutableSupplyTokenDefinitionParticle(
+			rri, "Token", "A token", UInt256.ONE, null, null,
+			ImmutableMap.of(TokenTransition.MINT, TokenPermission.ALL, TokenTransition.BURN, TokenPermission.ALL)
+		);
+		this.index.down(new RRIParticle(rri));
+		this.index.up(tokenDefinition);
+
+		assertThat(this.index.getDefinition(rri)).contains(tokenDefinition);
+		assertThat(this.index.getTokenDefinition(rri)).contains(tokenDefinition);
+	}
+
+	@Test
+	public void when_unique_particle_is_spun_up__then_it_is_not_a_token_definition() {
+		UniqueParticle unique = new UniqueParticle("UNIQUE", this.address, 0);
+		this.index.up(unique);
+
+		assertThat(this.index.getDefinition(unique.getRRI())).contains(unique);
+		assertThat(this.index.getTokenDefinition(unique.getRRI())).isEmpty();
+	}
+
+	@Test
+	public void when_definition_is_spun_down_in_branch__then_parent_is_unaffected() {
+		UniqueParticle unique = new UniqueParticle("UNIQUE", this.address, 0);
+		this.index.up(unique);
+
+		RRIIndex branch = this.index.branch();
+		branch.down(unique);
+
+		assertThat(branch.getDefinition(unique.getRRI())).isEmpty();
+		assertThat(this.index.getDefinition(unique.getRRI())).contains(unique);
+	}
+}
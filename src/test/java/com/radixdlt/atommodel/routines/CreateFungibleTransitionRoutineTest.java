@@ -237,4 +237,43 @@ public class CreateFungibleTransitionRoutineTest {
 			new UsedAmount(UInt256.ONE)
 		)).isEmpty();
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void when_validating_a_partially_used_input__then_used_amount_accumulates() {
+		TransitionProcedure<Fungible, UsedAmount, Fungible, VoidUsedData> procedure = new CreateFungibleTransitionRoutine<>(
+			Fungible.class, Fungible.class, Fungible::getAmount, Fungible::getAmount,
+			(a, b) -> Result.success(),
+			mock(WitnessValidatorFungible.class)
+		).getProcedure1();
+
+		assertThat(procedure.inputUsedCompute().compute(
+			new Fungible(UInt256.FIVE),
+			new UsedAmount(UInt256.TWO),
+			new Fungible(UInt256.TWO),
+			null
+		)).get().isEqualTo(new UsedAmount(UInt256.FOUR));
+
+		assertThat(procedure.outputUsedCompute().compute(
+			new Fungible(UInt256.FIVE),
+			new UsedAmount(UInt256.TWO),
+			new Fungible(UInt256.TWO),
+			null
+		)).isEmpty();
+	}
+
+	@Test
+	public void when_nothing_used_yet__then_used_amount_is_the_particle_amount_without_arithmetic() {
+		TransitionProcedure<Fungible, VoidUsedData, Fungible, VoidUsedData> procedure = new CreateFungibleTransitionRoutine<>(
+			Fungible.class, Fungible.class, Fungible::getAmount, Fungible::getAmount,
+			(a, b) -> Result.success(),
+			mock(WitnessValidatorFungible.class)
+		).getProcedure0();
+		Fungible small = new Fungible(UInt256.TWO);
+		Fungible large = new Fungible(UInt256.FIVE);
+
+		assertThat(procedure.inputUsedCompute().compute(large, null, small, null))
+			.hasValueSatisfying(used -> assertThat(((UsedAmount) used).getUsedAmount()).isSameAs(small.getAmount()));
+		assertThat(procedure.outputUsedCompute().compute(small, null, large, null))
+			.hasValueSatisfying(used -> assertThat(((UsedAmount) used).getUsedAmount()).isSameAs(small.getAmount()));
+	}
+}
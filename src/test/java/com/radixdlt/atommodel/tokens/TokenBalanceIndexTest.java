@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.atommodel.tokens;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.radixdlt.crypto.ECKeyPair;
+import com.radixdlt.identifiers.RRI;
+import com.radixdlt.identifiers.RadixAddress;
+import com.radixdlt.utils.UInt256;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TokenBalanceIndexTest {
+	private static final byte MAGIC = (byte) 0;
+	private RadixAddress address;
+	private RRI rri;
+	private TokenBalanceIndex index;
+
+	@Before
+	public void setup() {
+		this.address = new RadixAddress(MAGIC, ECKeyPair.generateNew().getPublicKey());
+		this.rri = RRI.of(this.address, "TEST");
+		this.index = new TokenBalanceIndex();
+	}
+
+	@Test
+	public void when_particles_are_spun_up__then_balance_is_their_sum() {
+		this.index.up(tokens(UInt256.TWO));
+		this.index.up(tokens(UInt256.THREE));
+
+		assertThat(this.index.getBalance(this.address, this.rri)).isEqualTo(UInt256.FIVE);
+		assertThat(this.index.getUtxoCount(this.address, this.rri)).isEqualTo(2);
+	}
+
+	@Test
+	public void when_a_particle_is_spun_down__then_it_is_no_longer_part_of_the_balance() {
+		TransferrableTokensParticle particle0 = tokens(UInt256.TWO);
+		TransferrableTokensParticle particle1 = tokens(UInt256.THREE);
+		this.index.up(particle0);
+		this.index.up(particle1);
+		this.index.down(particle0);
+
+		assertThat(this.index.getBalance(this.address, this.rri)).isEqualTo(UInt256.THREE);
+		assertThat(this.index.getUtxos(this.address, this.rri, 0, 10)).containsExactly(particle1);
+	}
+
+	@Test
+	public void when_paging_utxos__then_pages_are_in_creation_order() {
+		TransferrableTokensParticle particle0 = tokens(UInt256.ONE);
+		TransferrableTokensParticle particle1 = tokens(UInt256.TWO);
+		TransferrableTokensParticle particle2 = tokens(UInt256.THREE);
+		this.index.up(particle0);
+		this.index.up(particle1);
+		this.index.up(particle2);
+
+		assertThat(this.index.getUtxos(this.address, this.rri, 0, 2)).containsExactly(particle0, particle1);
+		assertThat(this.index.getUtxos(this.address, this.rri, 2, 2)).containsExactly(particle2);
+	}
+
+	@Test
+	public void when_branch_is_updated__then_parent_is_unaffected() {
+		TransferrableTokensParticle particle0 = tokens(UInt256.TWO);
+		this.index.up(particle0);
+
+		TokenBalanceIndex branch = this.index.branch();
+		branch.down(particle0);
+		branch.up(tokens(UInt256.ONE));
+
+		assertThat(branch.getBalance(this.address, this.rri)).isEqualTo(UInt256.ONE);
+		assertThat(this.index.getBalance(this.address, this.rri)).isEqualTo(UInt256.TWO);
+		assertThat(this.index.getUtxos(this.address, this.rri, 0, 10)).containsExactly(particle0);
+	}
+
+	@Test
+	public void when_nothing_is_held__then_balance_is_zero() {
+		assertThat(this.index.getBalance(this.address, this.rri)).isEqualTo(UInt256.ZERO);
+		assertThat(this.index.getUtxos(this.address, this.rri, 0, 10)).isEmpty();
+	}
+
+	private TransferrableTokensParticle tokens(UInt256 amount) {
+		return new TransferrableTokensParticle(this.address, amount, UInt256.ONE, this.rri, ImmutableMap.of());
+	}
+}
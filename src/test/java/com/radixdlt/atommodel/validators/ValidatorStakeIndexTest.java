@@ -0,0 +1,144 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.atommodel.validators;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.radixdlt.atommodel.system.SystemParticle;
+import com.radixdlt.atommodel.tokens.StakedTokensParticle;
+import com.radixdlt.crypto.ECKeyPair;
+import com.radixdlt.identifiers.RRI;
+import com.radixdlt.identifiers.RadixAddress;
+import com.radixdlt.utils.UInt256;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValidatorStakeIndexTest {
+	private static final byte MAGIC = (byte) 0;
+	private RadixAddress validator;
+	private RadixAddress delegator;
+	private RRI rri;
+	private ValidatorStakeIndex index;
+
+	@Before
+	public void setup() {
+		this.validator = new RadixAddress(MAGIC, ECKeyPair.generateNew().getPublicKey());
+		this.delegator = new RadixAddress(MAGIC, ECKeyPair.generateNew().getPublicKey());
+		this.rri = RRI.of(this.delegator, "TEST");
+		this.index = new ValidatorStakeIndex(2);
+	}
+
+	@Test
+	public void when_stake_is_delegated__then_stake_is_summed_per_validator() {
+		this.index.up(new RegisteredValidatorParticle(this.validator, ImmutableSet.of(), 0));
+		this.index.up(staked(UInt256.TWO));
+		this.index.up(staked(UInt256.THREE));
+
+		assertThat(this.index.getStake(this.validator)).isEqualTo(UInt256.FIVE);
+		assertThat(this.index.current().getStakes()).containsExactly(entry(this.validator, UInt256.FIVE));
+	}
+
+	@Test
+	public void when_all_stake_is_withdrawn__then_validator_has_zero_stake() {
+		StakedTokensParticle stake = staked(UInt256.TWO);
+		this.index.up(new RegisteredValidatorParticle(this.validator, ImmutableSet.of(), 0));
+		this.index.up(stake);
+		this.index.down(stake);
+
+		assertThat(this.index.getStake(this.validator)).isEqualTo(UInt256.ZERO);
+		assertThat(this.index.current().getStakes()).containsExactly(entry(this.validator, UInt256.ZERO));
+	}
+
+	@Test
+	public void when_validator_reregisters__then_it_remains_in_the_set() {
+		RegisteredValidatorParticle registration0 = new RegisteredValidatorParticle(this.validator, ImmutableSet.of(), 0);
+		RegisteredValidatorParticle registration1 = new RegisteredValidatorParticle(this.validator, ImmutableSet.of(), 1);
+		this.index.up(registration0);
+		this.index.up(registration1);
+		this.index.down(registration0);
+
+		assertThat(this.index.current().getStakes()).containsOnlyKeys(this.validator);
+	}
+
+	@Test
+	public void when_epoch_changes__then_snapshot_is_taken_and_old_snapshots_are_evicted() {
+		this.index.up(new RegisteredValidatorParticle(this.validator, ImmutableSet.of(), 0));
+		this.index.atomCommitted();
+		this.index.up(new SystemParticle(1, 0, 0));
+		this.index.atomCommitted();
+		this.index.up(staked(UInt256.TWO));
+		this.index.atomCommitted();
+		this.index.up(new SystemParticle(2, 0, 0));
+		this.index.atomCommitted();
+		this.index.up(new SystemParticle(3, 0, 0));
+		this.index.atomCommitted();
+
+		assertThat(this.index.atEpoch(1)).isEmpty();
+		assertThat(this.index.atEpoch(2)).hasValueSatisfying(s -> assertThat(s.getStakes()).containsEntry(this.validator, UInt256.TWO));
+		assertThat(this.index.atEpoch(3)).isPresent();
+	}
+
+	@Test
+	public void when_stake_changes_after_epoch_change_in_same_atom__then_snapshot_includes_them() {
+		this.index.up(new RegisteredValidatorParticle(this.validator, ImmutableSet.of(), 0));
+		this.index.atomCommitted();
+		this.index.up(new SystemParticle(1, 0, 0));
+		this.index.up(staked(UInt256.TWO));
+
+		assertThat(this.index.atEpoch(1)).isEmpty();
+		this.index.atomCommitted();
+		assertThat(this.index.atEpoch(1)).hasValueSatisfying(s -> assertThat(s.getStakes()).containsEntry(this.validator, UInt256.TWO));
+	}
+
+	@Test
+	public void when_epochs_pass_without_atom_boundaries__then_each_epoch_is_still_snapshot() {
+		this.index.up(new RegisteredValidatorParticle(this.validator, ImmutableSet.of(), 0));
+		this.index.up(new SystemParticle(1, 0, 0));
+		this.index.up(staked(UInt256.TWO));
+		this.index.up(new SystemParticle(2, 0, 0));
+
+		assertThat(this.index.atEpoch(1)).hasValueSatisfying(s -> assertThat(s.getStakes()).containsEntry(this.validator, UInt256.TWO));
+	}
+
+	@Test
+	public void when_unknown_stake_is_withdrawn__then_it_is_ignored() {
+		this.index.up(new RegisteredValidatorParticle(this.validator, ImmutableSet.of(), 0));
+		this.index.down(staked(UInt256.TWO));
+
+		assertThat(this.index.getStake(this.validator)).isEqualTo(UInt256.ZERO);
+	}
+
+	@Test
+	public void when_branch_is_updated__then_parent_is_unaffected() {
+		this.index.up(new RegisteredValidatorParticle(this.validator, ImmutableSet.of(), 0));
+		this.index.up(staked(UInt256.TWO));
+
+		ValidatorStakeIndex branch = this.index.branch();
+		branch.up(staked(UInt256.THREE));
+
+		assertThat(branch.getStake(this.validator)).isEqualTo(UInt256.FIVE);
+		assertThat(this.index.getStake(this.validator)).isEqualTo(UInt256.TWO);
+	}
+
+	private StakedTokensParticle staked(UInt256 amount) {
+		return new StakedTokensParticle(this.validator, this.delegator, amount, UInt256.ONE, this.rri, ImmutableMap.of());
+	}
+}
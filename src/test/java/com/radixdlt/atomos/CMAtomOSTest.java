@@ -20,9 +20,14 @@ package com.radixdlt.atomos;
 import com.google.common.reflect.TypeToken;
 import com.radixdlt.constraintmachine.TransitionProcedure;
 import com.radixdlt.constraintmachine.TransitionToken;
+import com.radixdlt.constraintmachine.UsedCompute;
+import com.radixdlt.constraintmachine.UsedData;
 import com.radixdlt.constraintmachine.VoidUsedData;
+import com.radixdlt.constraintmachine.WitnessValidator;
+import com.radixdlt.constraintmachine.WitnessValidator.WitnessValidatorResult;
 
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Function;
 
 import com.radixdlt.identifiers.RadixAddress;
@@ -33,6 +38,7 @@ import com.radixdlt.constraintmachine.Particle;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class CMAtomOSTest {
 	private static final class TestParticle extends Particle {
@@ -110,6 +116,63 @@ public class CMAtomOSTest {
 	}
 
 
+	@Test
+	public void when_transition_procedure_is_built__then_delegate_computes_and_validators_are_dispatched_to_directly() {
+		UsedCompute<TestParticle0, VoidUsedData, TestParticle0, VoidUsedData> inputCompute = (i, iu, o, ou) -> Optional.empty();
+		UsedCompute<TestParticle0, VoidUsedData, TestParticle0, VoidUsedData> outputCompute = (i, iu, o, ou) -> Optional.empty();
+		WitnessValidator<TestParticle0> outputValidator = (o, w) -> WitnessValidatorResult.success();
+		TransitionProcedure<TestParticle0, VoidUsedData, TestParticle0, VoidUsedData> procedure = mock(TransitionProcedureTestParticle00.class);
+		when(procedure.inputUsedCompute()).thenReturn(inputCompute);
+		when(procedure.outputUsedCompute()).thenReturn(outputCompute);
+		when(procedure.outputWitnessValidator()).thenReturn(outputValidator);
+		// Validators which are never used may throw, so must not be resolved on load
+		when(procedure.inputWitnessValidator()).thenThrow(new IllegalStateException("Should never call here"));
+
+		TransitionProcedure<Particle, UsedData, Particle, UsedData> built = buildTestParticle0Procedure(procedure);
+
+		assertThat((Object) built.inputUsedCompute()).isSameAs(inputCompute);
+		assertThat((Object) built.outputUsedCompute()).isSameAs(outputCompute);
+		assertThat((Object) built.outputWitnessValidator()).isSameAs(outputValidator);
+		assertThat((Object) built.outputWitnessValidator()).isSameAs(built.outputWitnessValidator());
+		assertThatThrownBy(built::inputWitnessValidator).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	public void when_built_transition_procedure_is_executed__then_results_are_those_of_delegate() {
+		TestParticle0 input = mock(TestParticle0.class);
+		TestParticle0 output = mock(TestParticle0.class);
+		UsedData used = mock(UsedData.class);
+		TransitionProcedure<TestParticle0, VoidUsedData, TestParticle0, VoidUsedData> procedure = mock(TransitionProcedureTestParticle00.class);
+		when(procedure.precondition(input, null, output, null)).thenReturn(Result.error("precondition"));
+		when(procedure.inputUsedCompute()).thenReturn((i, iu, o, ou) -> i == input && o == output ? Optional.of(used) : Optional.empty());
+		when(procedure.outputUsedCompute()).thenReturn((i, iu, o, ou) -> Optional.empty());
+
+		TransitionProcedure<Particle, UsedData, Particle, UsedData> built = buildTestParticle0Procedure(procedure);
+
+		assertThat(built.precondition(input, null, output, null).getErrorMessage()).isEqualTo("precondition");
+		assertThat(built.inputUsedCompute().compute(input, null, output, null)).contains(used);
+		assertThat(built.outputUsedCompute().compute(input, null, output, null)).isEmpty();
+	}
+
+	private static TransitionProcedure<Particle, UsedData, Particle, UsedData> buildTestParticle0Procedure(
+		TransitionProcedure<TestParticle0, VoidUsedData, TestParticle0, VoidUsedData> procedure
+	) {
+		CMAtomOS os = new CMAtomOS();
+		TransitionToken<TestParticle0, VoidUsedData, TestParticle0, VoidUsedData> token = new TransitionToken<>(
+			TestParticle0.class,
+			TypeToken.of(VoidUsedData.class),
+			TestParticle0.class,
+			TypeToken.of(VoidUsedData.class)
+		);
+		os.load(syscalls -> {
+			syscalls.registerParticle(TestParticle0.class, ParticleDefinition.<TestParticle0>builder()
+				.singleAddressMapper(x -> mock(RadixAddress.class))
+				.build());
+			syscalls.createTransition(token, procedure);
+		});
+		return os.buildTransitionProcedures().apply(token);
+	}
+
 	@Test
 	public void when_a_particle_which_is_not_registered_via_os_is_validated__it_should_cause_errors() {
 		CMAtomOS os = new CMAtomOS();
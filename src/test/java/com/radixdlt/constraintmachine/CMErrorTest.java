@@ -12,13 +12,15 @@ public class CMErrorTest {
 		ConstraintMachine.CMValidationState state0 = new ConstraintMachine.CMValidationState(
 			PermissionLevel.USER,
 			HashUtils.zero256(),
-			ImmutableMap.of()
+			ImmutableMap.of(),
+			new ExecutionMeter(ExecutionCostModel.DEFAULT, Long.MAX_VALUE)
 		);
 
 		ConstraintMachine.CMValidationState state1 = new ConstraintMachine.CMValidationState(
 			PermissionLevel.USER,
 			HashUtils.random256(),
-			ImmutableMap.of()
+			ImmutableMap.of(),
+			new ExecutionMeter(ExecutionCostModel.DEFAULT, Long.MAX_VALUE)
 		);
 
 		EqualsVerifier.forClass(CMError.class)
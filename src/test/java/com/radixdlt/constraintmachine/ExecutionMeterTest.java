@@ -0,0 +1,111 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.constraintmachine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.radixdlt.atomos.Result;
+import com.radixdlt.crypto.ECKeyPair;
+import com.radixdlt.crypto.HashUtils;
+import java.util.Optional;
+import org.junit.Test;
+
+public class ExecutionMeterTest {
+	@Test
+	public void when_charged_beyond_budget__then_meter_is_exceeded() {
+		ExecutionMeter meter = new ExecutionMeter(new ExecutionCostModel(1, 2, 10), 12);
+
+		assertThat(meter.chargeTransitionStep()).isTrue();
+		assertThat(meter.chargeSignatureVerification()).isTrue();
+		assertThat(meter.isExceeded()).isFalse();
+		assertThat(meter.chargeMicroInstruction()).isFalse();
+		assertThat(meter.isExceeded()).isTrue();
+		assertThat(meter.getCost()).isEqualTo(13);
+	}
+
+	@Test
+	public void when_validating_beyond_budget__then_validation_is_aborted() {
+		ConstraintMachine cm = new ConstraintMachine.Builder()
+			.setParticleStaticCheck(p -> Result.success())
+			.setParticleTransitionProcedures(t -> null)
+			.setExecutionCostModel(new ExecutionCostModel(1, 0, 0))
+			.setExecutionBudget(PermissionLevel.USER, 1)
+			.build();
+		CMInstruction instruction = new CMInstruction(
+			ImmutableList.of(
+				CMMicroInstruction.checkSpinAndPush(mock(Particle.class), Spin.NEUTRAL),
+				CMMicroInstruction.particleGroup()
+			),
+			ImmutableMap.of()
+		);
+
+		Optional<CMError> error = cm.validate(instruction, HashUtils.zero256(), PermissionLevel.USER);
+
+		assertThat(error).hasValueSatisfying(e -> {
+			assertThat(e.getErrorCode()).isEqualTo(CMErrorCode.EXECUTION_BUDGET_EXCEEDED);
+			assertThat(e.getDataPointer()).isEqualTo(DataPointer.ofParticle(0, 1));
+		});
+	}
+
+	@Test
+	public void when_validating__then_consumed_cost_is_reported_by_meter() {
+		ConstraintMachine cm = new ConstraintMachine.Builder()
+			.setParticleStaticCheck(p -> Result.success())
+			.setParticleTransitionProcedures(t -> null)
+			.setExecutionCostModel(new ExecutionCostModel(3, 0, 0))
+			.setExecutionBudget(PermissionLevel.USER, 1)
+			.build();
+		CMInstruction instruction = new CMInstruction(
+			ImmutableList.of(CMMicroInstruction.checkSpinAndPush(mock(Particle.class), Spin.NEUTRAL)),
+			ImmutableMap.of()
+		);
+		ExecutionMeter meter = cm.newExecutionMeter(PermissionLevel.SUPER_USER);
+
+		cm.validate(instruction, HashUtils.zero256(), PermissionLevel.SUPER_USER, meter);
+
+		assertThat(meter.getBudget()).isEqualTo(Long.MAX_VALUE);
+		assertThat(meter.getCost()).isEqualTo(3);
+	}
+
+	@Test
+	public void when_signature_check_runs_over_budget__then_it_is_not_cached_and_validation_does_not_succeed() {
+		ConstraintMachine cm = new ConstraintMachine.Builder()
+			.setParticleStaticCheck(p -> Result.success())
+			.setParticleTransitionProcedures(t -> null)
+			.build();
+		ECKeyPair keyPair = ECKeyPair.generateNew();
+		ExecutionMeter meter = new ExecutionMeter(new ExecutionCostModel(0, 0, 1), 0);
+		ConstraintMachine.CMValidationState validationState = new ConstraintMachine.CMValidationState(
+			PermissionLevel.USER,
+			HashUtils.zero256(),
+			ImmutableMap.of(keyPair.euid(), keyPair.sign(HashUtils.zero256())),
+			meter
+		);
+
+		// As read by a witness validator which accepts the unsigned path
+		assertThat(validationState.isSignedBy(keyPair.getPublicKey())).isFalse();
+		assertThat(validationState.isSignedBy(keyPair.getPublicKey())).isFalse();
+		assertThat(meter.getCost()).isEqualTo(2);
+
+		Optional<CMError> error = cm.validateMicroInstructions(validationState, ImmutableList.of());
+		assertThat(error).hasValueSatisfying(e -> assertThat(e.getErrorCode()).isEqualTo(CMErrorCode.EXECUTION_BUDGET_EXCEEDED));
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.constraintmachine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.reflect.TypeToken;
+import com.radixdlt.constraintmachine.TransitionProfiler.Phase;
+import com.radixdlt.constraintmachine.TransitionProfiler.TransitionProfile;
+import org.junit.Test;
+
+public class TransitionProfilerTest {
+	private static final TransitionToken TOKEN = new TransitionToken<>(
+		VoidParticle.class,
+		TypeToken.of(VoidUsedData.class),
+		VoidParticle.class,
+		TypeToken.of(VoidUsedData.class)
+	);
+
+	@Test
+	public void when_invoked__then_every_nth_invocation_is_timed() {
+		TransitionProfiler profiler = new TransitionProfiler(4);
+		TransitionProfiler.Stats stats = profiler.stats(TOKEN);
+
+		int timed = 0;
+		for (int i = 0; i < 10; i++) {
+			if (profiler.invoked(stats)) {
+				timed++;
+			}
+		}
+
+		assertThat(timed).isEqualTo(3);
+		assertThat(profiler.snapshot().get(TOKEN).getInvocations()).isEqualTo(10);
+	}
+
+	@Test
+	public void when_phases_recorded__then_cumulative_time_is_estimated_over_all_invocations() {
+		TransitionProfiler profiler = new TransitionProfiler(2);
+		TransitionProfiler.Stats stats = profiler.stats(TOKEN);
+		for (int i = 0; i < 4; i++) {
+			if (profiler.invoked(stats)) {
+				profiler.record(stats, Phase.PRECONDITION, 100);
+			}
+		}
+
+		TransitionProfile profile = profiler.snapshot().get(TOKEN);
+		assertThat(profile.getSampledCount(Phase.PRECONDITION)).isEqualTo(2);
+		assertThat(profile.getSampledNanos(Phase.PRECONDITION)).isEqualTo(200);
+		assertThat(profile.getEstimatedNanos(Phase.PRECONDITION)).isEqualTo(400);
+		assertThat(profile.getEstimatedNanos(Phase.WITNESS_VALIDATION)).isZero();
+
+		profiler.reset();
+		assertThat(profiler.snapshot()).isEmpty();
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.ImmutableList;
+import com.radixdlt.engine.CommitListener.OverflowPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommitListenerDispatcherTest {
+	private static final class RecordingListener implements CommitListener<RadixEngineAtom> {
+		private final List<List<CommittedAtom<RadixEngineAtom>>> batches = new ArrayList<>();
+		private final List<List<CommittedAtom<RadixEngineAtom>>> failedBatches = new ArrayList<>();
+		private long dropped;
+		private boolean failNext;
+
+		@Override
+		public void onCommitted(List<CommittedAtom<RadixEngineAtom>> committedAtoms) {
+			if (failNext) {
+				failNext = false;
+				throw new IllegalStateException("Listener failed");
+			}
+			batches.add(committedAtoms);
+		}
+
+		@Override
+		public void onFailed(List<CommittedAtom<RadixEngineAtom>> committedAtoms, RuntimeException failure) {
+			failedBatches.add(committedAtoms);
+		}
+
+		@Override
+		public void onDropped(long count) {
+			dropped += count;
+		}
+	}
+
+	private List<Runnable> tasks;
+	private Executor executor;
+	private RecordingListener listener;
+
+	@Before
+	public void setup() {
+		this.tasks = new ArrayList<>();
+		this.executor = tasks::add;
+		this.listener = new RecordingListener();
+	}
+
+	private static CommittedAtom<RadixEngineAtom> committed(long version) {
+		return new CommittedAtom<>(mock(RadixEngineAtom.class), ImmutableList.of(), ImmutableList.of(), version);
+	}
+
+	private void runTasks() {
+		while (!tasks.isEmpty()) {
+			tasks.remove(0).run();
+		}
+	}
+
+	@Test
+	public void when_atoms_dispatched_before_delivery__then_they_are_delivered_in_one_batch_in_order() {
+		CommitListenerDispatcher<RadixEngineAtom> dispatcher = new CommitListenerDispatcher<>(listener, executor, 10, OverflowPolicy.DROP);
+		for (int i = 1; i <= 3; i++) {
+			dispatcher.dispatch(committed(i));
+		}
+
+		assertThat(tasks).hasSize(1);
+		runTasks();
+
+		assertThat(listener.batches).hasSize(1);
+		assertThat(listener.batches.get(0)).extracting(CommittedAtom::getVersion).containsExactly(1L, 2L, 3L);
+	}
+
+	@Test
+	public void when_buffer_full_with_drop_policy__then_atoms_are_dropped_and_reported() {
+		CommitListenerDispatcher<RadixEngineAtom> dispatcher = new CommitListenerDispatcher<>(listener, executor, 2, OverflowPolicy.DROP);
+		for (int i = 1; i <= 5; i++) {
+			dispatcher.dispatch(committed(i));
+		}
+		runTasks();
+
+		assertThat(listener.dropped).isEqualTo(3);
+		assertThat(listener.batches).hasSize(1);
+		assertThat(listener.batches.get(0)).extracting(CommittedAtom::getVersion).containsExactly(1L, 2L);
+	}
+
+	@Test
+	public void when_listener_fails_on_batch__then_failure_is_reported_and_later_batches_are_delivered() {
+		CommitListenerDispatcher<RadixEngineAtom> dispatcher = new CommitListenerDispatcher<>(listener, executor, 10, OverflowPolicy.DROP);
+		listener.failNext = true;
+		dispatcher.dispatch(committed(1));
+		runTasks();
+		dispatcher.dispatch(committed(2));
+		runTasks();
+
+		assertThat(listener.failedBatches).hasSize(1);
+		assertThat(listener.failedBatches.get(0)).extracting(CommittedAtom::getVersion).containsExactly(1L);
+		assertThat(listener.batches).hasSize(1);
+		assertThat(listener.batches.get(0)).extracting(CommittedAtom::getVersion).containsExactly(2L);
+	}
+
+	@Test
+	public void when_executor_rejects_delivery__then_buffered_atoms_are_dropped_and_delivery_is_rescheduled_later() {
+		List<Boolean> accepting = new ArrayList<>(List.of(false));
+		Executor rejecting = task -> {
+			if (!accepting.get(0)) {
+				throw new RejectedExecutionException();
+			}
+			tasks.add(task);
+		};
+		CommitListenerDispatcher<RadixEngineAtom> dispatcher = new CommitListenerDispatcher<>(listener, rejecting, 10, OverflowPolicy.BLOCK);
+		dispatcher.dispatch(committed(1));
+
+		accepting.set(0, true);
+		dispatcher.dispatch(committed(2));
+		runTasks();
+
+		assertThat(listener.dropped).isEqualTo(1);
+		assertThat(listener.batches).hasSize(1);
+		assertThat(listener.batches.get(0)).extracting(CommittedAtom::getVersion).containsExactly(2L);
+	}
+}
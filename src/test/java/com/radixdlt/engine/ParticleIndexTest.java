@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.ImmutableSet;
+import com.radixdlt.constraintmachine.Particle;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParticleIndexTest {
+	private Map<Particle, Set<Integer>> keys;
+	private ParticleIndex<Integer, Particle> index;
+
+	@Before
+	public void setup() {
+		this.keys = new HashMap<>();
+		this.index = ParticleIndex.create(keys::get, Comparator.naturalOrder());
+	}
+
+	@Test
+	public void when_particle_is_spun_up__then_it_can_be_looked_up_by_each_key() {
+		Particle particle = particle(1, 2);
+		this.index.up(particle);
+
+		assertThat(this.index.get(1)).containsExactly(particle);
+		assertThat(this.index.get(2)).containsExactly(particle);
+		assertThat(this.index.contains(3)).isFalse();
+	}
+
+	@Test
+	public void when_particle_is_spun_down__then_it_is_no_longer_indexed() {
+		Particle particle = particle(1);
+		this.index.up(particle);
+		this.index.down(particle);
+
+		assertThat(this.index.get(1)).isEmpty();
+		assertThat(this.index.contains(1)).isFalse();
+	}
+
+	@Test
+	public void when_querying_a_range__then_particles_are_ordered_by_key_and_distinct() {
+		Particle particle0 = particle(3);
+		Particle particle1 = particle(1, 2);
+		Particle particle2 = particle(5);
+		this.index.up(particle0);
+		this.index.up(particle1);
+		this.index.up(particle2);
+
+		assertThat(this.index.range(1, 5)).containsExactly(particle1, particle0);
+	}
+
+	@Test
+	public void when_index_is_updated_after_snapshot__then_snapshot_is_unaffected() {
+		Particle particle0 = particle(1);
+		Particle particle1 = particle(2);
+		this.index.up(particle0);
+
+		ParticleIndex<Integer, Particle> snapshot = this.index.snapshot();
+		assertThat(this.index.snapshot()).isSameAs(snapshot);
+		this.index.down(particle0);
+		this.index.up(particle1);
+
+		assertThat(snapshot.range(0, 10)).containsExactly(particle0);
+		assertThat(this.index.snapshot().range(0, 10)).containsExactly(particle1);
+		assertThatThrownBy(() -> snapshot.up(particle1)).isInstanceOf(UnsupportedOperationException.class);
+	}
+
+	@Test
+	public void when_branch_is_snapshot__then_snapshot_merges_branch_and_parent() {
+		Particle particle0 = particle(1);
+		Particle particle1 = particle(2);
+		this.index.up(particle0);
+		ParticleIndex<Integer, Particle> branch = this.index.branch();
+		branch.down(particle0);
+		branch.up(particle1);
+
+		assertThat(branch.snapshot().range(0, 10)).containsExactly(particle1);
+		assertThat(branch.snapshot().contains(1)).isFalse();
+	}
+
+	@Test
+	public void when_branch_is_updated__then_branch_overlays_parent_and_parent_is_unaffected() {
+		Particle particle0 = particle(1);
+		Particle particle1 = particle(2);
+		this.index.up(particle0);
+		this.index.up(particle1);
+
+		ParticleIndex<Integer, Particle> branch = this.index.branch();
+		Particle particle2 = particle(3);
+		branch.down(particle0);
+		branch.up(particle2);
+
+		assertThat(branch.range(0, 10)).containsExactly(particle1, particle2);
+		assertThat(this.index.range(0, 10)).containsExactly(particle0, particle1);
+	}
+
+	private Particle particle(Integer... particleKeys) {
+		Particle particle = mock(Particle.class);
+		this.keys.put(particle, ImmutableSet.copyOf(particleKeys));
+		return particle;
+	}
+}
@@ -19,6 +19,8 @@ package com.radixdlt.engine;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
 import com.radixdlt.atommodel.system.SystemConstraintScrypt;
 import com.radixdlt.atomos.CMAtomOS;
 import com.radixdlt.atomos.Result;
@@ -27,28 +29,54 @@ import com.radixdlt.constraintmachine.CMInstruction;
 import com.radixdlt.constraintmachine.CMMicroInstruction;
 import com.radixdlt.constraintmachine.ConstraintMachine;
 import com.radixdlt.constraintmachine.DataPointer;
+import com.radixdlt.constraintmachine.ExecutionCostModel;
+import com.radixdlt.constraintmachine.ExecutionMeter;
 import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.PermissionLevel;
 import com.radixdlt.constraintmachine.Spin;
 import com.radixdlt.crypto.HashUtils;
+import com.radixdlt.crypto.Hasher;
+import com.radixdlt.engine.journal.CommitJournal;
+import com.radixdlt.metrics.RecordingEngineMetrics;
 import com.radixdlt.serialization.SerializerId2;
 import com.radixdlt.store.CMStore;
 import com.radixdlt.store.CMStores;
 import com.radixdlt.store.EngineStore;
 import com.radixdlt.store.InMemoryEngineStore;
+import com.radixdlt.store.MultiVersionEngineStore;
 import com.radixdlt.test.utils.TypedMocks;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class RadixEngineTest {
@@ -75,14 +103,25 @@ public class RadixEngineTest {
 		}
 	}
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	private ConstraintMachine constraintMachine;
 	private EngineStore<RadixEngineAtom> engineStore;
 	private UnaryOperator<CMStore> virtualStore;
 	private RadixEngine<RadixEngineAtom> radixEngine;
+	private Hasher hasher;
 
 	@Before
 	public void setup() {
+		this.hasher = mock(Hasher.class);
+		when(hasher.hash(any())).thenAnswer(invocation -> {
+			byte[] hash = new byte[32];
+			new Random(invocation.getArgument(0).hashCode()).nextBytes(hash);
+			return HashCode.fromBytes(hash);
+		});
 		this.constraintMachine = mock(ConstraintMachine.class);
+		when(constraintMachine.newExecutionMeter(any())).thenAnswer(i -> new ExecutionMeter(ExecutionCostModel.DEFAULT, Long.MAX_VALUE));
 		this.engineStore = TypedMocks.rmock(EngineStore.class);
 		this.virtualStore = TypedMocks.rmock(UnaryOperator.class);
 		this.radixEngine = new RadixEngine<>(
@@ -161,23 +200,115 @@ public class RadixEngineTest {
 		));
 		when(engineStore.getSpin(eq(particle))).thenReturn(Spin.NEUTRAL);
 		when(radixEngineAtom.getCMInstruction()).thenReturn(cmInstruction);
-		when(constraintMachine.validate(any(), any(), any())).thenReturn(Optional.empty());
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
 		radixEngine.checkAndStore(radixEngineAtom);
 
 		assertThat(radixEngine.getComputedState(Object.class)).isEqualTo(state2);
 	}
 
+	@Test
+	public void when_batch_of_state_computers_initialized__then_store_is_scanned_once() {
+		when(engineStore.compute(any(), any(), any(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+		radixEngine.batch()
+			.addStateComputer(Particle.class, Integer.class, 1, (i, p) -> i, (i, p) -> i)
+			.addStateComputer(IndexedParticle.class, Long.class, 2L, (l, p) -> l, (l, p) -> l)
+			.initialize();
+
+		verify(engineStore, times(1)).compute(any(), any(), any(), any());
+		assertThat(radixEngine.getComputedState(Integer.class)).isEqualTo(1);
+		assertThat(radixEngine.getComputedState(Long.class)).isEqualTo(2L);
+	}
+
+	@Test
+	public void when_batch_of_state_computers_initialized__then_each_is_fed_particles_of_its_class() {
+		InMemoryEngineStore<RadixEngineAtom> store = new InMemoryEngineStore<>();
+		RadixEngineAtom atom = mock(RadixEngineAtom.class);
+		when(atom.getCMInstruction()).thenReturn(new CMInstruction(
+			ImmutableList.of(
+				CMMicroInstruction.checkSpinAndPush(mock(Particle.class), Spin.NEUTRAL),
+				CMMicroInstruction.checkSpinAndPush(mock(IndexedParticle.class), Spin.NEUTRAL),
+				CMMicroInstruction.particleGroup()
+			),
+			ImmutableMap.of()
+		));
+		store.storeAtom(atom);
+		RadixEngine<RadixEngineAtom> engine = new RadixEngine<>(constraintMachine, virtualStore, store);
+
+		engine.batch()
+			.addStateComputer(Particle.class, Integer.class, 0, (i, p) -> i + 1, (i, p) -> i - 1)
+			.addStateComputer(IndexedParticle.class, Long.class, 0L, (l, p) -> l + 1, (l, p) -> l - 1)
+			.initialize();
+
+		assertThat(engine.getComputedState(Integer.class)).isEqualTo(2);
+		assertThat(engine.getComputedState(Long.class)).isEqualTo(1L);
+	}
+
+	@Test
+	public void when_batch_of_associative_state_computers_initialized__then_store_is_reduced_with_combiner() {
+		InMemoryEngineStore<RadixEngineAtom> store = new InMemoryEngineStore<>();
+		RadixEngineAtom atom = mock(RadixEngineAtom.class);
+		Particle particle = mock(Particle.class);
+		when(atom.getCMInstruction()).thenReturn(new CMInstruction(
+			ImmutableList.of(
+				CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL),
+				CMMicroInstruction.checkSpinAndPush(particle, Spin.UP),
+				CMMicroInstruction.checkSpinAndPush(mock(IndexedParticle.class), Spin.NEUTRAL),
+				CMMicroInstruction.particleGroup()
+			),
+			ImmutableMap.of()
+		));
+		store.storeAtom(atom);
+		RadixEngine<RadixEngineAtom> engine = new RadixEngine<>(constraintMachine, virtualStore, store);
+
+		engine.batch()
+			.addStateComputer(Particle.class, Integer.class, 0, (i, p) -> i + 1, (i, p) -> i - 1, Integer::sum)
+			.addStateComputer(IndexedParticle.class, Long.class, 0L, (l, p) -> l + 1, (l, p) -> l - 1, Long::sum)
+			.initialize();
+
+		assertThat(engine.getComputedState(Integer.class)).isEqualTo(1);
+		assertThat(engine.getComputedState(Long.class)).isEqualTo(1L);
+	}
+
 	@Test
 	public void when_static_checking_an_atom_with_cm_error__then_an_exception_is_thrown() {
-		when(this.constraintMachine.validate(any(), any(), any())).thenReturn(Optional.of(mock(CMError.class)));
+		when(this.constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.of(mock(CMError.class)));
 		assertThatThrownBy(() -> radixEngine.staticCheck(mock(RadixEngineAtom.class)))
 			.hasFieldOrPropertyWithValue("errorCode", RadixEngineErrorCode.CM_ERROR)
 			.isInstanceOf(RadixEngineException.class);
 	}
 
+	@Test
+	public void when_static_checking_an_atom_with_cm_error__then_rejection_is_recorded_in_metrics() {
+		RecordingEngineMetrics metrics = new RecordingEngineMetrics();
+		radixEngine.setMetrics(metrics);
+		when(this.constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.of(mock(CMError.class)));
+
+		assertThatThrownBy(() -> radixEngine.staticCheck(mock(RadixEngineAtom.class)))
+			.isInstanceOf(RadixEngineException.class);
+		assertThat(metrics.getAtomRejections(RadixEngineErrorCode.CM_ERROR)).isEqualTo(1);
+		assertThat(metrics.getAtomsChecked()).isZero();
+		assertThat(metrics.getStaticCheck().getCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void when_atom_stored__then_metrics_are_recorded() throws RadixEngineException {
+		RadixEngine<RadixEngineAtom> engine = new RadixEngine<>(constraintMachine, store -> p -> Spin.NEUTRAL, engineStore);
+		RecordingEngineMetrics metrics = new RecordingEngineMetrics();
+		engine.setMetrics(metrics);
+		RadixEngineAtom atom = mockAtom();
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+
+		engine.checkAndStore(atom);
+
+		assertThat(metrics.getAtomsChecked()).isEqualTo(1);
+		assertThat(metrics.getAtomsStored()).isEqualTo(1);
+		assertThat(metrics.getLockWait().getCount()).isEqualTo(1);
+		assertThat(metrics.getStoreWrite().getCount()).isEqualTo(1);
+	}
+
 	@Test
 	public void when_static_checking_an_atom_with_a_atom_checker_error__then_an_exception_is_thrown() {
-		when(this.constraintMachine.validate(any(), any(), any())).thenReturn(Optional.empty());
+		when(this.constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
 		AtomChecker<RadixEngineAtom> atomChecker = TypedMocks.rmock(AtomChecker.class);
 		RadixEngineAtom atom = mock(RadixEngineAtom.class);
 		when(atomChecker.check(atom)).thenReturn(Result.error("error"));
@@ -195,7 +326,7 @@ public class RadixEngineTest {
 
 	@Test
 	public void when_validating_an_atom_with_particle_which_conflicts_with_virtual_state__an_internal_spin_conflict_is_returned() {
-		when(this.constraintMachine.validate(any(), any(), any())).thenReturn(Optional.empty());
+		when(this.constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
 		doAnswer(invocation -> {
 			CMStore cmStore = invocation.getArgument(0);
 			return CMStores.virtualizeDefault(cmStore, p -> true, Spin.DOWN);
@@ -216,4 +347,425 @@ public class RadixEngineTest {
 			.extracting(e -> ((RadixEngineException) e).getErrorCode())
 			.isEqualTo(RadixEngineErrorCode.VIRTUAL_STATE_CONFLICT);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void when_static_check_cache_enabled_and_atom_already_static_checked__then_check_and_store_does_not_revalidate()
+		throws RadixEngineException {
+		this.radixEngine = new RadixEngine<>(
+			constraintMachine,
+			store -> p -> Spin.NEUTRAL,
+			engineStore,
+			null,
+			hasher,
+			10
+		);
+		RadixEngineAtom atom = mockAtom();
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+
+		radixEngine.staticCheck(atom);
+		radixEngine.checkAndStore(atom);
+
+		verify(constraintMachine, times(1)).validate(any(), any(), any(), any());
+		verify(engineStore, times(1)).storeAtom(atom);
+	}
+
+	@Test
+	public void when_static_check_cache_enabled_and_atom_checked_with_other_permission_level__then_check_and_store_revalidates()
+		throws RadixEngineException {
+		this.radixEngine = new RadixEngine<>(
+			constraintMachine,
+			store -> p -> Spin.NEUTRAL,
+			engineStore,
+			null,
+			hasher,
+			10
+		);
+		RadixEngineAtom atom = mockAtom();
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+
+		radixEngine.staticCheck(atom, PermissionLevel.SUPER_USER);
+		radixEngine.checkAndStore(atom, PermissionLevel.USER);
+
+		verify(constraintMachine, times(2)).validate(any(), any(), any(), any());
+	}
+
+	@Test
+	public void when_static_check_cache_enabled_and_other_atom_reuses_witness__then_check_and_store_revalidates()
+		throws RadixEngineException {
+		this.radixEngine = new RadixEngine<>(
+			constraintMachine,
+			store -> p -> Spin.NEUTRAL,
+			engineStore,
+			null,
+			hasher,
+			10
+		);
+		RadixEngineAtom checked = mockAtom();
+		RadixEngineAtom tampered = mockAtom();
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+
+		radixEngine.staticCheck(checked);
+		radixEngine.checkAndStore(tampered);
+
+		verify(constraintMachine, times(2)).validate(any(), any(), any(), any());
+	}
+
+	@Test
+	public void when_static_check_cache_enabled__then_particles_are_hashed_once_per_call() throws RadixEngineException {
+		this.radixEngine = new RadixEngine<>(
+			constraintMachine,
+			store -> p -> Spin.NEUTRAL,
+			engineStore,
+			null,
+			hasher,
+			10
+		);
+		RadixEngineAtom atom = mockAtom();
+		Particle particle = atom.getCMInstruction().getMicroInstructions().get(0).getParticle();
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+
+		radixEngine.staticCheck(atom);
+		radixEngine.checkAndStore(atom);
+
+		verify(hasher, times(2)).hash(particle);
+	}
+
+	@Test
+	public void when_static_check_cache_hit__then_execution_cost_of_the_cached_check_is_reported() throws RadixEngineException {
+		this.radixEngine = new RadixEngine<>(
+			constraintMachine,
+			store -> p -> Spin.NEUTRAL,
+			engineStore,
+			null,
+			hasher,
+			10
+		);
+		ExecutionMeter meter = mock(ExecutionMeter.class);
+		when(meter.getCost()).thenReturn(7L);
+		when(constraintMachine.newExecutionMeter(any())).thenReturn(meter);
+		RadixEngineAtom cached = mockAtom();
+		RadixEngineAtom uncached = mockAtom();
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+
+		assertThat(radixEngine.staticCheck(cached)).isEqualTo(7L);
+		assertThat(radixEngine.checkAndStore(cached)).isEqualTo(7L);
+		assertThat(radixEngine.checkAndStore(uncached)).isEqualTo(7L);
+		verify(constraintMachine, times(2)).validate(any(), any(), any(), eq(meter));
+	}
+
+	@Test
+	public void when_constraint_machine_rejects_atom__then_exception_carries_execution_cost() {
+		ExecutionMeter meter = mock(ExecutionMeter.class);
+		when(meter.getCost()).thenReturn(5L);
+		when(constraintMachine.newExecutionMeter(any())).thenReturn(meter);
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.of(mock(CMError.class)));
+
+		assertThatThrownBy(() -> radixEngine.checkAndStore(mockAtom()))
+			.isInstanceOf(RadixEngineException.class)
+			.extracting(e -> ((RadixEngineException) e).getExecutionCost())
+			.isEqualTo(5L);
+	}
+
+	@Test
+	public void when_static_check_cache_hit__then_checker_is_still_run() throws RadixEngineException {
+		AtomChecker<RadixEngineAtom> checker = TypedMocks.rmock(AtomChecker.class);
+		when(checker.check(any())).thenReturn(Result.success(), Result.error("Expired"));
+		this.radixEngine = new RadixEngine<>(
+			constraintMachine,
+			store -> p -> Spin.NEUTRAL,
+			engineStore,
+			checker,
+			hasher,
+			10
+		);
+		RadixEngineAtom atom = mockAtom();
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+
+		radixEngine.staticCheck(atom);
+
+		assertThatThrownBy(() -> radixEngine.checkAndStore(atom))
+			.isInstanceOf(RadixEngineException.class)
+			.extracting(e -> ((RadixEngineException) e).getErrorCode())
+			.isEqualTo(RadixEngineErrorCode.HOOK_ERROR);
+		verify(constraintMachine, times(1)).validate(any(), any(), any(), any());
+		verify(engineStore, never()).storeAtom(any());
+	}
+
+	@Test
+	public void when_replaying_trusted_atoms__then_atoms_are_stored_without_validation() throws RadixEngineException {
+		RadixEngineAtom atom0 = mockAtom();
+		RadixEngineAtom atom1 = mockAtom();
+		HashCode hash1 = ReplayHashChain.next(ReplayHashChain.GENESIS, atom0, hasher);
+		HashCode hash2 = ReplayHashChain.next(hash1, atom1, hasher);
+
+		HashCode result = radixEngine.replayTrusted(ImmutableList.of(atom0, atom1), hasher, ReplayHashChain.GENESIS, ImmutableMap.of(2L, hash2));
+
+		assertThat(result).isEqualTo(hash2);
+		verify(constraintMachine, never()).validate(any(), any(), any(), any());
+		verify(engineStore, times(1)).storeAtoms(eq(ImmutableList.of(atom0, atom1)));
+	}
+
+	@Test
+	public void when_replaying_trusted_atoms_with_wrong_checkpoint__then_an_exception_is_thrown_before_storing() {
+		RadixEngineAtom atom = mockAtom();
+
+		ImmutableMap<Long, HashCode> checkpoints = ImmutableMap.of(1L, HashUtils.random256());
+
+		assertThatThrownBy(() -> radixEngine.replayTrusted(ImmutableList.of(atom), hasher, ReplayHashChain.GENESIS, checkpoints))
+			.isInstanceOf(RadixEngineException.class)
+			.extracting(e -> ((RadixEngineException) e).getErrorCode())
+			.isEqualTo(RadixEngineErrorCode.REPLAY_CHECKPOINT_MISMATCH);
+		verify(engineStore, never()).storeAtoms(any());
+	}
+
+	@Test
+	public void when_replayed_atom_spins_other_particles_under_same_witness__then_checkpoint_does_not_match() {
+		RadixEngineAtom atom = mockAtom();
+		RadixEngineAtom tampered = mockAtom();
+		ImmutableMap<Long, HashCode> checkpoints = ImmutableMap.of(1L, ReplayHashChain.next(ReplayHashChain.GENESIS, atom, hasher));
+
+		assertThat(tampered.getWitness()).isEqualTo(atom.getWitness());
+		assertThatThrownBy(() -> radixEngine.replayTrusted(ImmutableList.of(tampered), hasher, ReplayHashChain.GENESIS, checkpoints))
+			.isInstanceOf(RadixEngineException.class)
+			.extracting(e -> ((RadixEngineException) e).getErrorCode())
+			.isEqualTo(RadixEngineErrorCode.REPLAY_CHECKPOINT_MISMATCH);
+		verify(engineStore, never()).storeAtoms(any());
+	}
+
+	@Test
+	public void when_atom_stored__then_commit_listener_is_notified_with_its_particles_and_version() throws RadixEngineException {
+		RadixEngine<RadixEngineAtom> engine = new RadixEngine<>(constraintMachine, store -> p -> Spin.NEUTRAL, new InMemoryEngineStore<>());
+		List<CommittedAtom<RadixEngineAtom>> committed = new ArrayList<>();
+		engine.addCommitListener(committed::addAll, Runnable::run, 10, CommitListener.OverflowPolicy.BLOCK);
+		RadixEngineAtom atom = mockAtom();
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+
+		engine.checkAndStore(atom);
+
+		assertThat(committed).hasSize(1);
+		assertThat(committed.get(0).getAtom()).isEqualTo(atom);
+		assertThat(committed.get(0).getUpParticles()).hasSize(1);
+		assertThat(committed.get(0).getDownParticles()).isEmpty();
+		assertThat(committed.get(0).getVersion()).isEqualTo(1);
+	}
+
+	@Test(timeout = 10000)
+	public void when_blocking_listener_reads_engine_while_commits_wait__then_commits_do_not_deadlock() throws Exception {
+		RadixEngine<RadixEngineAtom> engine = new RadixEngine<>(constraintMachine, s -> p -> Spin.NEUTRAL, new InMemoryEngineStore<>());
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		CountDownLatch delivered = new CountDownLatch(5);
+		engine.addCommitListener(
+			committedAtoms -> committedAtoms.forEach(committedAtom -> {
+				assertThat(engine.getStateVersion()).isGreaterThanOrEqualTo(committedAtom.getVersion());
+				delivered.countDown();
+			}),
+			executor,
+			1,
+			CommitListener.OverflowPolicy.BLOCK
+		);
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+
+		try {
+			for (int i = 0; i < 5; i++) {
+				engine.checkAndStore(mockAtom());
+			}
+			assertThat(delivered.await(5, TimeUnit.SECONDS)).isTrue();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void when_branched_from_snapshot__then_atoms_committed_to_parent_afterwards_are_not_visible() throws RadixEngineException {
+		MultiVersionEngineStore<RadixEngineAtom> store = new MultiVersionEngineStore<>();
+		RadixEngine<RadixEngineAtom> engine = new RadixEngine<>(constraintMachine, s -> p -> Spin.NEUTRAL, store);
+		RadixEngineAtom atom = mockAtom();
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+
+		try (MultiVersionEngineStore<RadixEngineAtom>.Snapshot snapshot = store.snapshot()) {
+			RadixEngine.RadixEngineBranch<RadixEngineAtom> snapshotBranch = engine.transientBranch(snapshot);
+			engine.checkAndStore(atom);
+
+			snapshotBranch.checkAndStore(atom);
+			assertThatThrownBy(() -> engine.transientBranch().checkAndStore(atom))
+				.hasFieldOrPropertyWithValue("errorCode", RadixEngineErrorCode.STATE_CONFLICT);
+			assertThatThrownBy(() -> engine.transientBranch(snapshot)).isInstanceOf(IllegalArgumentException.class);
+		}
+	}
+
+	@Test
+	public void when_branched_from_snapshot__then_index_of_branch_is_read_at_the_snapshot_version() throws RadixEngineException {
+		MultiVersionEngineStore<RadixEngineAtom> store = new MultiVersionEngineStore<>();
+		RadixEngine<RadixEngineAtom> engine = new RadixEngine<>(constraintMachine, s -> p -> Spin.NEUTRAL, store);
+		engine.addIndex(Particle.class, particleIndexClass(), ParticleIndex.create(p -> ImmutableSet.of("all"), Comparator.naturalOrder()));
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+		engine.checkAndStore(mockAtom());
+
+		try (MultiVersionEngineStore<RadixEngineAtom>.Snapshot snapshot = store.snapshot()) {
+			RadixEngine.RadixEngineBranch<RadixEngineAtom> snapshotBranch = engine.transientBranch(snapshot);
+			engine.checkAndStore(mockAtom());
+
+			assertThat(engine.getIndex(ParticleIndex.class).get("all")).hasSize(2);
+			assertThat(snapshotBranch.getIndex(ParticleIndex.class).get("all")).hasSize(1);
+		}
+	}
+
+	@Test
+	public void when_branching_from_snapshot_with_index_without_snapshots__then_exception_is_thrown() {
+		MultiVersionEngineStore<RadixEngineAtom> store = new MultiVersionEngineStore<>();
+		RadixEngine<RadixEngineAtom> engine = new RadixEngine<>(constraintMachine, s -> p -> Spin.NEUTRAL, store);
+		engine.addIndex(Particle.class, SparseMerkleIndex.class, new SparseMerkleIndex(mock(Hasher.class)));
+
+		try (MultiVersionEngineStore<RadixEngineAtom>.Snapshot snapshot = store.snapshot()) {
+			assertThatThrownBy(() -> engine.transientBranch(snapshot)).isInstanceOf(IllegalStateException.class);
+		}
+		assertThat(engine.transientBranch().getIndex(SparseMerkleIndex.class)).isNotNull();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Class<ParticleIndex<String, Particle>> particleIndexClass() {
+		return (Class<ParticleIndex<String, Particle>>) (Class<?>) ParticleIndex.class;
+	}
+
+	@Test
+	public void when_engine_restarted_with_journal__then_state_versions_keep_increasing() throws Exception {
+		InMemoryEngineStore<RadixEngineAtom> store = new InMemoryEngineStore<>();
+		Path directory = folder.newFolder().toPath();
+		List<RadixEngineAtom> atoms = List.of(mockAtom(), mockAtom(), mockAtom());
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+		try (CommitJournal journal = new CommitJournal(directory, CommitJournal.Config.defaults())) {
+			RadixEngine<RadixEngineAtom> engine = new RadixEngine<>(constraintMachine, s -> p -> Spin.NEUTRAL, store);
+			engine.setCommitJournal(journal, serializer(atoms), deserializer(atoms));
+			engine.checkAndStore(atoms.get(0));
+			engine.checkAndStore(atoms.get(1));
+		}
+
+		try (CommitJournal journal = new CommitJournal(directory, CommitJournal.Config.defaults())) {
+			RadixEngine<RadixEngineAtom> restarted = new RadixEngine<>(constraintMachine, s -> p -> Spin.NEUTRAL, store);
+			restarted.setCommitJournal(journal, serializer(atoms), deserializer(atoms));
+			assertThat(restarted.getStateVersion()).isEqualTo(2);
+			restarted.checkAndStore(atoms.get(2));
+
+			assertThat(restarted.getStateVersion()).isEqualTo(3);
+			assertThat(journaledVersions(journal)).containsExactly(1L, 2L, 3L);
+		}
+	}
+
+	@Test
+	public void when_engine_restarted_with_journal__then_accumulator_roots_match_at_the_same_versions() throws Exception {
+		InMemoryEngineStore<RadixEngineAtom> store = new InMemoryEngineStore<>();
+		Path directory = folder.newFolder().toPath();
+		List<RadixEngineAtom> atoms = List.of(mockAtom(), mockAtom(), mockAtom());
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+		StateAccumulator accumulator = new StateAccumulator(hasher, 10);
+		try (CommitJournal journal = new CommitJournal(directory, CommitJournal.Config.defaults())) {
+			RadixEngine<RadixEngineAtom> engine = new RadixEngine<>(constraintMachine, s -> p -> Spin.NEUTRAL, store);
+			engine.setCommitJournal(journal, serializer(atoms), deserializer(atoms));
+			engine.setStateAccumulator(accumulator);
+			engine.checkAndStore(atoms.get(0));
+			engine.checkAndStore(atoms.get(1));
+		}
+
+		try (CommitJournal journal = new CommitJournal(directory, CommitJournal.Config.defaults())) {
+			RadixEngine<RadixEngineAtom> restarted = new RadixEngine<>(constraintMachine, s -> p -> Spin.NEUTRAL, store);
+			restarted.setCommitJournal(journal, serializer(atoms), deserializer(atoms));
+			StateAccumulator restartedAccumulator = new StateAccumulator(hasher, 10);
+			restarted.setStateAccumulator(restartedAccumulator);
+
+			assertThat(restartedAccumulator.getVersion()).isEqualTo(2);
+			assertThat(restartedAccumulator.getRoot(2)).isEqualTo(accumulator.getRoot(2)).isPresent();
+			assertThat(restartedAccumulator.getRoot(0)).isEmpty();
+
+			restarted.checkAndStore(atoms.get(2));
+			assertThat(restartedAccumulator.getRoot(3)).isPresent().isNotEqualTo(accumulator.getRoot(2));
+		}
+	}
+
+	@Test
+	public void when_store_lost_latest_atoms__then_they_are_recovered_from_journal() throws Exception {
+		Path directory = folder.newFolder().toPath();
+		List<RadixEngineAtom> atoms = List.of(mockAtom(), mockAtom(), mockAtom());
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+		try (CommitJournal journal = new CommitJournal(directory, CommitJournal.Config.defaults())) {
+			RadixEngine<RadixEngineAtom> engine = new RadixEngine<>(constraintMachine, s -> p -> Spin.NEUTRAL, new InMemoryEngineStore<>());
+			engine.setCommitJournal(journal, serializer(atoms), deserializer(atoms));
+			for (RadixEngineAtom atom : atoms) {
+				engine.checkAndStore(atom);
+			}
+		}
+
+		// Only the first atom reached the store before the crash
+		InMemoryEngineStore<RadixEngineAtom> store = new InMemoryEngineStore<>();
+		store.storeAtom(atoms.get(0));
+		try (CommitJournal journal = new CommitJournal(directory, CommitJournal.Config.defaults())) {
+			RadixEngine<RadixEngineAtom> restarted = new RadixEngine<>(constraintMachine, s -> p -> Spin.NEUTRAL, store);
+			restarted.addStateComputer(Particle.class, Integer.class, 0, (c, p) -> c + 1, (c, p) -> c - 1);
+			restarted.setCommitJournal(journal, serializer(atoms), deserializer(atoms));
+
+			assertThat(restarted.getStateVersion()).isEqualTo(3);
+			assertThat(restarted.getComputedState(Integer.class)).isEqualTo(3);
+			assertThat(store.compute(Particle.class, 0, (c, p) -> c + 1, (c, p) -> c - 1)).isEqualTo(3);
+			assertThat(journaledVersions(journal)).containsExactly(1L, 2L, 3L);
+		}
+	}
+
+	@Test
+	public void when_store_fails__then_engine_stops_committing_and_atom_is_recovered_on_restart() throws Exception {
+		Path directory = folder.newFolder().toPath();
+		RadixEngine<RadixEngineAtom> engine = new RadixEngine<>(constraintMachine, s -> p -> Spin.NEUTRAL, engineStore);
+		List<RadixEngineAtom> atoms = List.of(mockAtom(), mockAtom());
+		doThrow(new IllegalStateException("Store failed")).when(engineStore).storeAtom(any());
+		when(constraintMachine.validate(any(), any(), any(), any())).thenReturn(Optional.empty());
+		try (CommitJournal journal = new CommitJournal(directory, CommitJournal.Config.defaults())) {
+			engine.setCommitJournal(journal, serializer(atoms), deserializer(atoms));
+
+			assertThatThrownBy(() -> engine.checkAndStore(atoms.get(0))).hasMessage("Store failed");
+			assertThatThrownBy(() -> engine.checkAndStore(atoms.get(1))).isInstanceOf(IllegalStateException.class);
+			assertThat(engine.getStateVersion()).isZero();
+			assertThat(journaledVersions(journal)).containsExactly(1L);
+		}
+
+		InMemoryEngineStore<RadixEngineAtom> store = new InMemoryEngineStore<>();
+		try (CommitJournal journal = new CommitJournal(directory, CommitJournal.Config.defaults())) {
+			RadixEngine<RadixEngineAtom> restarted = new RadixEngine<>(constraintMachine, s -> p -> Spin.NEUTRAL, store);
+			restarted.setCommitJournal(journal, serializer(atoms), deserializer(atoms));
+			restarted.checkAndStore(atoms.get(1));
+
+			assertThat(restarted.getStateVersion()).isEqualTo(2);
+			assertThat(store.compute(Particle.class, 0, (c, p) -> c + 1, (c, p) -> c - 1)).isEqualTo(2);
+			assertThat(journaledVersions(journal)).containsExactly(1L, 2L);
+		}
+	}
+
+	private static Function<RadixEngineAtom, byte[]> serializer(List<RadixEngineAtom> atoms) {
+		return atom -> new byte[] {(byte) atoms.indexOf(atom)};
+	}
+
+	private static Function<byte[], RadixEngineAtom> deserializer(List<RadixEngineAtom> atoms) {
+		return bytes -> atoms.get(bytes[0]);
+	}
+
+	private static List<Long> journaledVersions(CommitJournal journal) throws IOException {
+		try (CommitJournal.Tailer tailer = journal.tail(0)) {
+			return tailer.poll(Integer.MAX_VALUE).stream()
+				.map(entry -> ByteBuffer.wrap(entry.getPayload()).getLong())
+				.collect(Collectors.toList());
+		}
+	}
+
+	private RadixEngineAtom mockAtom() {
+		RadixEngineAtom atom = mock(RadixEngineAtom.class);
+		Particle particle = mock(Particle.class);
+		CMInstruction cmInstruction = new CMInstruction(
+			ImmutableList.of(
+				CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL),
+				CMMicroInstruction.particleGroup()
+			),
+			ImmutableMap.of()
+		);
+		when(atom.getCMInstruction()).thenReturn(cmInstruction);
+		when(atom.getWitness()).thenReturn(HashUtils.zero256());
+		when(engineStore.getSpin(any())).thenReturn(Spin.NEUTRAL);
+		return atom;
+	}
+}
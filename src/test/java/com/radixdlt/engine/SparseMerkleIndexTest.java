@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.hash.HashCode;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.crypto.Hasher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SparseMerkleIndexTest {
+	private Hasher hasher;
+	private SparseMerkleIndex index;
+	private List<Particle> particles;
+
+	@Before
+	public void setup() {
+		this.hasher = mock(Hasher.class);
+		when(hasher.hash(any())).thenAnswer(invocation -> {
+			byte[] hash = new byte[32];
+			new Random(invocation.getArgument(0).hashCode()).nextBytes(hash);
+			return HashCode.fromBytes(hash);
+		});
+		this.index = new SparseMerkleIndex(hasher);
+		this.particles = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			Particle particle = mock(Particle.class);
+			particles.add(particle);
+			index.up(particle);
+			if (i % 2 == 0) {
+				index.down(particle);
+			}
+		}
+	}
+
+	@Test
+	public void when_proving_stored_particles__then_proofs_verify_with_their_spin() {
+		HashCode root = index.getRoot();
+		for (int i = 0; i < particles.size(); i++) {
+			SparseMerkleProof proof = index.getProof(particles.get(i));
+			assertThat(proof.getSpin()).isEqualTo(i % 2 == 0 ? Spin.DOWN : Spin.UP);
+			assertThat(proof.verify(root)).isTrue();
+		}
+		assertThat(index.size()).isEqualTo(100);
+	}
+
+	@Test
+	public void when_proving_unknown_particle__then_non_inclusion_proof_verifies() {
+		SparseMerkleProof proof = index.getProof(mock(Particle.class));
+
+		assertThat(proof.getSpin()).isEqualTo(Spin.NEUTRAL);
+		assertThat(proof.verify(index.getRoot())).isTrue();
+	}
+
+	@Test
+	public void when_verifying_against_other_root__then_proof_does_not_verify() {
+		SparseMerkleProof proof = index.getProof(particles.get(1));
+		index.down(particles.get(1));
+
+		assertThat(proof.verify(index.getRoot())).isFalse();
+		assertThat(index.getProof(particles.get(1)).verify(index.getRoot())).isTrue();
+	}
+
+	@Test
+	public void when_same_particles_stored_in_other_order__then_roots_are_equal() {
+		SparseMerkleIndex other = new SparseMerkleIndex(hasher);
+		List<Particle> shuffled = new ArrayList<>(particles);
+		Collections.shuffle(shuffled, new Random(1));
+		for (Particle particle : shuffled) {
+			int i = particles.indexOf(particle);
+			if (i % 2 == 0) {
+				other.down(particle);
+			} else {
+				other.up(particle);
+			}
+		}
+
+		assertThat(other.getRoot()).isEqualTo(index.getRoot());
+	}
+
+	@Test
+	public void when_branch_updated__then_index_is_unchanged() {
+		HashCode root = index.getRoot();
+		SparseMerkleIndex branch = index.branch();
+		branch.up(mock(Particle.class));
+
+		assertThat(index.getRoot()).isEqualTo(root);
+		assertThat(branch.getRoot()).isNotEqualTo(root);
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.hash.HashCode;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.crypto.Hasher;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StateAccumulatorTest {
+	private Hasher hasher;
+
+	@Before
+	public void setup() {
+		this.hasher = mock(Hasher.class);
+		when(hasher.hash(any())).thenAnswer(invocation -> {
+			byte[] hash = new byte[32];
+			new Random(invocation.getArgument(0).hashCode()).nextBytes(hash);
+			return HashCode.fromBytes(hash);
+		});
+	}
+
+	@Test
+	public void when_same_particles_spun_up_in_different_order__then_roots_are_equal() {
+		Particle particle0 = mock(Particle.class);
+		Particle particle1 = mock(Particle.class);
+		StateAccumulator accumulator0 = new StateAccumulator(hasher, 1);
+		StateAccumulator accumulator1 = new StateAccumulator(hasher, 1);
+
+		accumulator0.up(particle0);
+		accumulator0.up(particle1);
+		accumulator1.up(particle1);
+		accumulator1.up(particle0);
+
+		assertThat(accumulator0.getRoot()).isEqualTo(accumulator1.getRoot());
+	}
+
+	@Test
+	public void when_particle_spun_up_and_down__then_root_is_restored() {
+		StateAccumulator accumulator = new StateAccumulator(hasher, 1);
+		for (int i = 0; i < 100; i++) {
+			accumulator.up(mock(Particle.class));
+		}
+		HashCode root = accumulator.getRoot();
+
+		Particle particle = mock(Particle.class);
+		accumulator.up(particle);
+		assertThat(accumulator.getRoot()).isNotEqualTo(root);
+		accumulator.down(particle);
+		assertThat(accumulator.getRoot()).isEqualTo(root);
+	}
+
+	@Test
+	public void when_versions_committed__then_only_most_recent_roots_are_retained() {
+		StateAccumulator accumulator = new StateAccumulator(hasher, 2);
+		accumulator.commit(1);
+		accumulator.up(mock(Particle.class));
+		accumulator.commit(2);
+		accumulator.up(mock(Particle.class));
+		accumulator.commit(3);
+
+		assertThat(accumulator.getVersion()).isEqualTo(3);
+		assertThat(accumulator.getRoot(1)).isEmpty();
+		assertThat(accumulator.getRoot(2)).isPresent();
+		assertThat(accumulator.getRoot(3)).contains(accumulator.getRoot());
+	}
+}
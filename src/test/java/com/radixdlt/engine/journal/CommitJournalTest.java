@@ -0,0 +1,206 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.engine.journal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CommitJournalTest {
+	private static final class MutableClock extends Clock {
+		private Instant instant = Instant.EPOCH;
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return instant;
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path directory;
+	private MutableClock clock;
+
+	@Before
+	public void setup() throws IOException {
+		this.directory = folder.newFolder().toPath();
+		this.clock = new MutableClock();
+	}
+
+	private CommitJournal open(long maxSegmentBytes) throws IOException {
+		return new CommitJournal(directory, new CommitJournal.Config(maxSegmentBytes, Duration.ofMinutes(1), false), clock);
+	}
+
+	private static byte[] payload(int i) {
+		return ByteBuffer.allocate(Integer.BYTES).putInt(i).array();
+	}
+
+	private List<Path> segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.sorted().collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	public void when_entries_appended_across_segments__then_tailer_reads_them_in_order() throws IOException {
+		try (CommitJournal journal = open(64); CommitJournal.Tailer tailer = journal.tail(0)) {
+			for (int i = 0; i < 20; i++) {
+				assertThat(journal.append(payload(i))).isEqualTo(i);
+			}
+
+			List<JournalEntry> first = tailer.poll(15);
+			List<JournalEntry> rest = tailer.poll(100);
+
+			assertThat(first).hasSize(15);
+			assertThat(rest).hasSize(5);
+			assertThat(rest.get(4).getOffset()).isEqualTo(19);
+			assertThat(rest.get(4).getPayload()).isEqualTo(payload(19));
+			assertThat(tailer.poll(100)).isEmpty();
+			assertThat(segmentFiles().size()).isGreaterThan(1);
+		}
+	}
+
+	@Test
+	public void when_tailing_from_offset__then_earlier_entries_are_skipped() throws IOException {
+		try (CommitJournal journal = open(64)) {
+			for (int i = 0; i < 20; i++) {
+				journal.append(payload(i));
+			}
+
+			try (CommitJournal.Tailer tailer = journal.tail(13)) {
+				assertThat(tailer.poll(1)).containsExactly(new JournalEntry(13, payload(13)));
+			}
+		}
+	}
+
+	@Test
+	public void when_segment_older_than_max_age__then_it_is_rotated() throws IOException {
+		try (CommitJournal journal = open(1024)) {
+			journal.append(payload(0));
+			clock.instant = clock.instant.plus(Duration.ofMinutes(2));
+			journal.append(payload(1));
+		}
+
+		assertThat(segmentFiles()).hasSize(2);
+	}
+
+	@Test
+	public void when_reopened_after_torn_append__then_torn_entry_is_truncated() throws IOException {
+		try (CommitJournal journal = open(1024)) {
+			journal.append(payload(0));
+			journal.append(payload(1));
+		}
+		Path segment = segmentFiles().get(0);
+		try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+			file.setLength(file.length() - 1);
+		}
+
+		try (CommitJournal journal = open(1024)) {
+			assertThat(journal.getNextOffset()).isEqualTo(1);
+			assertThat(journal.append(payload(2))).isEqualTo(1);
+			try (CommitJournal.Tailer tailer = journal.tail(0)) {
+				assertThat(tailer.poll(10)).containsExactly(new JournalEntry(0, payload(0)), new JournalEntry(1, payload(2)));
+			}
+		}
+	}
+
+	@Test
+	public void when_reopened_after_torn_append_left_zeros__then_zeros_are_truncated() throws IOException {
+		try (CommitJournal journal = open(1024)) {
+			journal.append(payload(0));
+		}
+		Path segment = segmentFiles().get(0);
+		try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+			file.setLength(file.length() + 100);
+		}
+
+		try (CommitJournal journal = open(1024)) {
+			assertThat(journal.getNextOffset()).isEqualTo(1);
+			assertThat(journal.lastEntry()).contains(new JournalEntry(0, payload(0)));
+		}
+	}
+
+	@Test
+	public void when_reopened_with_corrupt_entry_before_intact_entries__then_opening_fails() throws IOException {
+		try (CommitJournal journal = open(1024)) {
+			journal.append(payload(0));
+			journal.append(payload(1));
+			journal.append(payload(2));
+		}
+		Path segment = segmentFiles().get(0);
+		// Last byte of the payload of entry 1, after entry 0 and the length and offset of entry 1
+		long recordBytes = Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+		try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+			long position = recordBytes + Integer.BYTES + Long.BYTES + Integer.BYTES - 1;
+			file.seek(position);
+			int b = file.read();
+			file.seek(position);
+			file.write(b ^ 1);
+		}
+
+		assertThatThrownBy(() -> open(1024)).isInstanceOf(IOException.class);
+		assertThat(Files.size(segment)).isEqualTo(3 * recordBytes);
+	}
+
+	@Test
+	public void when_old_segments_deleted__then_tailing_deleted_offsets_fails() throws IOException {
+		try (CommitJournal journal = open(64)) {
+			for (int i = 0; i < 20; i++) {
+				journal.append(payload(i));
+			}
+
+			assertThat(journal.getFirstOffset()).isZero();
+			assertThat(journal.deleteSegmentsBefore(10)).isPositive();
+			assertThat(journal.getFirstOffset()).isPositive().isLessThanOrEqualTo(10);
+			try (CommitJournal.Tailer tailer = journal.tail(0)) {
+				assertThatThrownBy(() -> tailer.poll(1)).isInstanceOf(IOException.class);
+			}
+			try (CommitJournal.Tailer tailer = journal.tail(10)) {
+				assertThat(tailer.poll(1)).containsExactly(new JournalEntry(10, payload(10)));
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+	@Test
+	public void when_empty__then_percentiles_are_zero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		assertThat(histogram.getCount()).isZero();
+		assertThat(histogram.getPercentileNanos(99.0)).isZero();
+	}
+
+	@Test
+	public void when_durations_recorded__then_percentiles_are_within_a_factor_of_two() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(1_000);
+		}
+		histogram.record(1_000_000);
+
+		assertThat(histogram.getCount()).isEqualTo(100);
+		assertThat(histogram.getTotalNanos()).isEqualTo(99 * 1_000L + 1_000_000L);
+		assertThat(histogram.getPercentileNanos(50.0)).isBetween(1_000L, 2_000L);
+		assertThat(histogram.getPercentileNanos(100.0)).isBetween(1_000_000L, 2_000_000L);
+	}
+}
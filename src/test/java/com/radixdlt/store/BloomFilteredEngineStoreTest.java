@@ -0,0 +1,140 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.radixdlt.constraintmachine.CMInstruction;
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.crypto.HashUtils;
+import com.radixdlt.crypto.Hasher;
+import com.radixdlt.engine.BaseAtom;
+import com.radixdlt.engine.RadixEngineAtom;
+import com.radixdlt.test.utils.TypedMocks;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BloomFilteredEngineStoreTest {
+	private Hasher hasher;
+
+	@Before
+	public void setup() {
+		this.hasher = mock(Hasher.class);
+		when(hasher.hash(any())).thenAnswer(invocation -> {
+			byte[] hash = new byte[32];
+			new Random(invocation.getArgument(0).hashCode()).nextBytes(hash);
+			return HashCode.fromBytes(hash);
+		});
+	}
+
+	@Test
+	public void when_particle_was_never_stored__then_underlying_store_is_not_accessed() {
+		EngineStore<RadixEngineAtom> underlying = TypedMocks.rmock(EngineStore.class);
+		BloomFilteredEngineStore<RadixEngineAtom> store = new BloomFilteredEngineStore<>(underlying, hasher, 100, 0.01);
+
+		assertThat(store.getSpin(mock(Particle.class))).isEqualTo(Spin.NEUTRAL);
+		verify(underlying, never()).getSpin(any());
+		assertThat(store.getMetrics().getFilteredLookups()).isEqualTo(1);
+	}
+
+	@Test
+	public void when_particles_already_in_underlying_store__then_they_are_filtered_in() {
+		InMemoryEngineStore<RadixEngineAtom> underlying = new InMemoryEngineStore<>();
+		Particle particle = mock(Particle.class);
+		underlying.storeAtom(atom(particle));
+		BloomFilteredEngineStore<RadixEngineAtom> store = new BloomFilteredEngineStore<>(underlying, hasher, 100, 0.01);
+
+		assertThat(store.getSpin(particle)).isEqualTo(Spin.UP);
+	}
+
+	@Test
+	public void when_more_particles_than_capacity_stored__then_filter_grows_and_all_are_found() {
+		BloomFilteredEngineStore<RadixEngineAtom> store = new BloomFilteredEngineStore<>(new InMemoryEngineStore<>(), hasher, 4, 0.01);
+		ImmutableList.Builder<Particle> particles = ImmutableList.builder();
+		for (int i = 0; i < 64; i++) {
+			Particle particle = mock(Particle.class);
+			particles.add(particle);
+			store.storeAtom(atom(particle));
+		}
+
+		assertThat(store.getMetrics().getFilterCount()).isGreaterThan(1);
+		assertThat(particles.build()).allMatch(p -> store.getSpin(p) == Spin.UP);
+		assertThat(store.getMetrics().getFalsePositives()).isZero();
+	}
+
+	@Test
+	public void when_particles_share_hash_code__then_they_are_still_filtered_by_particle_hash() {
+		Particle stored = new SameHashCodeParticle();
+		Particle other = new SameHashCodeParticle();
+		when(hasher.hash(stored)).thenReturn(HashCode.fromBytes(filled((byte) 1)));
+		when(hasher.hash(other)).thenReturn(HashCode.fromBytes(filled((byte) 2)));
+		BloomFilteredEngineStore<RadixEngineAtom> store = new BloomFilteredEngineStore<>(new InMemoryEngineStore<>(), hasher, 100, 0.001);
+		store.storeAtom(atom(stored));
+
+		assertThat(store.getSpin(other)).isEqualTo(Spin.NEUTRAL);
+		assertThat(store.getMetrics().getFilteredLookups()).isEqualTo(1);
+	}
+
+	@Test
+	public void when_underlying_store_discards_spent_particles__then_it_cannot_be_filtered() {
+		InMemoryEngineStore<RadixEngineAtom> underlying = new InMemoryEngineStore<>(hasher);
+
+		assertThatThrownBy(() -> new BloomFilteredEngineStore<>(underlying, hasher, 100, 0.01))
+			.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new BloomFilteredEngineStore<>(new JfrEngineStore<>(underlying), hasher, 100, 0.01))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static final class SameHashCodeParticle extends Particle {
+		@Override
+		public int hashCode() {
+			return 0;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return this == o;
+		}
+	}
+
+	private static byte[] filled(byte value) {
+		byte[] bytes = new byte[32];
+		Arrays.fill(bytes, value);
+		return bytes;
+	}
+
+	private static RadixEngineAtom atom(Particle particle) {
+		CMInstruction cmInstruction = mock(CMInstruction.class);
+		when(cmInstruction.getMicroInstructions()).thenReturn(ImmutableList.of(
+			CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL)
+		));
+		return new BaseAtom(cmInstruction, HashUtils.zero256());
+	}
+}
@@ -1,17 +1,24 @@
 package com.radixdlt.store;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.radixdlt.constraintmachine.CMInstruction;
 import com.radixdlt.constraintmachine.CMMicroInstruction;
 import com.radixdlt.constraintmachine.Particle;
 import com.radixdlt.constraintmachine.Spin;
 import com.radixdlt.crypto.HashUtils;
+import com.radixdlt.crypto.Hasher;
 import com.radixdlt.engine.BaseAtom;
 import com.radixdlt.engine.RadixEngineAtom;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -61,4 +68,77 @@ public class InMemoryEngineStoreTest {
 		assertThat(expectedState).isEqualTo(nextState);
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void when_computing_with_combiner__then_result_equals_sequential_computation() {
+		ImmutableList.Builder<CMMicroInstruction> instructions = ImmutableList.builder();
+		for (int i = 0; i < 1000; i++) {
+			Particle particle = mock(Particle.class);
+			instructions.add(CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL));
+			if (i % 3 == 0) {
+				instructions.add(CMMicroInstruction.checkSpinAndPush(particle, Spin.UP));
+			}
+		}
+		CMInstruction cmInstruction = mock(CMInstruction.class);
+		when(cmInstruction.getMicroInstructions()).thenReturn(instructions.build());
+		this.store.storeAtom(new BaseAtom(cmInstruction, HashUtils.zero256()));
+
+		long sequential = this.store.compute(Particle.class, 0L, (l, p) -> l + 1, (l, p) -> l - 1);
+		long combined = this.store.compute(Particle.class, 0L, (l, p) -> l + 1, (l, p) -> l - 1, Long::sum);
+		assertThat(combined).isEqualTo(sequential).isEqualTo(1000L - 334L);
+	}
+
+	@Test(timeout = 10000)
+	public void when_computing_with_combiner__then_reducers_do_not_block_stores() throws Exception {
+		this.store.storeAtom(atom(mock(Particle.class)));
+		CountDownLatch reducing = new CountDownLatch(1);
+		CountDownLatch stored = new CountDownLatch(1);
+		CompletableFuture<Long> computed = CompletableFuture.supplyAsync(() -> this.store.compute(
+			Particle.class,
+			0L,
+			(l, p) -> {
+				reducing.countDown();
+				Uninterruptibles.awaitUninterruptibly(stored);
+				return l + 1;
+			},
+			(l, p) -> l - 1,
+			Long::sum
+		));
+
+		reducing.await();
+		this.store.storeAtom(atom(mock(Particle.class)));
+		stored.countDown();
+		assertThat(computed.get()).isEqualTo(1L);
+	}
+
+	private static RadixEngineAtom atom(Particle particle) {
+		CMInstruction cmInstruction = mock(CMInstruction.class);
+		when(cmInstruction.getMicroInstructions()).thenReturn(ImmutableList.of(CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL)));
+		return new BaseAtom(cmInstruction, HashUtils.zero256());
+	}
+
+	@Test
+	public void when_compacting_and_particle_spun_down__then_spin_is_down_and_state_only_covers_up_particles() {
+		Hasher hasher = mock(Hasher.class);
+		when(hasher.hash(any())).thenAnswer(invocation -> {
+			byte[] hash = new byte[ParticleKey.BYTES];
+			new Random(invocation.getArgument(0).hashCode()).nextBytes(hash);
+			return HashCode.fromBytes(hash);
+		});
+		InMemoryEngineStore<RadixEngineAtom> compactingStore = new InMemoryEngineStore<>(hasher);
+		Particle particle0 = mock(Particle.class);
+		Particle particle1 = mock(Particle.class);
+		CMInstruction cmInstruction = mock(CMInstruction.class);
+		when(cmInstruction.getMicroInstructions()).thenReturn(ImmutableList.of(
+			CMMicroInstruction.checkSpinAndPush(particle0, Spin.NEUTRAL),
+			CMMicroInstruction.checkSpinAndPush(particle0, Spin.UP),
+			CMMicroInstruction.checkSpinAndPush(particle1, Spin.NEUTRAL)
+		));
+
+		compactingStore.storeAtom(new BaseAtom(cmInstruction, HashUtils.zero256()));
+
+		assertThat(compactingStore.getSpin(particle0)).isEqualTo(Spin.DOWN);
+		assertThat(compactingStore.getSpin(particle1)).isEqualTo(Spin.UP);
+		assertThat(compactingStore.getSpin(mock(Particle.class))).isEqualTo(Spin.NEUTRAL);
+		assertThat(compactingStore.compute(Particle.class, 0, (i, p) -> i + 1, (i, p) -> i - 1)).isEqualTo(1);
+	}
+}
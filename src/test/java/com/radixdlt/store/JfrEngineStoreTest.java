@@ -0,0 +1,101 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.radixdlt.constraintmachine.CMInstruction;
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.crypto.HashUtils;
+import com.radixdlt.engine.BaseAtom;
+import com.radixdlt.engine.RadixEngineAtom;
+import com.radixdlt.test.utils.TypedMocks;
+import java.nio.file.Path;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JfrEngineStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void when_store_atoms__then_batch_is_delegated() {
+		EngineStore<RadixEngineAtom> underlying = TypedMocks.rmock(EngineStore.class);
+		JfrEngineStore<RadixEngineAtom> store = new JfrEngineStore<>(underlying);
+		List<RadixEngineAtom> atoms = ImmutableList.of(atom(mock(Particle.class)), atom(mock(Particle.class)));
+
+		store.storeAtoms(atoms);
+
+		verify(underlying).storeAtoms(atoms);
+	}
+
+	@Test
+	public void when_recording__then_store_atom_event_carries_atom_shape() throws Exception {
+		JfrEngineStore<RadixEngineAtom> store = new JfrEngineStore<>(new InMemoryEngineStore<>());
+		Path file = folder.newFile("engine.jfr").toPath();
+
+		try (Recording recording = new Recording()) {
+			recording.enable("com.radixdlt.StoreAtom").withoutThreshold();
+			recording.start();
+			store.storeAtom(atom(mock(Particle.class), mock(Particle.class)));
+			recording.stop();
+			recording.dump(file);
+		}
+
+		List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+		assertThat(events).hasSize(1);
+		RecordedEvent event = events.get(0);
+		assertThat(event.getInt("atomCount")).isEqualTo(1);
+		assertThat(event.getInt("particleCount")).isEqualTo(2);
+		assertThat(event.getInt("particleGroupCount")).isEqualTo(1);
+		assertThat(event.getInt("instructionCount")).isEqualTo(3);
+		assertThat(event.getString("outcome")).isEqualTo("OK");
+	}
+
+	@Test
+	public void when_compute__then_underlying_state_is_returned() {
+		InMemoryEngineStore<RadixEngineAtom> underlying = new InMemoryEngineStore<>();
+		underlying.storeAtom(atom(mock(Particle.class)));
+		JfrEngineStore<RadixEngineAtom> store = new JfrEngineStore<>(underlying);
+
+		int count = store.compute(Particle.class, 0, (c, p) -> c + 1, (c, p) -> c - 1);
+
+		assertThat(count).isEqualTo(1);
+	}
+
+	private static RadixEngineAtom atom(Particle... particles) {
+		ImmutableList.Builder<CMMicroInstruction> microInstructions = ImmutableList.builder();
+		for (Particle particle : particles) {
+			microInstructions.add(CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL));
+		}
+		microInstructions.add(CMMicroInstruction.particleGroup());
+		CMInstruction cmInstruction = new CMInstruction(microInstructions.build(), ImmutableMap.of());
+		return new BaseAtom(cmInstruction, HashUtils.zero256());
+	}
+}
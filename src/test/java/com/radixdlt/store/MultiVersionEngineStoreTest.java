@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.radixdlt.constraintmachine.CMInstruction;
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.crypto.HashUtils;
+import com.radixdlt.engine.BaseAtom;
+import com.radixdlt.engine.RadixEngineAtom;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultiVersionEngineStoreTest {
+	private MultiVersionEngineStore<RadixEngineAtom> store;
+
+	@Before
+	public void setup() {
+		this.store = new MultiVersionEngineStore<>();
+	}
+
+	@Test
+	public void when_particle_spun_down__then_past_versions_still_read_up() {
+		Particle particle = mock(Particle.class);
+		store(CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL));
+		store(CMMicroInstruction.checkSpinAndPush(particle, Spin.UP));
+
+		assertThat(this.store.getVersion()).isEqualTo(2);
+		assertThat(this.store.getSpin(particle, 0)).isEqualTo(Spin.NEUTRAL);
+		assertThat(this.store.getSpin(particle, 1)).isEqualTo(Spin.UP);
+		assertThat(this.store.getSpin(particle, 2)).isEqualTo(Spin.DOWN);
+		assertThat(this.store.getSpin(particle)).isEqualTo(Spin.DOWN);
+	}
+
+	@Test
+	public void when_atoms_stored_after_snapshot__then_snapshot_is_unchanged() {
+		Particle particle0 = mock(Particle.class);
+		Particle particle1 = mock(Particle.class);
+		store(CMMicroInstruction.checkSpinAndPush(particle0, Spin.NEUTRAL));
+
+		try (MultiVersionEngineStore<RadixEngineAtom>.Snapshot snapshot = this.store.snapshot()) {
+			store(CMMicroInstruction.checkSpinAndPush(particle0, Spin.UP), CMMicroInstruction.checkSpinAndPush(particle1, Spin.NEUTRAL));
+
+			assertThat(snapshot.getSpin(particle0)).isEqualTo(Spin.UP);
+			assertThat(snapshot.getSpin(particle1)).isEqualTo(Spin.NEUTRAL);
+			assertThat(snapshot.compute(Particle.class, 0, (c, p) -> c + 1, (c, p) -> c - 1)).isEqualTo(1);
+			assertThat(this.store.compute(Particle.class, 0, (c, p) -> c + 1, (c, p) -> c - 1)).isEqualTo(1);
+			assertThatThrownBy(() -> snapshot.storeAtom(mock(RadixEngineAtom.class))).isInstanceOf(UnsupportedOperationException.class);
+		}
+	}
+
+	@Test
+	public void when_garbage_collected__then_watermark_is_held_back_by_open_snapshots() {
+		Particle particle = mock(Particle.class);
+		store(CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL));
+		MultiVersionEngineStore<RadixEngineAtom>.Snapshot snapshot = this.store.snapshot();
+		store(CMMicroInstruction.checkSpinAndPush(particle, Spin.UP));
+
+		assertThat(this.store.collectGarbage()).isEqualTo(1);
+		assertThat(snapshot.getSpin(particle)).isEqualTo(Spin.UP);
+		assertThatThrownBy(() -> this.store.getSpin(particle, 0)).isInstanceOf(IllegalArgumentException.class);
+
+		snapshot.close();
+		assertThat(this.store.collectGarbage()).isEqualTo(2);
+		assertThat(this.store.getSpin(particle)).isEqualTo(Spin.DOWN);
+		assertThatThrownBy(() -> this.store.snapshot(1)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	public void when_garbage_collected__then_compute_still_folds_history_of_spent_particles() {
+		for (int i = 0; i < 10; i++) {
+			Particle particle = mock(Particle.class);
+			store(CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL));
+			store(CMMicroInstruction.checkSpinAndPush(particle, Spin.UP));
+		}
+
+		assertThat(this.store.collectGarbage()).isEqualTo(20);
+		assertThat(this.store.compute(Particle.class, 0, (c, p) -> c + 1, (c, p) -> c)).isEqualTo(10);
+		assertThat(this.store.compute(Particle.class, 0, (c, p) -> c, (c, p) -> c + 1)).isEqualTo(10);
+		assertThatThrownBy(() -> this.store.getSpin(mock(Particle.class), 19)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private void store(CMMicroInstruction... instructions) {
+		CMInstruction cmInstruction = mock(CMInstruction.class);
+		when(cmInstruction.getMicroInstructions()).thenReturn(ImmutableList.copyOf(instructions));
+		this.store.storeAtom(new BaseAtom(cmInstruction, HashUtils.zero256()));
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.radixdlt.constraintmachine.CMInstruction;
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.crypto.HashUtils;
+import com.radixdlt.crypto.Hasher;
+import com.radixdlt.engine.BaseAtom;
+import com.radixdlt.engine.RadixEngineAtom;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapEngineStoreTest {
+	private static final class IndexParticleCodec implements ParticleCodec {
+		private final List<Particle> particles = new ArrayList<>();
+
+		@Override
+		public byte[] encode(Particle particle) {
+			particles.add(particle);
+			return ByteBuffer.allocate(Integer.BYTES).putInt(particles.size() - 1).array();
+		}
+
+		@Override
+		public <P extends Particle> P decode(byte[] bytes, Class<P> particleClass) {
+			return particleClass.cast(particles.get(ByteBuffer.wrap(bytes).getInt()));
+		}
+	}
+
+	private IndexParticleCodec codec;
+	private OffHeapEngineStore<RadixEngineAtom> store;
+
+	@Before
+	public void setup() {
+		Hasher hasher = mock(Hasher.class);
+		when(hasher.hash(any())).thenAnswer(invocation -> {
+			byte[] hash = new byte[ParticleKey.BYTES];
+			new Random(invocation.getArgument(0).hashCode()).nextBytes(hash);
+			return HashCode.fromBytes(hash);
+		});
+		this.codec = new IndexParticleCodec();
+		this.store = new OffHeapEngineStore<>(hasher, codec, 1, 64);
+	}
+
+	@Test
+	public void when_particles_stored__then_spins_can_be_retrieved() {
+		Particle particle0 = mock(Particle.class);
+		Particle particle1 = mock(Particle.class);
+		store(CMMicroInstruction.checkSpinAndPush(particle0, Spin.NEUTRAL), CMMicroInstruction.checkSpinAndPush(particle1, Spin.NEUTRAL));
+		store(CMMicroInstruction.checkSpinAndPush(particle0, Spin.UP));
+
+		assertThat(this.store.getSpin(particle0)).isEqualTo(Spin.DOWN);
+		assertThat(this.store.getSpin(particle1)).isEqualTo(Spin.UP);
+		assertThat(this.store.getSpin(mock(Particle.class))).isEqualTo(Spin.NEUTRAL);
+		assertThat(this.store.size()).isEqualTo(2);
+	}
+
+	@Test
+	public void when_particle_spun_down__then_it_is_not_serialized_again() {
+		Particle particle = mock(Particle.class);
+		store(CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL));
+		store(CMMicroInstruction.checkSpinAndPush(particle, Spin.UP));
+
+		assertThat(this.codec.particles).hasSize(1);
+	}
+
+	@Test
+	public void when_many_particles_stored__then_history_is_replayed_in_order() {
+		List<Particle> particles = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			Particle particle = mock(Particle.class);
+			particles.add(particle);
+			store(CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL));
+			if (i % 2 == 0) {
+				store(CMMicroInstruction.checkSpinAndPush(particle, Spin.UP));
+			}
+		}
+
+		List<Particle> replayed = this.store.compute(Particle.class, new ArrayList<>(), (l, p) -> {
+			l.add(p);
+			return l;
+		}, (l, p) -> {
+			l.remove(p);
+			return l;
+		});
+
+		assertThat(replayed).hasSize(500);
+		assertThat(particles).allMatch(p -> this.store.getSpin(p) == (particles.indexOf(p) % 2 == 0 ? Spin.DOWN : Spin.UP));
+	}
+
+	private void store(CMMicroInstruction... instructions) {
+		CMInstruction cmInstruction = mock(CMInstruction.class);
+		when(cmInstruction.getMicroInstructions()).thenReturn(ImmutableList.copyOf(instructions));
+		this.store.storeAtom(new BaseAtom(cmInstruction, HashUtils.zero256()));
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.hash.HashCode;
+import com.radixdlt.constraintmachine.Spin;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class ParticleKeySpinTableTest {
+	private final Random random = new Random(12345L);
+
+	@Test
+	public void when_key_is_not_in_table__then_spin_is_neutral() {
+		ParticleKeySpinTable table = new ParticleKeySpinTable();
+		assertThat(table.get(randomKey())).isEqualTo(Spin.NEUTRAL);
+	}
+
+	@Test
+	public void when_spin_is_updated__then_latest_spin_is_returned() {
+		ParticleKeySpinTable table = new ParticleKeySpinTable();
+		ParticleKey key = randomKey();
+		table.put(key, Spin.UP);
+		table.put(key, Spin.DOWN);
+
+		assertThat(table.get(key)).isEqualTo(Spin.DOWN);
+		assertThat(table.size()).isEqualTo(1);
+	}
+
+	@Test
+	public void when_table_grows__then_all_spins_are_retained() {
+		ParticleKeySpinTable table = new ParticleKeySpinTable();
+		List<ParticleKey> keys = new ArrayList<>();
+		for (int i = 0; i < 10_000; i++) {
+			ParticleKey key = randomKey();
+			keys.add(key);
+			table.put(key, i % 2 == 0 ? Spin.UP : Spin.DOWN);
+		}
+
+		assertThat(table.size()).isEqualTo(keys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			assertThat(table.get(keys.get(i))).isEqualTo(i % 2 == 0 ? Spin.UP : Spin.DOWN);
+		}
+	}
+
+	@Test
+	public void when_key_is_written_and_read_back__then_it_is_equal() {
+		ParticleKey key = randomKey();
+		byte[] bytes = new byte[ParticleKey.BYTES + 3];
+		key.toBytes(bytes, 3);
+
+		assertThat(ParticleKey.of(bytes, 3)).isEqualTo(key);
+	}
+
+	private ParticleKey randomKey() {
+		byte[] hash = new byte[ParticleKey.BYTES];
+		random.nextBytes(hash);
+		return ParticleKey.of(HashCode.fromBytes(hash));
+	}
+}
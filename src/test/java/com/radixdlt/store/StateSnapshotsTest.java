@@ -0,0 +1,143 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.radixdlt.constraintmachine.CMInstruction;
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.crypto.HashUtils;
+import com.radixdlt.crypto.Hasher;
+import com.radixdlt.engine.BaseAtom;
+import com.radixdlt.engine.RadixEngineAtom;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StateSnapshotsTest {
+	private static final class TestParticle extends Particle {
+		private final int id;
+
+		private TestParticle(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof TestParticle && ((TestParticle) o).id == this.id;
+		}
+	}
+
+	private static final class IdParticleCodec implements ParticleCodec {
+		@Override
+		public byte[] encode(Particle particle) {
+			return ByteBuffer.allocate(Integer.BYTES).putInt(((TestParticle) particle).id).array();
+		}
+
+		@Override
+		public <P extends Particle> P decode(byte[] bytes, Class<P> particleClass) {
+			return particleClass.cast(new TestParticle(ByteBuffer.wrap(bytes).getInt()));
+		}
+	}
+
+	private InMemoryEngineStore<RadixEngineAtom> source;
+
+	@Before
+	public void setup() {
+		this.source = new InMemoryEngineStore<>();
+		List<CMMicroInstruction> instructions = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			TestParticle particle = new TestParticle(i);
+			instructions.add(CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL));
+			if (i % 2 == 0) {
+				instructions.add(CMMicroInstruction.checkSpinAndPush(particle, Spin.UP));
+			}
+		}
+		this.source.storeAtom(atom(ImmutableList.copyOf(instructions)));
+	}
+
+	@Test
+	public void when_snapshot_exported_and_imported__then_up_and_spent_particles_and_state_values_are_restored() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		long exported = StateSnapshots.export(this.source, 7, ImmutableMap.of("count", new byte[] {1, 2}), new IdParticleCodec(), output);
+
+		InMemoryEngineStore<RadixEngineAtom> target = new InMemoryEngineStore<>();
+		StateSnapshots.Imported imported = StateSnapshots.importInto(
+			new ByteArrayInputStream(output.toByteArray()),
+			new IdParticleCodec(),
+			target,
+			StateSnapshotsTest::atom
+		);
+
+		assertThat(exported).isEqualTo(3000);
+		assertThat(imported.getParticleCount()).isEqualTo(1500);
+		assertThat(imported.getSpentParticleCount()).isEqualTo(1500);
+		assertThat(imported.getVersion()).isEqualTo(7);
+		assertThat(imported.getStateValues().get("count")).containsExactly(1, 2);
+		assertThat(target.getSpin(new TestParticle(1))).isEqualTo(Spin.UP);
+		assertThat(target.getSpin(new TestParticle(2))).isEqualTo(Spin.DOWN);
+		assertThat(target.getSpin(new TestParticle(3000))).isEqualTo(Spin.NEUTRAL);
+		assertThat(target.compute(Particle.class, 0, (c, p) -> c + 1, (c, p) -> c - 1)).isEqualTo(1500);
+	}
+
+	@Test
+	public void when_snapshot_corrupt__then_import_fails() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		StateSnapshots.export(this.source, 7, ImmutableMap.of(), new IdParticleCodec(), output);
+		byte[] bytes = output.toByteArray();
+		bytes[bytes.length / 2] ^= 1;
+
+		assertThatThrownBy(() -> StateSnapshots.importInto(
+			new ByteArrayInputStream(bytes),
+			new IdParticleCodec(),
+			new InMemoryEngineStore<>(),
+			StateSnapshotsTest::atom
+		)).isInstanceOf(IOException.class);
+	}
+
+	@Test
+	public void when_store_discards_spent_particles__then_export_fails() {
+		InMemoryEngineStore<RadixEngineAtom> compacting = new InMemoryEngineStore<>(mock(Hasher.class));
+
+		assertThatThrownBy(() -> StateSnapshots.export(compacting, 0, ImmutableMap.of(), new IdParticleCodec(), new ByteArrayOutputStream()))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static RadixEngineAtom atom(ImmutableList<CMMicroInstruction> instructions) {
+		CMInstruction cmInstruction = mock(CMInstruction.class);
+		when(cmInstruction.getMicroInstructions()).thenReturn(instructions);
+		return new BaseAtom(cmInstruction, HashUtils.zero256());
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * (C) Copyright 2020 Radix DLT Ltd
+ *
+ * Radix DLT Ltd licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License.  You may obtain a copy of the
+ * License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.radixdlt.store.lsm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.radixdlt.constraintmachine.CMInstruction;
+import com.radixdlt.constraintmachine.CMMicroInstruction;
+import com.radixdlt.constraintmachine.Particle;
+import com.radixdlt.constraintmachine.Spin;
+import com.radixdlt.crypto.ECKeyPair;
+import com.radixdlt.crypto.HashUtils;
+import com.radixdlt.crypto.Hasher;
+import com.radixdlt.engine.BaseAtom;
+import com.radixdlt.engine.RadixEngineAtom;
+import com.radixdlt.identifiers.RadixAddress;
+import com.radixdlt.store.ParticleCodec;
+import com.radixdlt.store.ParticleKey;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LsmEngineStoreTest {
+	private static final class TestParticle extends Particle {
+		private final int id;
+
+		private TestParticle(int id, RadixAddress... addresses) {
+			super(Stream.of(addresses).map(RadixAddress::euid).collect(ImmutableSet.toImmutableSet()));
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof TestParticle && ((TestParticle) o).id == this.id;
+		}
+	}
+
+	private static final class IdParticleCodec implements ParticleCodec {
+		@Override
+		public byte[] encode(Particle particle) {
+			return ByteBuffer.allocate(Integer.BYTES).putInt(((TestParticle) particle).id).array();
+		}
+
+		@Override
+		public <P extends Particle> P decode(byte[] bytes, Class<P> particleClass) {
+			return particleClass.cast(new TestParticle(ByteBuffer.wrap(bytes).getInt()));
+		}
+	}
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Hasher hasher;
+	private Path directory;
+	private LsmEngineStore<RadixEngineAtom> store;
+
+	@Before
+	public void setup() throws IOException {
+		this.hasher = mock(Hasher.class);
+		when(hasher.hash(any())).thenAnswer(invocation -> {
+			byte[] hash = new byte[ParticleKey.BYTES];
+			new Random(invocation.getArgument(0).hashCode()).nextBytes(hash);
+			return HashCode.fromBytes(hash);
+		});
+		this.directory = folder.newFolder().toPath();
+		this.store = open();
+	}
+
+	@After
+	public void teardown() throws IOException {
+		this.store.close();
+	}
+
+	private LsmEngineStore<RadixEngineAtom> open() throws IOException {
+		return open(new LsmEngineStore.Config(1024, 2, 0.01));
+	}
+
+	private LsmEngineStore<RadixEngineAtom> open(LsmEngineStore.Config config) throws IOException {
+		return new LsmEngineStore<>(directory, hasher, new IdParticleCodec(), config);
+	}
+
+	@Test
+	public void when_particles_stored__then_spins_can_be_retrieved() {
+		RadixAddress address = address();
+		Particle particle0 = new TestParticle(0, address);
+		Particle particle1 = new TestParticle(1, address);
+		store(CMMicroInstruction.checkSpinAndPush(particle0, Spin.NEUTRAL), CMMicroInstruction.checkSpinAndPush(particle1, Spin.NEUTRAL));
+		store(CMMicroInstruction.checkSpinAndPush(particle0, Spin.UP));
+
+		assertThat(this.store.getSpin(particle0)).isEqualTo(Spin.DOWN);
+		assertThat(this.store.getSpin(particle1)).isEqualTo(Spin.UP);
+		assertThat(this.store.getSpin(new TestParticle(2, address))).isEqualTo(Spin.NEUTRAL);
+	}
+
+	@Test
+	public void when_segments_flushed_and_compacted__then_spins_survive_reopening() throws IOException {
+		RadixAddress address = address();
+		List<Particle> particles = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			Particle particle = new TestParticle(i, address);
+			particles.add(particle);
+			store(CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL));
+			if (i % 2 == 0) {
+				store(CMMicroInstruction.checkSpinAndPush(particle, Spin.UP));
+			}
+		}
+		this.store.close();
+		this.store = open();
+
+		for (int i = 0; i < particles.size(); i++) {
+			assertThat(this.store.getSpin(particles.get(i))).isEqualTo(i % 2 == 0 ? Spin.DOWN : Spin.UP);
+		}
+		int upCount = this.store.compute(Particle.class, 0, (c, p) -> c + 1, (c, p) -> c - 1);
+		assertThat(upCount).isEqualTo(250);
+	}
+
+	@Test
+	public void when_equal_segments_flushed__then_only_segments_of_a_similar_size_are_merged() throws IOException {
+		this.store.close();
+		this.store = open(new LsmEngineStore.Config(1L << 20, 2, 0.01));
+		RadixAddress address = address();
+		List<Particle> particles = new ArrayList<>();
+		for (int flush = 0; flush < 15; flush++) {
+			for (int i = 0; i < 10; i++) {
+				Particle particle = new TestParticle(flush * 10 + i, address);
+				particles.add(particle);
+				store(CMMicroInstruction.checkSpinAndPush(particle, Spin.NEUTRAL));
+			}
+			this.store.flush();
+		}
+
+		// Segments of 1, 2, 4 and 8 flushes, like a binary counter
+		assertThat(segmentFiles()).isEqualTo(4);
+		this.store.close();
+		this.store = open();
+		for (Particle particle : particles) {
+			assertThat(this.store.getSpin(particle)).isEqualTo(Spin.UP);
+		}
+	}
+
+	@Test
+	public void when_particles_of_many_addresses_stored__then_address_scan_only_returns_up_particles_of_address() throws IOException {
+		RadixAddress address0 = address();
+		RadixAddress address1 = address();
+		Particle shared = new TestParticle(0, address0, address1);
+		Particle own = new TestParticle(1, address0);
+		Particle spent = new TestParticle(2, address0);
+		Particle other = new TestParticle(3, address1);
+		store(
+			CMMicroInstruction.checkSpinAndPush(shared, Spin.NEUTRAL),
+			CMMicroInstruction.checkSpinAndPush(own, Spin.NEUTRAL),
+			CMMicroInstruction.checkSpinAndPush(spent, Spin.NEUTRAL),
+			CMMicroInstruction.checkSpinAndPush(other, Spin.NEUTRAL)
+		);
+		this.store.flush();
+		store(CMMicroInstruction.checkSpinAndPush(spent, Spin.UP));
+
+		assertThat(this.store.getUpParticles(address0)).containsExactlyInAnyOrder(shared, own);
+		assertThat(this.store.getUpParticles(address1)).containsExactlyInAnyOrder(shared, other);
+		assertThat(this.store.compute(Particle.class, 0, (c, p) -> c + 1, (c, p) -> c - 1)).isEqualTo(3);
+	}
+
+	@Test
+	public void when_particle_spent__then_compute_folds_it_as_output_and_input() throws IOException {
+		RadixAddress address0 = address();
+		RadixAddress address1 = address();
+		Particle spent = new TestParticle(0, address0, address1);
+		Particle up = new TestParticle(1, address0);
+		store(CMMicroInstruction.checkSpinAndPush(spent, Spin.NEUTRAL), CMMicroInstruction.checkSpinAndPush(up, Spin.NEUTRAL));
+		store(CMMicroInstruction.checkSpinAndPush(spent, Spin.UP));
+
+		assertThat(fold()).containsExactlyInAnyOrder("+0", "-0", "+1");
+		this.store.close();
+		this.store = open();
+		assertThat(fold()).containsExactlyInAnyOrder("+0", "-0", "+1");
+		assertThat(this.store.getSpin(spent)).isEqualTo(Spin.DOWN);
+		assertThat(this.store.getUpParticles(address1)).isEmpty();
+	}
+
+	private List<String> fold() {
+		return this.store.compute(
+			TestParticle.class,
+			ImmutableList.<String>of(),
+			(l, p) -> ImmutableList.<String>builder().addAll(l).add("+" + p.id).build(),
+			(l, p) -> ImmutableList.<String>builder().addAll(l).add("-" + p.id).build()
+		);
+	}
+
+	private long segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(p -> p.getFileName().toString().endsWith(".sst")).count();
+		}
+	}
+
+	private static RadixAddress address() {
+		return new RadixAddress((byte) 0, ECKeyPair.generateNew().getPublicKey());
+	}
+
+	private void store(CMMicroInstruction... instructions) {
+		CMInstruction cmInstruction = mock(CMInstruction.class);
+		when(cmInstruction.getMicroInstructions()).thenReturn(ImmutableList.copyOf(instructions));
+		this.store.storeAtom(new BaseAtom(cmInstruction, HashUtils.zero256()));
+	}
+}